@@ -0,0 +1,213 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.jaqaman.SparseCostMatrix;
+import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.CostMatrixCreatorInterface;
+import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.DefaultCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.JaqamanLinkingCostMatrixCreator;
+
+/**
+ * Base class for {@link CostMatrixCreatorInterface}s for frame-to-frame
+ * linking that only evaluate the cost function for candidate pairs found with
+ * an index, instead of all source-target pairs.
+ * <p>
+ * Subclasses offer each candidate pair with its cost to
+ * {@link #accept(Spot, Spot, double)}. As long as the index finds every pair
+ * with a cost below the threshold, the sparse cost matrix is identical to the
+ * one built by {@link JaqamanLinkingCostMatrixCreator}.
+ * </p>
+ */
+public abstract class AbstractSparseCostMatrixCreator implements CostMatrixCreatorInterface<Spot, Spot> {
+
+	private final double costThreshold;
+	private final double alternativeCostFactor;
+	private final double percentile;
+
+	private List<Spot> accSources;
+	private List<Spot> accTargets;
+	private double[] costs;
+	private int nCosts;
+
+	private SparseCostMatrix scm;
+	private List<Spot> sourceList;
+	private List<Spot> targetList;
+	private double alternativeCost;
+	private long processingTime;
+	protected String errorMessage;
+
+	/**
+	 * @param costThreshold
+	 *            pairs with a cost equal or above this threshold are rejected
+	 * @param alternativeCostFactor
+	 *            factor applied to the cost percentile to get the alternative
+	 *            (no-linking) cost
+	 * @param percentile
+	 *            percentile of accepted costs used for the alternative cost
+	 */
+	protected AbstractSparseCostMatrixCreator(final double costThreshold, final double alternativeCostFactor,
+			final double percentile) {
+		this.costThreshold = costThreshold;
+		this.alternativeCostFactor = alternativeCostFactor;
+		this.percentile = percentile;
+	}
+
+	/**
+	 * Finds the candidate pairs and passes each of them to
+	 * {@link #accept(Spot, Spot, double)}.
+	 * 
+	 * @return {@code false} if the candidates cannot be computed, with an
+	 *         {@link #errorMessage}
+	 */
+	protected abstract boolean collectCandidates();
+
+	/**
+	 * Adds a candidate pair to the cost matrix, if its cost is below the cost
+	 * threshold.
+	 */
+	protected void accept(final Spot source, final Spot target, final double cost) {
+		if (cost < costThreshold) {
+			accSources.add(source);
+			accTargets.add(target);
+			if (nCosts == costs.length) {
+				costs = Arrays.copyOf(costs, Math.max(16, 2 * nCosts));
+			}
+			costs[nCosts++] = cost;
+		}
+	}
+
+	@Override
+	public boolean process() {
+		final long start = System.currentTimeMillis();
+
+		accSources = new ArrayList<>();
+		accTargets = new ArrayList<>();
+		costs = new double[0];
+		nCosts = 0;
+		if (!collectCandidates()) {
+			return false;
+		}
+
+		costs = Arrays.copyOf(costs, nCosts);
+		if (accSources.isEmpty()) {
+			// same contract as JaqamanLinkingCostMatrixCreator: no matrix if nothing can be linked
+			sourceList = Collections.emptyList();
+			targetList = Collections.emptyList();
+			alternativeCost = Double.NaN;
+			scm = null;
+		} else {
+			// copies, the candidates are kept for solvers that read them directly
+			final DefaultCostMatrixCreator<Spot, Spot> cmCreator = new DefaultCostMatrixCreator<>(
+					new ArrayList<>(accSources), new ArrayList<>(accTargets), costs.clone(), alternativeCostFactor,
+					percentile);
+			if (!cmCreator.checkInput() || !cmCreator.process()) {
+				errorMessage = cmCreator.getErrorMessage();
+				return false;
+			}
+			scm = cmCreator.getResult();
+			sourceList = cmCreator.getSourceList();
+			targetList = cmCreator.getTargetList();
+			alternativeCost = cmCreator.computeAlternativeCosts();
+		}
+
+		processingTime = System.currentTimeMillis() - start;
+		return true;
+	}
+
+	/**
+	 * @return the source of each accepted candidate pair, after
+	 *         {@link #process()}
+	 */
+	List<Spot> candidateSources() {
+		return accSources;
+	}
+
+	/**
+	 * @return the target of each accepted candidate pair, after
+	 *         {@link #process()}
+	 */
+	List<Spot> candidateTargets() {
+		return accTargets;
+	}
+
+	/**
+	 * @return the cost of each accepted candidate pair, after
+	 *         {@link #process()}
+	 */
+	double[] candidateCosts() {
+		return costs;
+	}
+
+	/**
+	 * @return the {@link AbstractSparseCostMatrixCreator} behind
+	 *         {@code costMatrixCreator}, if any, or {@code null}
+	 */
+	static AbstractSparseCostMatrixCreator unwrap(final CostMatrixCreatorInterface<Spot, Spot> costMatrixCreator) {
+		if (costMatrixCreator instanceof TimedCostMatrixCreator) {
+			return unwrap(((TimedCostMatrixCreator<Spot, Spot>) costMatrixCreator).delegate());
+		}
+		return costMatrixCreator instanceof AbstractSparseCostMatrixCreator
+				? (AbstractSparseCostMatrixCreator) costMatrixCreator
+				: null;
+	}
+
+	@Override
+	public SparseCostMatrix getResult() {
+		return scm;
+	}
+
+	@Override
+	public List<Spot> getSourceList() {
+		return sourceList;
+	}
+
+	@Override
+	public List<Spot> getTargetList() {
+		return targetList;
+	}
+
+	@Override
+	public double getAlternativeCostForSource(final Spot source) {
+		return alternativeCost;
+	}
+
+	@Override
+	public double getAlternativeCostForTarget(final Spot target) {
+		return alternativeCost;
+	}
+
+	@Override
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	@Override
+	public long getProcessingTime() {
+		return processingTime;
+	}
+}
@@ -0,0 +1,370 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.CostMatrixCreatorInterface;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+
+/**
+ * {@link LinkSolver} based on the auction algorithm, which solves a single
+ * frame pair on several threads.
+ * <p>
+ * The problem is extended like in {@link JaqamanLinkSolver}: every source can
+ * be assigned to a target or to its own dummy at the alternative cost, every
+ * target can be assigned to a source or to its own dummy at the alternative
+ * cost, and dummies are assigned to each other at no cost where the source
+ * and target of a candidate pair are both unlinked. The auction minimizes the
+ * total cost of the links plus the alternative cost of every unlinked spot,
+ * up to {@code 1e-6} times the largest cost.
+ * </p>
+ * <p>
+ * Unassigned sources and dummies bid for their best objects in Jacobi
+ * rounds: all bids of a round are computed in parallel on the
+ * {@link Parallelization} context of the caller, then resolved in a fixed
+ * order. The result does not depend on the number of threads. Near-ties can
+ * be resolved differently than by {@link JaqamanLinkSolver}.
+ * </p>
+ * <p>
+ * The candidate pairs are read from an
+ * {@link AbstractSparseCostMatrixCreator}, other cost matrix creators are not
+ * supported.
+ * </p>
+ */
+public final class AuctionLinkSolver implements LinkSolver {
+
+	private static final int BLOCK_SIZE = 1024;
+	private static final double PRECISION = 1e-6;
+	private static final double EPSILON_FACTOR = 5;
+
+	private Map<Spot, Spot> result;
+	private Map<Spot, Double> assignmentCosts;
+	private String errorMessage;
+
+	@Override
+	public boolean solve(CostMatrixCreatorInterface<Spot, Spot> costMatrixCreator) {
+		AbstractSparseCostMatrixCreator candidates = AbstractSparseCostMatrixCreator.unwrap(costMatrixCreator);
+		if (candidates == null) {
+			errorMessage = "The auction solver needs an " + AbstractSparseCostMatrixCreator.class.getSimpleName() + ".";
+			return false;
+		}
+		if (!costMatrixCreator.checkInput() || !costMatrixCreator.process()) {
+			errorMessage = costMatrixCreator.getErrorMessage();
+			return false;
+		}
+		result = new HashMap<>();
+		assignmentCosts = new HashMap<>();
+		List<Spot> sources = costMatrixCreator.getSourceList();
+		List<Spot> targets = costMatrixCreator.getTargetList();
+		if (sources.isEmpty() || targets.isEmpty()) {
+			return true;
+		}
+
+		Map<Spot, Integer> sourceIndices = indices(sources);
+		Map<Spot, Integer> targetIndices = indices(targets);
+		double[] costs = candidates.candidateCosts();
+		int[] rows = new int[costs.length];
+		int[] cols = new int[costs.length];
+		for (int e = 0; e < costs.length; e++) {
+			rows[e] = sourceIndices.get(candidates.candidateSources().get(e));
+			cols[e] = targetIndices.get(candidates.candidateTargets().get(e));
+		}
+		// the alternative cost is the same for all spots
+		double alternativeCost = costMatrixCreator.getAlternativeCostForSource(sources.get(0));
+		int[] links = assign(sources.size(), targets.size(), rows, cols, costs, alternativeCost);
+		for (int e = 0; e < costs.length; e++) {
+			if (links[rows[e]] == cols[e]) {
+				result.put(sources.get(rows[e]), targets.get(cols[e]));
+				assignmentCosts.put(sources.get(rows[e]), costs[e]);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public Map<Spot, Spot> getResult() {
+		return result;
+	}
+
+	@Override
+	public Map<Spot, Double> getAssignmentCosts() {
+		return assignmentCosts;
+	}
+
+	@Override
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	private static Map<Spot, Integer> indices(List<Spot> spots) {
+		Map<Spot, Integer> indices = new HashMap<>(2 * spots.size());
+		for (int i = 0; i < spots.size(); i++) {
+			indices.put(spots.get(i), i);
+		}
+		return indices;
+	}
+
+	/**
+	 * Solves the extended assignment problem of a sparse cost matrix.
+	 * 
+	 * @param numSources
+	 *            number of sources
+	 * @param numTargets
+	 *            number of targets
+	 * @param rows
+	 *            source of each candidate pair
+	 * @param cols
+	 *            target of each candidate pair
+	 * @param costs
+	 *            cost of each candidate pair
+	 * @param alternativeCost
+	 *            cost of leaving a source or a target unlinked
+	 * @return the target linked to each source, or {@code -1}
+	 */
+	static int[] assign(int numSources, int numTargets, int[] rows, int[] cols, double[] costs, double alternativeCost) {
+		// persons: sources, then target dummies; objects: targets, then source dummies
+		int n = numSources + numTargets;
+		int[] offsets = new int[n + 1];
+		for (int e = 0; e < rows.length; e++) {
+			offsets[rows[e] + 1]++;
+			offsets[numSources + cols[e] + 1]++;
+		}
+		for (int p = 0; p < n; p++) {
+			offsets[p + 1] += offsets[p] + 1; // plus the alternative
+		}
+		int[] objects = new int[offsets[n]];
+		double[] arcCosts = new double[offsets[n]];
+		int[] next = Arrays.copyOf(offsets, n);
+		for (int e = 0; e < rows.length; e++) {
+			int source = rows[e];
+			objects[next[source]] = cols[e];
+			arcCosts[next[source]++] = costs[e];
+			int targetDummy = numSources + cols[e];
+			objects[next[targetDummy]] = numTargets + source;
+			arcCosts[next[targetDummy]++] = 0;
+		}
+		double maxCost = alternativeCost;
+		for (int source = 0; source < numSources; source++) {
+			objects[next[source]] = numTargets + source;
+			arcCosts[next[source]] = alternativeCost;
+		}
+		for (int target = 0; target < numTargets; target++) {
+			objects[next[numSources + target]] = target;
+			arcCosts[next[numSources + target]] = alternativeCost;
+		}
+		for (double cost : costs) {
+			maxCost = Math.max(maxCost, cost);
+		}
+
+		Auction auction = new Auction(offsets, objects, arcCosts, maxCost);
+		double finalEpsilon = Math.max(PRECISION * maxCost / n, Math.ulp(maxCost) * n);
+		double epsilon = Math.max(maxCost / EPSILON_FACTOR, finalEpsilon);
+		while (true) {
+			auction.run(epsilon);
+			if (epsilon <= finalEpsilon) break;
+			epsilon = Math.max(epsilon / EPSILON_FACTOR, finalEpsilon);
+		}
+
+		int[] links = new int[numSources];
+		for (int source = 0; source < numSources; source++) {
+			int object = auction.assigned[source];
+			links[source] = object < numTargets ? object : -1;
+		}
+		return links;
+	}
+
+	/**
+	 * Forward auction with Jacobi bidding on a square assignment problem in
+	 * compressed row format. Prices are kept between scaling phases, and so
+	 * are the assignments that are still within {@code epsilon} of the best
+	 * value of their person.
+	 */
+	private static final class Auction {
+
+		private final int[] offsets;
+		private final int[] objects;
+		private final double[] costs;
+		private final double maxCost;
+		private final double[] prices;
+		private final int[] owners;
+		private final int[] assigned;
+		private final int[] bidObjects;
+		private final double[] bids;
+		private final double[] bestBids;
+		private final int[] bestBidders;
+
+		Auction(int[] offsets, int[] objects, double[] costs, double maxCost) {
+			int n = offsets.length - 1;
+			this.offsets = offsets;
+			this.objects = objects;
+			this.costs = costs;
+			this.maxCost = maxCost;
+			prices = new double[n];
+			owners = new int[n];
+			assigned = new int[n];
+			Arrays.fill(owners, -1);
+			Arrays.fill(assigned, -1);
+			bidObjects = new int[n];
+			bids = new double[n];
+			bestBids = new double[n];
+			bestBidders = new int[n];
+			Arrays.fill(bestBidders, -1);
+		}
+
+		/**
+		 * Assigns all persons, starting from the assignments of the previous
+		 * phase that satisfy {@code epsilon}-complementary slackness.
+		 */
+		void run(double epsilon) {
+			int n = owners.length;
+			TaskExecutor executor = Parallelization.getTaskExecutor();
+			releaseUnhappy(epsilon, executor);
+			int[] unassigned = new int[n];
+			int numUnassigned = 0;
+			for (int p = 0; p < n; p++) {
+				if (assigned[p] < 0) {
+					unassigned[numUnassigned++] = p;
+				}
+			}
+			int[] touched = new int[n];
+			while (numUnassigned > 0) {
+				computeBids(unassigned, numUnassigned, epsilon, executor);
+
+				// resolve in the order of the bidders, independent of the threads
+				int numTouched = 0;
+				for (int k = 0; k < numUnassigned; k++) {
+					int p = unassigned[k];
+					int object = bidObjects[p];
+					if (bestBidders[object] < 0) {
+						touched[numTouched++] = object;
+						bestBidders[object] = p;
+						bestBids[object] = bids[p];
+					} else if (bids[p] > bestBids[object]) {
+						bestBidders[object] = p;
+						bestBids[object] = bids[p];
+					}
+				}
+				int numLosers = 0;
+				for (int k = 0; k < numUnassigned; k++) {
+					int p = unassigned[k];
+					if (bestBidders[bidObjects[p]] != p) {
+						unassigned[numLosers++] = p;
+					}
+				}
+				for (int k = 0; k < numTouched; k++) {
+					int object = touched[k];
+					int winner = bestBidders[object];
+					if (owners[object] >= 0) {
+						assigned[owners[object]] = -1;
+						unassigned[numLosers++] = owners[object];
+					}
+					owners[object] = winner;
+					assigned[winner] = object;
+					prices[object] = bestBids[object];
+					bestBidders[object] = -1;
+				}
+				numUnassigned = numLosers;
+			}
+		}
+
+		/**
+		 * Unassigns every person whose object is worth less than its best
+		 * object minus {@code epsilon}.
+		 */
+		private void releaseUnhappy(double epsilon, TaskExecutor executor) {
+			int n = owners.length;
+			boolean[] unhappy = new boolean[n];
+			List<Integer> blocks = new ArrayList<>();
+			for (int start = 0; start < n; start += BLOCK_SIZE) {
+				blocks.add(start);
+			}
+			executor.forEach(blocks, start -> {
+				for (int p = start; p < Math.min(start + BLOCK_SIZE, n); p++) {
+					if (assigned[p] < 0) continue;
+					double bestValue = Double.NEGATIVE_INFINITY;
+					double assignedValue = Double.NEGATIVE_INFINITY;
+					for (int a = offsets[p]; a < offsets[p + 1]; a++) {
+						double value = -costs[a] - prices[objects[a]];
+						bestValue = Math.max(bestValue, value);
+						if (objects[a] == assigned[p]) {
+							assignedValue = value;
+						}
+					}
+					unhappy[p] = assignedValue < bestValue - epsilon;
+				}
+			});
+			for (int p = 0; p < n; p++) {
+				if (unhappy[p]) {
+					owners[assigned[p]] = -1;
+					assigned[p] = -1;
+				}
+			}
+		}
+
+		private void computeBids(int[] unassigned, int numUnassigned, double epsilon, TaskExecutor executor) {
+			if (numUnassigned <= BLOCK_SIZE) {
+				computeBids(unassigned, 0, numUnassigned, epsilon);
+				return;
+			}
+			List<Integer> blocks = new ArrayList<>();
+			for (int start = 0; start < numUnassigned; start += BLOCK_SIZE) {
+				blocks.add(start);
+			}
+			executor.forEach(blocks, start -> computeBids(unassigned, start, Math.min(start + BLOCK_SIZE, numUnassigned), epsilon));
+		}
+
+		/**
+		 * Bids of the persons {@code unassigned[from]} to
+		 * {@code unassigned[to - 1]}: the price of the best object is raised
+		 * by the value difference to the second best object, plus
+		 * {@code epsilon}.
+		 */
+		private void computeBids(int[] unassigned, int from, int to, double epsilon) {
+			for (int k = from; k < to; k++) {
+				int p = unassigned[k];
+				int best = -1;
+				double bestValue = Double.NEGATIVE_INFINITY;
+				double secondValue = Double.NEGATIVE_INFINITY;
+				for (int a = offsets[p]; a < offsets[p + 1]; a++) {
+					double value = -costs[a] - prices[objects[a]];
+					if (value > bestValue) {
+						secondValue = bestValue;
+						bestValue = value;
+						best = objects[a];
+					} else if (value > secondValue) {
+						secondValue = value;
+					}
+				}
+				double increment = secondValue == Double.NEGATIVE_INFINITY ? maxCost : bestValue - secondValue;
+				bidObjects[p] = best;
+				bids[p] = prices[best] + increment + epsilon;
+			}
+		}
+	}
+}
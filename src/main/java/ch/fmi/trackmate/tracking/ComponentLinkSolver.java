@@ -0,0 +1,288 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.CostMatrixCreatorInterface;
+import net.imglib2.parallel.Parallelization;
+
+/**
+ * {@link LinkSolver} that splits the candidate pairs of a frame pair into
+ * connected components and solves them independently and in parallel.
+ * <p>
+ * All spots share the alternative cost of the whole frame pair, and a spot
+ * can only be linked along its candidate pairs, so the assignment problem
+ * falls apart into one independent problem per component and the combined
+ * result is an optimal solution of the whole problem. Components run on the
+ * {@link Parallelization} context of the caller, nested in the parallel
+ * linking of frame pairs, so a few frame pairs with many spots still keep all
+ * threads busy. Small components are grouped into tasks of at least
+ * {@value #BLOCK_SIZE} candidate pairs.
+ * </p>
+ * <p>
+ * The candidate pairs are read from an
+ * {@link AbstractSparseCostMatrixCreator}, other cost matrix creators are not
+ * supported.
+ * </p>
+ */
+public final class ComponentLinkSolver implements LinkSolver {
+
+	private static final int BLOCK_SIZE = 1024;
+
+	private final IntFunction<LinkSolver> componentSolvers;
+
+	private Map<Spot, Spot> result;
+	private Map<Spot, Double> assignmentCosts;
+	private String errorMessage;
+
+	/**
+	 * @param componentSolvers
+	 *            creates the solver of a component, given the smaller of its
+	 *            number of sources and targets
+	 */
+	public ComponentLinkSolver(IntFunction<LinkSolver> componentSolvers) {
+		this.componentSolvers = componentSolvers;
+	}
+
+	@Override
+	public boolean solve(CostMatrixCreatorInterface<Spot, Spot> costMatrixCreator) {
+		AbstractSparseCostMatrixCreator candidates = AbstractSparseCostMatrixCreator.unwrap(costMatrixCreator);
+		if (candidates == null) {
+			errorMessage = "The component solver needs an " + AbstractSparseCostMatrixCreator.class.getSimpleName() + ".";
+			return false;
+		}
+		if (!costMatrixCreator.checkInput() || !costMatrixCreator.process()) {
+			errorMessage = costMatrixCreator.getErrorMessage();
+			return false;
+		}
+		result = new HashMap<>();
+		assignmentCosts = new HashMap<>();
+		List<Spot> sources = costMatrixCreator.getSourceList();
+		List<Spot> targets = costMatrixCreator.getTargetList();
+		if (sources.isEmpty() || targets.isEmpty()) {
+			return true;
+		}
+
+		// the alternative cost is the same for all spots
+		double alternativeCost = costMatrixCreator.getAlternativeCostForSource(sources.get(0));
+		List<Batch> batches = batches(components(candidates, sources, targets));
+		Parallelization.getTaskExecutor().forEach(batches, batch -> batch.solve(candidates, alternativeCost));
+
+		// merge in batch order
+		for (Batch batch : batches) {
+			if (batch.errorMessage != null) {
+				errorMessage = batch.errorMessage;
+				return false;
+			}
+			result.putAll(batch.result);
+			assignmentCosts.putAll(batch.assignmentCosts);
+		}
+		return true;
+	}
+
+	@Override
+	public Map<Spot, Spot> getResult() {
+		return result;
+	}
+
+	@Override
+	public Map<Spot, Double> getAssignmentCosts() {
+		return assignmentCosts;
+	}
+
+	@Override
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	/**
+	 * @return the connected components of the bipartite graph of candidate
+	 *         pairs, largest first
+	 */
+	private static List<Component> components(AbstractSparseCostMatrixCreator candidates, List<Spot> sources,
+			List<Spot> targets) {
+		// union-find over sources, followed by targets
+		Map<Spot, Integer> indices = new HashMap<>(2 * (sources.size() + targets.size()));
+		for (int i = 0; i < sources.size(); i++) {
+			indices.put(sources.get(i), i);
+		}
+		for (int j = 0; j < targets.size(); j++) {
+			indices.put(targets.get(j), sources.size() + j);
+		}
+		List<Spot> candidateSources = candidates.candidateSources();
+		List<Spot> candidateTargets = candidates.candidateTargets();
+		int nCandidates = candidateSources.size();
+		int[] nodes = new int[nCandidates];
+		int[] parents = new int[sources.size() + targets.size()];
+		for (int i = 0; i < parents.length; i++) {
+			parents[i] = i;
+		}
+		for (int e = 0; e < nCandidates; e++) {
+			nodes[e] = indices.get(candidateSources.get(e));
+			int source = find(parents, nodes[e]);
+			int target = find(parents, indices.get(candidateTargets.get(e)));
+			if (source != target) {
+				parents[Math.max(source, target)] = Math.min(source, target);
+			}
+		}
+
+		// number components in order of their first source
+		int[] componentIds = new int[parents.length];
+		List<Component> components = new ArrayList<>();
+		for (int i = 0; i < parents.length; i++) {
+			int root = find(parents, i);
+			if (root == i) {
+				componentIds[i] = components.size();
+				components.add(new Component());
+			}
+			Component component = components.get(componentIds[root]);
+			if (i < sources.size()) {
+				component.numSources++;
+			} else {
+				component.numTargets++;
+			}
+		}
+
+		// bucket candidate pairs by component
+		for (int e = 0; e < nCandidates; e++) {
+			components.get(componentIds[find(parents, nodes[e])]).numCandidates++;
+		}
+		for (Component component : components) {
+			component.candidates = new int[component.numCandidates];
+			component.numCandidates = 0;
+		}
+		for (int e = 0; e < nCandidates; e++) {
+			Component component = components.get(componentIds[find(parents, nodes[e])]);
+			component.candidates[component.numCandidates++] = e;
+		}
+
+		components.sort(Comparator.comparingInt((Component c) -> c.numCandidates).reversed());
+		return components;
+	}
+
+	private static int find(int[] parents, int node) {
+		while (parents[node] != node) {
+			parents[node] = parents[parents[node]];
+			node = parents[node];
+		}
+		return node;
+	}
+
+	/**
+	 * @return the components grouped into batches of at least
+	 *         {@link #BLOCK_SIZE} candidate pairs, except for the last one
+	 */
+	private List<Batch> batches(List<Component> components) {
+		List<Batch> batches = new ArrayList<>();
+		Batch batch = null;
+		for (Component component : components) {
+			if (batch == null || batch.numCandidates >= BLOCK_SIZE) {
+				batch = new Batch();
+				batches.add(batch);
+			}
+			batch.components.add(component);
+			batch.numCandidates += component.numCandidates;
+		}
+		return batches;
+	}
+
+	private static final class Component {
+
+		private int numSources;
+		private int numTargets;
+		private int numCandidates;
+		private int[] candidates;
+	}
+
+	private final class Batch {
+
+		private final List<Component> components = new ArrayList<>();
+		private int numCandidates;
+		private final Map<Spot, Spot> result = new HashMap<>();
+		private final Map<Spot, Double> assignmentCosts = new HashMap<>();
+		private String errorMessage;
+
+		void solve(AbstractSparseCostMatrixCreator candidates, double alternativeCost) {
+			for (Component component : components) {
+				LinkSolver solver = componentSolvers.apply(Math.min(component.numSources, component.numTargets));
+				if (!solver.solve(new ComponentCostMatrixCreator(candidates, component.candidates, alternativeCost))) {
+					errorMessage = solver.getErrorMessage();
+					return;
+				}
+				result.putAll(solver.getResult());
+				assignmentCosts.putAll(solver.getAssignmentCosts());
+			}
+		}
+	}
+
+	/**
+	 * The candidate pairs of a single component, with the alternative cost of
+	 * the whole frame pair.
+	 */
+	private static final class ComponentCostMatrixCreator extends AbstractSparseCostMatrixCreator {
+
+		private final AbstractSparseCostMatrixCreator candidates;
+		private final int[] indices;
+		private final double alternativeCost;
+
+		ComponentCostMatrixCreator(AbstractSparseCostMatrixCreator candidates, int[] indices, double alternativeCost) {
+			// all candidate pairs passed the cost threshold already
+			super(Double.POSITIVE_INFINITY, 1d, 1d);
+			this.candidates = candidates;
+			this.indices = indices;
+			this.alternativeCost = alternativeCost;
+		}
+
+		@Override
+		public boolean checkInput() {
+			return true;
+		}
+
+		@Override
+		protected boolean collectCandidates() {
+			List<Spot> sources = candidates.candidateSources();
+			List<Spot> targets = candidates.candidateTargets();
+			double[] costs = candidates.candidateCosts();
+			for (int e : indices) {
+				accept(sources.get(e), targets.get(e), costs[e]);
+			}
+			return true;
+		}
+
+		@Override
+		public double getAlternativeCostForSource(Spot source) {
+			return alternativeCost;
+		}
+
+		@Override
+		public double getAlternativeCostForTarget(Spot target) {
+			return alternativeCost;
+		}
+	}
+}
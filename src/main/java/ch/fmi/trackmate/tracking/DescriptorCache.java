@@ -0,0 +1,407 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import fiji.plugin.trackmate.Spot;
+
+/**
+ * On-disk cache of {@link FrameDescriptors}, shared between tracker runs.
+ * <p>
+ * Descriptors only depend on the spot positions of a frame and the descriptor
+ * parameters. Each frame is stored in its own file, named after a SHA-256 hash
+ * of the spot coordinates (in iteration order), the number of neighbors and
+ * the subset size. The file holds a small header followed by the flat
+ * descriptor array. The hash is computed once per frame with {@link #key},
+ * for both the lookup and the store.
+ * </p>
+ * <p>
+ * The cache holds at most {@code maxBytes} of files. Reading a file marks it
+ * as used, and storing a file evicts the least recently used ones beyond that
+ * size. Files read or written through this instance are never evicted by it:
+ * a frame that does not fit otherwise is not stored, so a run over more data
+ * than the cache holds keeps its first frames for the next run instead of
+ * replacing each frame with the next one. The size of the files is kept as a
+ * running total, the directory is only listed when the total exceeds the
+ * limit. {@link #clear()} removes all files.
+ * </p>
+ */
+public final class DescriptorCache {
+
+	/** Name of the default cache directory in {@code java.io.tmpdir}. */
+	public static final String DEFAULT_DIRECTORY_NAME = "fmi-trackmate-descriptors";
+
+	/** Default size limit of the cache files, 1 GB. */
+	public static final long DEFAULT_MAX_BYTES = 1L << 30;
+
+	private static final int MAGIC = 0x46444331; // "FDC1"
+	private static final int HEADER_BYTES = 3 * Integer.BYTES;
+	private static final String SUFFIX = ".desc";
+
+	private final Path directory;
+	private final long maxBytes;
+	// guarded by this, the total is -1 until the directory was listed
+	private final Set<Path> used = new HashSet<>();
+	private long totalBytes = -1;
+	private long evictableBytes;
+
+	/**
+	 * Identifies the cache file of a frame.
+	 */
+	public static final class Key {
+
+		private final Path file;
+		private final int numNeighbors;
+
+		private Key(Path file, int numNeighbors) {
+			this.file = file;
+			this.numNeighbors = numNeighbors;
+		}
+
+		Path file() {
+			return file;
+		}
+	}
+
+	/**
+	 * @param directory
+	 *            the directory holding the cache files, created if needed
+	 */
+	public DescriptorCache(File directory) {
+		this(directory, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * @param directory
+	 *            the directory holding the cache files, created if needed
+	 * @param maxBytes
+	 *            the size limit of the cache files
+	 */
+	public DescriptorCache(File directory, long maxBytes) {
+		this.directory = directory.toPath();
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return a cache in the {@link #DEFAULT_DIRECTORY_NAME} folder of the
+	 *         temporary directory, with the {@link #DEFAULT_MAX_BYTES} limit
+	 */
+	public static DescriptorCache createDefault() {
+		return new DescriptorCache(defaultDirectory());
+	}
+
+	/**
+	 * @return the {@link #DEFAULT_DIRECTORY_NAME} folder of the temporary
+	 *         directory
+	 */
+	public static File defaultDirectory() {
+		return new File(System.getProperty("java.io.tmpdir"), DEFAULT_DIRECTORY_NAME);
+	}
+
+	/**
+	 * Looks up the descriptors of a frame.
+	 * 
+	 * @param frame
+	 *            the frame of the spots
+	 * @param spots
+	 *            the spots of the frame, in the order used to build the
+	 *            descriptors
+	 * @param numNeighbors
+	 *            the number of neighbors per descriptor
+	 * @param subsetSize
+	 *            the subset size used for matching
+	 * @return the cached descriptors, or {@code null} if the frame is not in
+	 *         the cache
+	 * @throws IOException
+	 *             if a cache file exists but cannot be read
+	 */
+	public FrameDescriptors load(int frame, Spot[] spots, int numNeighbors, int subsetSize) throws IOException {
+		return load(frame, spots, key(spots, numNeighbors, subsetSize));
+	}
+
+	/**
+	 * Same as {@link #load(int, Spot[], int, int)}, with a key from
+	 * {@link #key}.
+	 */
+	public FrameDescriptors load(int frame, Spot[] spots, Key key) throws IOException {
+		long size = HEADER_BYTES + (long) Double.BYTES * FrameDescriptors.N_DIMENSIONS * key.numNeighbors * spots.length;
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(key.file, StandardOpenOption.READ)) {
+			if (channel.size() != size) {
+				return null;
+			}
+			buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) return null;
+			}
+		} catch (NoSuchFileException e) {
+			// not cached, or just evicted
+			return null;
+		}
+		buffer.flip();
+		if (buffer.getInt() != MAGIC || buffer.getInt() != key.numNeighbors || buffer.getInt() != spots.length) {
+			return null;
+		}
+		FrameDescriptors descriptors = new FrameDescriptors(frame, spots, key.numNeighbors);
+		buffer.asDoubleBuffer().get(descriptors.descriptors());
+		// most recently used
+		touch(key.file);
+		synchronized (this) {
+			used.add(key.file);
+		}
+		return descriptors;
+	}
+
+	/**
+	 * Writes the descriptors of a frame to the cache. Least recently used
+	 * files are evicted first if the frame does not fit into the size limit,
+	 * and the frame is not stored if it does not fit even then. The file is
+	 * written under a temporary name and then moved into place, so concurrent
+	 * readers never see a partial file.
+	 * 
+	 * @param descriptors
+	 *            the descriptors of a frame
+	 * @param subsetSize
+	 *            the subset size used for matching
+	 * @return {@code true} if the frame was stored
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public boolean store(FrameDescriptors descriptors, int subsetSize) throws IOException {
+		return store(descriptors, key(descriptors.spots(), descriptors.numNeighbors(), subsetSize));
+	}
+
+	/**
+	 * Same as {@link #store(FrameDescriptors, int)}, with a key from
+	 * {@link #key}.
+	 */
+	public boolean store(FrameDescriptors descriptors, Key key) throws IOException {
+		double[] data = descriptors.descriptors();
+		if (!reserve(key.file, HEADER_BYTES + (long) Double.BYTES * data.length)) {
+			return false;
+		}
+		Files.createDirectories(directory);
+		Path tmp = Files.createTempFile(directory, key.file.getFileName().toString(), ".tmp");
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + Double.BYTES * data.length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(descriptors.numNeighbors()).putInt(descriptors.size());
+		buffer.asDoubleBuffer().put(data);
+		buffer.clear(); // the view does not advance the buffer position
+		try {
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+			Files.move(tmp, key.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		return true;
+	}
+
+	/**
+	 * Deletes all cache files.
+	 * 
+	 * @throws IOException
+	 *             if the directory cannot be listed
+	 */
+	public synchronized void clear() throws IOException {
+		for (Path file : files()) {
+			deleteQuietly(file);
+		}
+		used.clear();
+		totalBytes = -1;
+	}
+
+	/**
+	 * @return the total size of the cache files
+	 * @throws IOException
+	 *             if the directory cannot be listed
+	 */
+	public long size() throws IOException {
+		long total = 0;
+		for (Path file : files()) {
+			total += sizeOf(file);
+		}
+		return total;
+	}
+
+	/**
+	 * Adds a file to the running total of the cache size, after evicting the
+	 * least recently used files that were not used through this instance if
+	 * it does not fit. The directory is only listed if that could make room.
+	 * 
+	 * @return {@code false} if the file does not fit
+	 */
+	private synchronized boolean reserve(Path file, long bytes) throws IOException {
+		if (bytes > maxBytes) return false;
+		if (totalBytes < 0) {
+			totalBytes = 0;
+			for (Path cached : files()) {
+				totalBytes += sizeOf(cached);
+			}
+			evictableBytes = totalBytes;
+		}
+		if (totalBytes + bytes > maxBytes) {
+			if (totalBytes - evictableBytes + bytes > maxBytes) return false;
+			evict(bytes);
+			if (totalBytes + bytes > maxBytes) return false;
+		}
+		totalBytes += bytes;
+		used.add(file);
+		return true;
+	}
+
+	/**
+	 * Lists the cache files, with one call per file for its size and time,
+	 * and deletes the least recently used ones until {@code bytes} fit.
+	 */
+	private void evict(long bytes) throws IOException {
+		List<Path> files = files();
+		List<BasicFileAttributes> attributes = new ArrayList<>(files.size());
+		List<Integer> order = new ArrayList<>(files.size());
+		totalBytes = 0;
+		evictableBytes = 0;
+		for (int i = 0; i < files.size(); i++) {
+			BasicFileAttributes fileAttributes = attributes(files.get(i));
+			attributes.add(fileAttributes);
+			order.add(i);
+			if (fileAttributes == null) continue;
+			totalBytes += fileAttributes.size();
+			if (!used.contains(files.get(i))) {
+				evictableBytes += fileAttributes.size();
+			}
+		}
+		order.sort(Comparator.comparing(i -> attributes.get(i) == null ? FileTime.fromMillis(0) : attributes.get(i).lastModifiedTime()));
+		for (int i : order) {
+			if (totalBytes + bytes <= maxBytes) break;
+			Path file = files.get(i);
+			if (attributes.get(i) == null || used.contains(file)) continue;
+			if (deleteQuietly(file)) {
+				totalBytes -= attributes.get(i).size();
+				evictableBytes -= attributes.get(i).size();
+			}
+		}
+	}
+
+	private List<Path> files() throws IOException {
+		List<Path> files = new ArrayList<>();
+		if (!Files.isDirectory(directory)) return files;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		return files;
+	}
+
+	private static long sizeOf(Path file) {
+		try {
+			return Files.size(file);
+		} catch (IOException e) {
+			// deleted concurrently
+			return 0;
+		}
+	}
+
+	private static BasicFileAttributes attributes(Path file) {
+		try {
+			return Files.readAttributes(file, BasicFileAttributes.class);
+		} catch (IOException e) {
+			// deleted concurrently
+			return null;
+		}
+	}
+
+	private static void touch(Path file) {
+		try {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			// evicted concurrently, or a read-only cache
+		}
+	}
+
+	private static boolean deleteQuietly(Path file) {
+		try {
+			return Files.deleteIfExists(file);
+		} catch (IOException e) {
+			// in use by another process
+			return false;
+		}
+	}
+
+	/**
+	 * Computes the cache key of a frame, a hash of its spot positions and the
+	 * descriptor parameters.
+	 * 
+	 * @param spots
+	 *            the spots of the frame, in the order used to build the
+	 *            descriptors
+	 * @param numNeighbors
+	 *            the number of neighbors per descriptor
+	 * @param subsetSize
+	 *            the subset size used for matching
+	 * @return the key
+	 */
+	public Key key(Spot[] spots, int numNeighbors, int subsetSize) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + Double.BYTES * FrameDescriptors.N_DIMENSIONS * spots.length);
+		buffer.putInt(numNeighbors).putInt(subsetSize);
+		for (Spot spot : spots) {
+			for (int d = 0; d < FrameDescriptors.N_DIMENSIONS; d++) {
+				buffer.putDouble(spot.getDoublePosition(d));
+			}
+		}
+		digest.update(buffer.array());
+		StringBuilder name = new StringBuilder(64 + SUFFIX.length());
+		for (byte b : digest.digest()) {
+			name.append(String.format("%02x", b));
+		}
+		return new Key(directory.resolve(name.append(SUFFIX).toString()), numNeighbors);
+	}
+}
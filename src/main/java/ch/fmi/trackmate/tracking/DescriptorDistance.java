@@ -0,0 +1,157 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.Arrays;
+
+import mpicbg.pointdescriptor.SimplePointDescriptor;
+import mpicbg.pointdescriptor.matcher.SubsetMatcher;
+import mpicbg.pointdescriptor.similarity.SquareDistance;
+
+/**
+ * Descriptor distance between two descriptors stored in
+ * {@link FrameDescriptors}.
+ * <p>
+ * This computes the same value as
+ * {@link SimplePointDescriptor#descriptorDistance} with a
+ * {@link SubsetMatcher} and {@link SquareDistance}: the minimal mean square
+ * distance over all matchings of an ordered subset of neighbors of the first
+ * descriptor with an ordered subset of neighbors of the second one. Instead of
+ * enumerating all pairs of subsets, the minimum is found by dynamic
+ * programming over the matrix of pairwise neighbor distances.
+ * </p>
+ * <p>
+ * Instances keep scratch buffers and are not thread-safe.
+ * </p>
+ */
+public final class DescriptorDistance {
+
+	private final int numNeighbors;
+	private final int subsetSize;
+	private final SquareDistanceKernel kernel;
+
+	// pairwise square distances of the neighbor vectors
+	private final double[] squareDistances;
+	// minimal costs for k and k-1 matched neighbors, indexed by prefix lengths
+	private double[] current;
+	private double[] previous;
+
+	public DescriptorDistance(int numNeighbors, int subsetSize) {
+		this(numNeighbors, subsetSize, SquareDistanceKernel.best());
+	}
+
+	DescriptorDistance(int numNeighbors, int subsetSize, SquareDistanceKernel kernel) {
+		this.numNeighbors = numNeighbors;
+		this.subsetSize = subsetSize;
+		this.kernel = kernel;
+		this.squareDistances = new double[numNeighbors * numNeighbors];
+		this.current = new double[(numNeighbors + 1) * (numNeighbors + 1)];
+		this.previous = new double[(numNeighbors + 1) * (numNeighbors + 1)];
+	}
+
+	/**
+	 * @param a
+	 *            descriptor array of the first spot
+	 * @param aOffset
+	 *            offset of the first descriptor
+	 * @param b
+	 *            descriptor array of the second spot
+	 * @param bOffset
+	 *            offset of the second descriptor
+	 * @return the descriptor distance
+	 */
+	public double compute(double[] a, int aOffset, double[] b, int bOffset) {
+		return compute(a, aOffset, b, bOffset, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Computes the descriptor distance, but gives up as soon as it is certain
+	 * not to be below {@code bound}.
+	 * 
+	 * @param a
+	 *            descriptor array of the first spot
+	 * @param aOffset
+	 *            offset of the first descriptor
+	 * @param b
+	 *            descriptor array of the second spot
+	 * @param bOffset
+	 *            offset of the second descriptor
+	 * @param bound
+	 *            distances equal or above this value are not of interest
+	 * @return the descriptor distance if it is below {@code bound}, otherwise
+	 *         the descriptor distance or {@link Double#POSITIVE_INFINITY}
+	 */
+	public double compute(double[] a, int aOffset, double[] b, int bOffset, double bound) {
+		final double minSquareDistance = kernel.compute(a, aOffset, b, bOffset, numNeighbors, squareDistances);
+		return match(bound, minSquareDistance);
+	}
+
+	/**
+	 * Minimal sum of {@code subsetSize} entries of {@link #squareDistances}
+	 * with strictly increasing row and column indices, divided by
+	 * {@code subsetSize}, or {@link Double#POSITIVE_INFINITY} if that is known
+	 * to be at least {@code bound} or if there are fewer neighbors than
+	 * {@code subsetSize}.
+	 */
+	private double match(double bound, double minSquareDistance) {
+		final int n = numNeighbors;
+		final int w = n + 1;
+		final int s = subsetSize;
+		if (s > n) {
+			// no subset to match, and the prefix bounds below would be negative
+			return Double.POSITIVE_INFINITY;
+		}
+		// relative margin so rounding never abandons a distance just below the bound
+		final double abandonSum = bound * s * (1 + 1e-9);
+		// no neighbor matched yet
+		Arrays.fill(previous, 0);
+		for (int k = 1; k <= s; k++) {
+			// with k matched neighbors, only prefixes leaving room for the remaining
+			// s - k matches are needed, except for the final result
+			final int last = k == s ? n : n - s + k;
+			for (int p = 0; p <= last; p++) {
+				for (int q = 0; q <= last; q++) {
+					double cost = Double.POSITIVE_INFINITY;
+					if (p >= k && q >= k) {
+						// either a[p-1] and b[q-1] are matched, or one of them is skipped
+						cost = previous[(p - 1) * w + q - 1] + squareDistances[(p - 1) * n + q - 1];
+						cost = Math.min(cost, current[(p - 1) * w + q]);
+						cost = Math.min(cost, current[p * w + q - 1]);
+					}
+					current[p * w + q] = cost;
+				}
+			}
+			final double[] tmp = previous;
+			previous = current;
+			current = tmp;
+			if (k < s) {
+				// the first k matches of the optimum cost at least the best k matches,
+				// each remaining match at least the smallest square distance
+				final double lowerBound = previous[last * w + last] + (s - k) * minSquareDistance;
+				if (lowerBound >= abandonSum) {
+					return Double.POSITIVE_INFINITY;
+				}
+			}
+		}
+		return previous[n * w + n] / s;
+	}
+}
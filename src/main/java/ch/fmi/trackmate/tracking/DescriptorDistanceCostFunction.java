@@ -21,27 +21,77 @@
  */
 package ch.fmi.trackmate.tracking;
 
-import java.util.Map;
-
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.tracking.jaqaman.costfunction.CostFunction;
-import mpicbg.pointdescriptor.SimplePointDescriptor;
-import process.Particle;
 
+/**
+ * {@link CostFunction} returning the descriptor distance between a spot of a
+ * source frame and a spot of a target frame.
+ * <p>
+ * Instances are bound to one frame pair and are not thread-safe.
+ * </p>
+ */
 public class DescriptorDistanceCostFunction implements CostFunction<Spot, Spot> {
-	
-	private Map<Integer, SimplePointDescriptor<Particle>> spotMapping;
 
-	public DescriptorDistanceCostFunction(Map<Integer, SimplePointDescriptor<Particle>> spotMapping) {
-		this.spotMapping = spotMapping;
+	private final FrameDescriptors sources;
+	private final FrameDescriptors targets;
+	private final DescriptorDistance distance;
+	private final double costThreshold;
+
+	// the cost matrix creators evaluate all candidates of one source in a row
+	private Spot lastSource;
+	private int lastSourceIndex = -1;
+	private long evaluations;
+
+	public DescriptorDistanceCostFunction(FrameDescriptors sources, FrameDescriptors targets, DescriptorDistance distance) {
+		this(sources, targets, distance, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * @param costThreshold
+	 *            costs equal or above this threshold are not needed exactly,
+	 *            their computation is abandoned early and
+	 *            {@link Double#POSITIVE_INFINITY} is returned instead
+	 */
+	public DescriptorDistanceCostFunction(FrameDescriptors sources, FrameDescriptors targets, DescriptorDistance distance,
+			double costThreshold) {
+		this.sources = sources;
+		this.targets = targets;
+		this.distance = distance;
+		this.costThreshold = costThreshold;
 	}
 
 	@Override
 	public double linkingCost(Spot s1, Spot s2) {
-		SimplePointDescriptor<Particle> d1 = spotMapping.get(s1.ID());
-		SimplePointDescriptor<Particle> d2 = spotMapping.get(s2.ID());
-		// TODO check for null?
-		return d1.descriptorDistance(d2);
+		if (s1 != lastSource) {
+			lastSource = s1;
+			lastSourceIndex = sources.indexOf(s1);
+		}
+		int targetIndex = targets.indexOf(s2);
+		if (lastSourceIndex < 0 || targetIndex < 0) return Double.POSITIVE_INFINITY;
+		return linkingCost(lastSourceIndex, targetIndex);
+	}
+
+	/**
+	 * @param sourceIndex
+	 *            dense index of a spot in the source frame
+	 * @param targetIndex
+	 *            dense index of a spot in the target frame
+	 * @return the descriptor distance between both spots, or
+	 *         {@link Double#POSITIVE_INFINITY} if it is not below the cost
+	 *         threshold
+	 */
+	public double linkingCost(int sourceIndex, int targetIndex) {
+		evaluations++;
+		return distance.compute(sources.descriptors(), sources.offset(sourceIndex), targets.descriptors(),
+				targets.offset(targetIndex), costThreshold);
+	}
+
+	/**
+	 * @return the number of descriptor distances computed so far
+	 */
+	public long getEvaluations() {
+		return evaluations;
 	}
 
 }
@@ -0,0 +1,189 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.KDTree;
+import net.imglib2.RealPoint;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnKDTree;
+
+/**
+ * Exact candidate search in descriptor space for one target frame.
+ * <p>
+ * The descriptor distance is the minimal mean square distance over matchings
+ * of ordered neighbor subsets. It is not a metric, so it cannot be indexed by a
+ * metric tree directly. Instead, this index uses a lower bound: if the
+ * descriptor distance of two spots is below {@code T}, the mean of the
+ * {@code s = subsetSize} matched square distances is below {@code T}, and so
+ * is the mean of the {@code k} smallest of them. These {@code k} matched pairs
+ * keep the neighbor order on both sides. Concatenating the {@code k} neighbor
+ * vectors of each side, a target can only pass if one of its ordered
+ * {@code k}-subsets of neighbor vectors lies within {@code sqrt(k * T)} of one
+ * of the ordered {@code k}-subsets of the source, in {@code 3 * k} dimensions.
+ * </p>
+ * <p>
+ * With {@code k = 1}, this is a radius of {@code sqrt(T)} around single
+ * neighbor vectors, which still accepts most pairs once {@code sqrt(T)} is
+ * about the distance between neighbors. Pairs of neighbors ({@code k = 2}, if
+ * {@code s >= 2}) reject far more targets, while the KD-tree stays low
+ * dimensional. The index only pays off if the cost threshold is small
+ * compared to the square distance between neighbors; with a threshold that
+ * accepts most pairs, every pair has to be computed anyway.
+ * </p>
+ * <p>
+ * These subsets of all targets are stored in a {@link KDTree}, and
+ * {@link #search} returns every target that passes the bound. The result is a
+ * superset of the targets within the cost threshold, the exact descriptor
+ * distance still has to be computed for each candidate.
+ * </p>
+ * <p>
+ * Instances keep scratch buffers and are not thread-safe.
+ * </p>
+ */
+public final class DescriptorIndex {
+
+	/** the largest number of neighbors per indexed subset */
+	static final int MAX_SUBSET = 2;
+
+	private final FrameDescriptors targets;
+	private final int numNeighbors;
+	private final int[][] subsets;
+	private final double radius;
+
+	private final RadiusNeighborSearchOnKDTree<Integer> search;
+	private final RealPoint query;
+
+	// last query that reported each target, to report it only once
+	private final int[] stamps;
+	private int stamp;
+
+	/**
+	 * @param targets
+	 *            descriptors of the target frame
+	 * @param subsetSize
+	 *            number of matched neighbors of the descriptor distance
+	 * @param costThreshold
+	 *            descriptor distances equal or above this threshold are not
+	 *            searched for
+	 */
+	public DescriptorIndex(FrameDescriptors targets, int subsetSize, double costThreshold) {
+		this.targets = targets;
+		this.numNeighbors = targets.numNeighbors();
+		int k = Math.max(1, Math.min(Math.min(subsetSize, MAX_SUBSET), numNeighbors));
+		this.subsets = subsets(numNeighbors, k);
+		// relative margin so rounding never drops a pair exactly at the bound
+		this.radius = Math.sqrt(k * costThreshold) * (1 + 1e-9);
+		this.query = new RealPoint(k * FrameDescriptors.N_DIMENSIONS);
+		this.stamps = new int[targets.size()];
+
+		List<Integer> values = new ArrayList<>(targets.size() * subsets.length);
+		List<RealPoint> positions = new ArrayList<>(targets.size() * subsets.length);
+		for (int t = 0; t < targets.size(); t++) {
+			for (int[] subset : subsets) {
+				values.add(t);
+				RealPoint position = new RealPoint(query.numDimensions());
+				setPosition(position, targets, t, subset);
+				positions.add(position);
+			}
+		}
+		search = values.isEmpty() ? null : new RadiusNeighborSearchOnKDTree<>(new KDTree<>(values, positions));
+	}
+
+	/**
+	 * @return all ascending {@code k}-subsets of {@code 0..n-1}, in
+	 *         lexicographic order
+	 */
+	private static int[][] subsets(int n, int k) {
+		List<int[]> subsets = new ArrayList<>();
+		int[] subset = new int[k];
+		for (int i = 0; i < k; i++) {
+			subset[i] = i;
+		}
+		while (k <= n) {
+			subsets.add(subset.clone());
+			int i = k - 1;
+			while (i >= 0 && subset[i] == n - k + i) {
+				i--;
+			}
+			if (i < 0) break;
+			subset[i]++;
+			for (int j = i + 1; j < k; j++) {
+				subset[j] = subset[j - 1] + 1;
+			}
+		}
+		return subsets.toArray(new int[0][]);
+	}
+
+	/**
+	 * Sets {@code position} to the concatenated neighbor vectors of a subset.
+	 */
+	private void setPosition(RealPoint position, FrameDescriptors descriptors, int index, int[] subset) {
+		double[] values = descriptors.descriptors();
+		int offset = descriptors.offset(index);
+		for (int i = 0; i < subset.length; i++) {
+			for (int d = 0; d < FrameDescriptors.N_DIMENSIONS; d++) {
+				position.setPosition(values[offset + d * numNeighbors + subset[i]], i * FrameDescriptors.N_DIMENSIONS + d);
+			}
+		}
+	}
+
+	/**
+	 * Finds the candidate targets of a source spot.
+	 * 
+	 * @param sources
+	 *            descriptors of the source frame, with the same number of
+	 *            neighbors as the targets
+	 * @param sourceIndex
+	 *            dense index of the source spot
+	 * @param candidates
+	 *            receives the dense indices of the candidate targets, in no
+	 *            particular order; must hold at least as many elements as
+	 *            there are targets
+	 * @return the number of candidates
+	 */
+	public int search(FrameDescriptors sources, int sourceIndex, int[] candidates) {
+		if (search == null) return 0;
+		stamp++;
+		int count = 0;
+		for (int[] subset : subsets) {
+			setPosition(query, sources, sourceIndex, subset);
+			search.search(query, radius, false);
+			for (int i = 0; i < search.numNeighbors(); i++) {
+				int target = search.getSampler(i).get();
+				if (stamps[target] != stamp) {
+					stamps[target] = stamp;
+					candidates[count++] = target;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the descriptors of the target frame
+	 */
+	public FrameDescriptors targets() {
+		return targets;
+	}
+}
@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.Arrays;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.CostMatrixCreatorInterface;
+
+/**
+ * A {@link CostMatrixCreatorInterface} for frame-to-frame linking that finds
+ * candidate pairs with a {@link DescriptorIndex} over the target frame.
+ * <p>
+ * Unlike {@link SparseLinkingCostMatrixCreator}, candidates are not restricted
+ * by their spatial distance, which makes this the preferred choice when the
+ * maximal linking distance covers most of the frame, e.g. with a large stage
+ * drift. The cost function is still evaluated through
+ * {@link DescriptorDistanceCostFunction#linkingCost(Spot, Spot)}, so a
+ * distance constraint of the cost function keeps applying.
+ * </p>
+ */
+public class DescriptorIndexCostMatrixCreator extends AbstractSparseCostMatrixCreator {
+
+	private static final String BASE_ERROR_MSG = "[DescriptorIndexCostMatrixCreator] ";
+
+	private final FrameDescriptors sources;
+	private final FrameDescriptors targets;
+	private final DescriptorDistanceCostFunction costFunction;
+	private final int subsetSize;
+	private final double costThreshold;
+
+	/**
+	 * @param sources
+	 *            descriptors of the source frame
+	 * @param targets
+	 *            descriptors of the target frame
+	 * @param costFunction
+	 *            cost function evaluated for candidate pairs
+	 * @param subsetSize
+	 *            number of matched neighbors of the descriptor distance
+	 * @param costThreshold
+	 *            pairs with a cost equal or above this threshold are rejected
+	 * @param alternativeCostFactor
+	 *            factor applied to the cost percentile to get the alternative
+	 *            (no-linking) cost
+	 * @param percentile
+	 *            percentile of accepted costs used for the alternative cost
+	 */
+	public DescriptorIndexCostMatrixCreator(FrameDescriptors sources, FrameDescriptors targets,
+			DescriptorDistanceCostFunction costFunction, int subsetSize, double costThreshold,
+			double alternativeCostFactor, double percentile) {
+		super(costThreshold, alternativeCostFactor, percentile);
+		this.sources = sources;
+		this.targets = targets;
+		this.costFunction = costFunction;
+		this.subsetSize = subsetSize;
+		this.costThreshold = costThreshold;
+	}
+
+	@Override
+	public boolean checkInput() {
+		if (sources == null || sources.size() == 0) {
+			errorMessage = BASE_ERROR_MSG + "The source list is null or empty.";
+			return false;
+		}
+		if (targets == null || targets.size() == 0) {
+			errorMessage = BASE_ERROR_MSG + "The target list is null or empty.";
+			return false;
+		}
+		if (sources.numNeighbors() != targets.numNeighbors()) {
+			errorMessage = BASE_ERROR_MSG + "Source and target descriptors have different numbers of neighbors.";
+			return false;
+		}
+		if (subsetSize < 1 || subsetSize > targets.numNeighbors()) {
+			errorMessage = BASE_ERROR_MSG + "The subset size must be between 1 and the number of neighbors.";
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	protected boolean collectCandidates() {
+		DescriptorIndex index = new DescriptorIndex(targets, subsetSize, costThreshold);
+		int[] candidates = new int[targets.size()];
+		for (int source = 0; source < sources.size(); source++) {
+			Spot sourceSpot = sources.spot(source);
+			int count = index.search(sources, source, candidates);
+			// same target order as a dense scan
+			Arrays.sort(candidates, 0, count);
+			for (int i = 0; i < count; i++) {
+				Spot targetSpot = targets.spot(candidates[i]);
+				accept(sourceSpot, targetSpot, costFunction.linkingCost(sourceSpot, targetSpot));
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact store of point descriptors for all frames of a tracking run, with
+ * one {@link FrameDescriptors} per frame.
+ */
+public final class DescriptorStore {
+
+	private final int numNeighbors;
+	private final int subsetSize;
+	private final Map<Integer, FrameDescriptors> frames = new ConcurrentHashMap<>();
+
+	/**
+	 * @param numNeighbors
+	 *            number of neighbors per descriptor
+	 * @param subsetSize
+	 *            number of neighbors matched when comparing two descriptors
+	 */
+	public DescriptorStore(int numNeighbors, int subsetSize) {
+		this.numNeighbors = numNeighbors;
+		this.subsetSize = subsetSize;
+	}
+
+	public int getNumNeighbors() {
+		return numNeighbors;
+	}
+
+	public int getSubsetSize() {
+		return subsetSize;
+	}
+
+	public void put(FrameDescriptors descriptors) {
+		frames.put(descriptors.frame(), descriptors);
+	}
+
+	/**
+	 * @param frame
+	 *            a frame
+	 * @return the descriptors of this frame, or {@code null} if the frame was
+	 *         not added to this store
+	 */
+	public FrameDescriptors get(int frame) {
+		return frames.get(frame);
+	}
+
+	public boolean contains(int frame) {
+		return frames.containsKey(frame);
+	}
+
+	public FrameDescriptors remove(int frame) {
+		return frames.remove(frame);
+	}
+
+	public int size() {
+		return frames.size();
+	}
+
+	/**
+	 * @return a new, non thread-safe distance kernel for descriptors in this
+	 *         store
+	 */
+	public DescriptorDistance createDistance() {
+		return new DescriptorDistance(numNeighbors, subsetSize);
+	}
+}
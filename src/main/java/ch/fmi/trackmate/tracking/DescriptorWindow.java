@@ -0,0 +1,93 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Reference-counted view of a {@link DescriptorStore} for a fixed list of
+ * frame pairs. The descriptors of a frame are created when a pair first needs
+ * them and removed from the store when all pairs with this frame are done.
+ * <p>
+ * When pairs are processed roughly in frame order, only the frames within the
+ * maximal frame interval of the current pairs are held in memory.
+ * </p>
+ */
+final class DescriptorWindow {
+
+	private final DescriptorStore store;
+	private final IntFunction<FrameDescriptors> factory;
+	private final Map<Integer, AtomicInteger> pendingPairs = new HashMap<>();
+
+	/**
+	 * @param store
+	 *            the store holding the descriptors of the active frames
+	 * @param framePairs
+	 *            all frame pairs that will be processed
+	 * @param factory
+	 *            creates the descriptors of a frame
+	 */
+	DescriptorWindow(DescriptorStore store, List<int[]> framePairs, IntFunction<FrameDescriptors> factory) {
+		this.store = store;
+		this.factory = factory;
+		// filled once, only read concurrently afterwards
+		for (int[] framePair : framePairs) {
+			for (int frame : framePair) {
+				pendingPairs.computeIfAbsent(frame, f -> new AtomicInteger()).incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * @return the descriptors of {@code frame}, created if they are not in the
+	 *         store yet
+	 */
+	FrameDescriptors acquire(int frame) {
+		FrameDescriptors descriptors = store.get(frame);
+		if (descriptors != null) {
+			return descriptors;
+		}
+		// the counter is unique per frame and serves as lock
+		synchronized (pendingPairs.get(frame)) {
+			descriptors = store.get(frame);
+			if (descriptors == null) {
+				descriptors = factory.apply(frame);
+				store.put(descriptors);
+			}
+			return descriptors;
+		}
+	}
+
+	/**
+	 * Marks one pair with {@code frame} as done, and removes the descriptors
+	 * of the frame from the store after its last pair.
+	 */
+	void release(int frame) {
+		if (pendingPairs.get(frame).decrementAndGet() == 0) {
+			store.remove(frame);
+		}
+	}
+}
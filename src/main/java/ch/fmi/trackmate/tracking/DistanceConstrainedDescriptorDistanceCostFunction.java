@@ -21,19 +21,20 @@
  */
 package ch.fmi.trackmate.tracking;
 
-import java.util.Map;
-
 import fiji.plugin.trackmate.Spot;
-import mpicbg.pointdescriptor.SimplePointDescriptor;
-import process.Particle;
 
 public class DistanceConstrainedDescriptorDistanceCostFunction extends DescriptorDistanceCostFunction {
 
 	private double squareDistanceThreshold;
 
-	public DistanceConstrainedDescriptorDistanceCostFunction(Map<Integer, SimplePointDescriptor<Particle>> spotMapping,
-			double distanceThreshold) {
-		super(spotMapping);
+	public DistanceConstrainedDescriptorDistanceCostFunction(FrameDescriptors sources, FrameDescriptors targets,
+			DescriptorDistance distance, double distanceThreshold) {
+		this(sources, targets, distance, distanceThreshold, Double.POSITIVE_INFINITY);
+	}
+
+	public DistanceConstrainedDescriptorDistanceCostFunction(FrameDescriptors sources, FrameDescriptors targets,
+			DescriptorDistance distance, double distanceThreshold, double costThreshold) {
+		super(sources, targets, distance, costThreshold);
 		this.squareDistanceThreshold = distanceThreshold;
 	}
 
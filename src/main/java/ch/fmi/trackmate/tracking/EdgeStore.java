@@ -0,0 +1,299 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import fiji.plugin.trackmate.Spot;
+
+/**
+ * Compact store of weighted links between spots, as an alternative to a
+ * {@code jgrapht} graph for the raw links of large data sets.
+ * <p>
+ * Spots are registered frame by frame and referred to by a global index, the
+ * offset of their frame plus their dense index in the frame (see
+ * {@link FrameDescriptors}). Each edge takes {@value #EDGE_BYTES} bytes
+ * (source index, target index and cost) in fixed-size chunks outside of the
+ * Java heap. Chunks are allocated as direct buffers until the memory budget is
+ * used up, further chunks are memory-mapped from a temporary file that is
+ * deleted when the store is closed.
+ * </p>
+ * <p>
+ * The budget is capped at half of the direct memory limit of the VM
+ * ({@code -XX:MaxDirectMemorySize}, by default the maximum heap size), so
+ * that a large budget spills to disk instead of failing with an
+ * {@link OutOfMemoryError}. Closing the store frees the chunks right away.
+ * </p>
+ */
+final class EdgeStore implements Closeable, Tracks.Links {
+
+	static final int EDGE_BYTES = 2 * Integer.BYTES + Double.BYTES;
+
+	private static final int CHUNK_EDGES = 1 << 20;
+	private static final long CHUNK_BYTES = (long) CHUNK_EDGES * EDGE_BYTES;
+
+	private final long memoryBudget;
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+	private final Map<Integer, Integer> frameOffsets = new HashMap<>();
+	private final List<Spot[]> frameSpots = new ArrayList<>();
+	private int numSpots;
+	private long size;
+	private FileChannel spillChannel;
+	private int spilledChunks;
+
+	/**
+	 * @param memoryBudget
+	 *            the number of bytes of edges kept in memory, further edges are
+	 *            written to a memory-mapped temporary file
+	 */
+	EdgeStore(long memoryBudget) {
+		this.memoryBudget = Math.min(memoryBudget, maxDirectMemory() / 2);
+	}
+
+	/**
+	 * @return the number of bytes of edges kept in memory, after capping the
+	 *         budget at the direct memory limit
+	 */
+	long memoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * @return the {@code -XX:MaxDirectMemorySize} of this VM, or the maximum
+	 *         heap size, its default
+	 */
+	static long maxDirectMemory() {
+		long max = Runtime.getRuntime().maxMemory();
+		String prefix = "-XX:MaxDirectMemorySize=";
+		for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if (!argument.startsWith(prefix)) continue;
+			String value = argument.substring(prefix.length()).toLowerCase();
+			long unit = 1;
+			int suffix = "kmg".indexOf(value.charAt(value.length() - 1));
+			if (suffix >= 0) {
+				unit = 1L << (10 * (suffix + 1));
+				value = value.substring(0, value.length() - 1);
+			}
+			try {
+				long size = Long.parseLong(value) * unit;
+				// 0 is the default
+				if (size > 0) max = size;
+			} catch (NumberFormatException e) {
+				// keep the default
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Registers the spots of a frame, if not done yet.
+	 * 
+	 * @return the global index of the first spot of {@code frame}
+	 */
+	int frameOffset(int frame, Spot[] spots) {
+		Integer offset = frameOffsets.get(frame);
+		if (offset == null) {
+			offset = numSpots;
+			frameOffsets.put(frame, offset);
+			frameSpots.add(spots);
+			numSpots += spots.length;
+		}
+		return offset;
+	}
+
+	/**
+	 * Appends an edge between two registered spots.
+	 * 
+	 * @throws IOException
+	 *             if a chunk has to be spilled to disk and the temporary file
+	 *             cannot be mapped
+	 */
+	void add(int source, int target, double cost) throws IOException {
+		int position = (int) (size % CHUNK_EDGES);
+		if (position == 0) {
+			chunks.add(allocateChunk());
+		}
+		ByteBuffer chunk = chunks.get(chunks.size() - 1);
+		int byteOffset = position * EDGE_BYTES;
+		chunk.putInt(byteOffset, source);
+		chunk.putInt(byteOffset + Integer.BYTES, target);
+		chunk.putDouble(byteOffset + 2 * Integer.BYTES, cost);
+		size++;
+	}
+
+	private ByteBuffer allocateChunk() throws IOException {
+		long inMemory = (long) (chunks.size() - spilledChunks) * CHUNK_BYTES;
+		if (inMemory + CHUNK_BYTES <= memoryBudget) {
+			return ByteBuffer.allocateDirect((int) CHUNK_BYTES).order(ByteOrder.nativeOrder());
+		}
+		if (spillChannel == null) {
+			Path file = Files.createTempFile("fmi-trackmate-edges", ".tmp");
+			spillChannel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+					StandardOpenOption.DELETE_ON_CLOSE);
+		}
+		ByteBuffer chunk = spillChannel.map(FileChannel.MapMode.READ_WRITE, spilledChunks * CHUNK_BYTES, CHUNK_BYTES);
+		spilledChunks++;
+		return chunk.order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * @return the number of edges
+	 */
+	@Override
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of chunks that were written to disk
+	 */
+	int spilledChunks() {
+		return spilledChunks;
+	}
+
+	/**
+	 * @return the number of registered spots
+	 */
+	int numSpots() {
+		return numSpots;
+	}
+
+	/**
+	 * @return all registered spots, by global index
+	 */
+	@Override
+	public Spot[] spots() {
+		Spot[] spots = new Spot[numSpots];
+		int offset = 0;
+		for (Spot[] frame : frameSpots) {
+			System.arraycopy(frame, 0, spots, offset, frame.length);
+			offset += frame.length;
+		}
+		return spots;
+	}
+
+	@Override
+	public int source(long edge) {
+		return chunk(edge).getInt(byteOffset(edge));
+	}
+
+	@Override
+	public int target(long edge) {
+		return chunk(edge).getInt(byteOffset(edge) + Integer.BYTES);
+	}
+
+	@Override
+	public double cost(long edge) {
+		return chunk(edge).getDouble(byteOffset(edge) + 2 * Integer.BYTES);
+	}
+
+	private ByteBuffer chunk(long edge) {
+		return chunks.get((int) (edge / CHUNK_EDGES));
+	}
+
+	private static int byteOffset(long edge) {
+		return (int) (edge % CHUNK_EDGES) * EDGE_BYTES;
+	}
+
+	/**
+	 * @return a new graph with all edges of this store
+	 */
+	SimpleWeightedGraph<Spot, DefaultWeightedEdge> toGraph() {
+		Spot[] spots = spots();
+		SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+		for (long e = 0; e < size; e++) {
+			Spot source = spots[source(e)];
+			Spot target = spots[target(e)];
+			graph.addVertex(source);
+			graph.addVertex(target);
+			DefaultWeightedEdge edge = graph.addEdge(source, target);
+			if (edge != null) {
+				graph.setEdgeWeight(edge, cost(e));
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * Frees the chunks and deletes the temporary file, if any. The store must
+	 * not be used afterwards.
+	 */
+	@Override
+	public void close() throws IOException {
+		for (ByteBuffer chunk : chunks) {
+			free(chunk);
+		}
+		chunks.clear();
+		frameSpots.clear();
+		size = 0;
+		if (spillChannel != null) {
+			spillChannel.close();
+			spillChannel = null;
+		}
+	}
+
+	/**
+	 * Frees a direct or mapped buffer without waiting for the garbage
+	 * collector, via {@code sun.misc.Unsafe.invokeCleaner} (Java 9 and later)
+	 * or the buffer's cleaner (Java 8). If neither is accessible, the memory
+	 * is returned once the buffer is garbage collected.
+	 */
+	private static void free(ByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// not Java 9 or later
+		}
+		try {
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null) {
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// left to the garbage collector
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.Arrays;
+
+import fiji.plugin.trackmate.Spot;
+
+/**
+ * Point descriptors of all spots in one frame, stored in flat primitive
+ * arrays.
+ * <p>
+ * Each spot gets a dense index when the frame is loaded. For a spot with index
+ * {@code i}, its position is stored at {@code positions[3 * i + d]} and the
+ * coordinates of its {@code n} nearest neighbors, relative to the spot and
+ * ordered by distance, are stored dimension by dimension starting at
+ * {@link #offset(int)}: first the {@code n} x coordinates, then the {@code n}
+ * y and the {@code n} z coordinates.
+ * </p>
+ */
+public final class FrameDescriptors {
+
+	/** Number of dimensions of spot coordinates. */
+	public static final int N_DIMENSIONS = 3;
+
+	private final int frame;
+	private final int numNeighbors;
+	private final Spot[] spots;
+	private final double[] positions;
+	private final double[] descriptors;
+
+	// spot IDs in ascending order and the corresponding dense indices
+	private final int[] sortedIds;
+	private final int[] sortedIndices;
+
+	/**
+	 * Creates descriptor storage for the given spots, in the given order, with
+	 * all neighbor coordinates set to zero.
+	 * 
+	 * @param frame
+	 *            the frame of the spots
+	 * @param spots
+	 *            the spots, the array index is used as dense index
+	 * @param numNeighbors
+	 *            the number of neighbors per descriptor
+	 */
+	public FrameDescriptors(int frame, Spot[] spots, int numNeighbors) {
+		this.frame = frame;
+		this.numNeighbors = numNeighbors;
+		this.spots = spots;
+		this.positions = new double[N_DIMENSIONS * spots.length];
+		this.descriptors = new double[N_DIMENSIONS * numNeighbors * spots.length];
+
+		long[] idIndexPairs = new long[spots.length];
+		for (int i = 0; i < spots.length; i++) {
+			for (int d = 0; d < N_DIMENSIONS; d++) {
+				positions[N_DIMENSIONS * i + d] = spots[i].getDoublePosition(d);
+			}
+			idIndexPairs[i] = ((long) spots[i].ID() << 32) | i;
+		}
+		Arrays.sort(idIndexPairs);
+		sortedIds = new int[spots.length];
+		sortedIndices = new int[spots.length];
+		for (int i = 0; i < spots.length; i++) {
+			sortedIds[i] = (int) (idIndexPairs[i] >> 32);
+			sortedIndices[i] = (int) idIndexPairs[i];
+		}
+	}
+
+	/**
+	 * Sets a neighbor of a spot and stores its coordinates relative to the
+	 * spot.
+	 * 
+	 * @param index
+	 *            dense index of the spot
+	 * @param rank
+	 *            rank of the neighbor, {@code 0} for the nearest one
+	 * @param neighbor
+	 *            dense index of the neighbor
+	 */
+	public void setNeighbor(int index, int rank, int neighbor) {
+		int offset = offset(index);
+		for (int d = 0; d < N_DIMENSIONS; d++) {
+			descriptors[offset + d * numNeighbors + rank] = positions[N_DIMENSIONS * neighbor + d]
+					- positions[N_DIMENSIONS * index + d];
+		}
+	}
+
+	/**
+	 * @param spot
+	 *            a spot
+	 * @return the dense index of the spot, or {@code -1} if the spot is not part
+	 *         of this frame
+	 */
+	public int indexOf(Spot spot) {
+		int i = Arrays.binarySearch(sortedIds, spot.ID());
+		return i < 0 ? -1 : sortedIndices[i];
+	}
+
+	/**
+	 * @param index
+	 *            dense index of a spot
+	 * @return the offset of the descriptor of this spot in
+	 *         {@link #descriptors()}
+	 */
+	public int offset(int index) {
+		return N_DIMENSIONS * numNeighbors * index;
+	}
+
+	public int frame() {
+		return frame;
+	}
+
+	public int size() {
+		return spots.length;
+	}
+
+	public int numNeighbors() {
+		return numNeighbors;
+	}
+
+	public Spot spot(int index) {
+		return spots[index];
+	}
+
+	public Spot[] spots() {
+		return spots;
+	}
+
+	public double[] positions() {
+		return positions;
+	}
+
+	public double[] descriptors() {
+		return descriptors;
+	}
+}
@@ -0,0 +1,222 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jgrapht.Graphs;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import fiji.plugin.trackmate.Spot;
+
+/**
+ * Keeps the pruned graph of an incremental tracking run up to date while
+ * frames are appended, with the same result as pruning the whole raw graph
+ * with {@link Tracks#prune(SimpleWeightedGraph, boolean)}.
+ * <p>
+ * Raw links are only ever added, and only between the new frame and earlier
+ * frames, so components only grow and merge. They are tracked with
+ * union-find. Components that the new frame does not touch keep their pruned
+ * links. A component that only extends a single pruned component, all of
+ * whose pruned links are direct raw links, is extended by linking its last
+ * frame to the new spots, if these links are direct raw links too. Otherwise,
+ * i.e. when components merge or a pruned link needs a shortest path, the
+ * touched component is pruned again as a whole. Tracks that merge or have
+ * links skipping spots of the same component therefore still cost time in
+ * proportion to their length on every frame that touches them.
+ * </p>
+ */
+final class IncrementalPruner {
+
+	private final SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph;
+	private final SimpleWeightedGraph<Spot, DefaultWeightedEdge> prunedGraph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+
+	// union-find over the linked spots
+	private final Map<Spot, Spot> parents = new HashMap<>();
+	// state of each pruned component, by root
+	private final Map<Spot, ComponentState> states = new HashMap<>();
+
+	private static final class ComponentState {
+		/** the spots of the last frame of the component */
+		List<Spot> lastSpots;
+		/** whether a pruned link of the component is not a raw link */
+		boolean indirect;
+	}
+
+	/**
+	 * @param graph
+	 *            the raw graph that frames are appended to
+	 */
+	IncrementalPruner(SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph) {
+		this.graph = graph;
+	}
+
+	/**
+	 * @return the pruned graph, updated by {@link #frameAdded(Collection)}
+	 */
+	SimpleWeightedGraph<Spot, DefaultWeightedEdge> prunedGraph() {
+		return prunedGraph;
+	}
+
+	/**
+	 * Updates the pruned graph after the links of a new frame were added to
+	 * the raw graph. The new frame has to be later than all frames added
+	 * before.
+	 * 
+	 * @param frameSpots
+	 *            the spots of the new frame
+	 */
+	void frameAdded(Collection<Spot> frameSpots) {
+		// the old components that each new component joins, before merging them
+		Map<Spot, Set<Spot>> oldRoots = new LinkedHashMap<>();
+		Map<Spot, List<Spot>> newSpots = new LinkedHashMap<>();
+		List<Spot> linkedSpots = new ArrayList<>();
+		for (Spot spot : frameSpots) {
+			if (!graph.containsVertex(spot) || graph.degreeOf(spot) == 0) continue;
+			linkedSpots.add(spot);
+			Set<Spot> roots = new HashSet<>();
+			for (Spot neighbor : Graphs.neighborListOf(graph, spot)) {
+				roots.add(find(neighbor));
+			}
+			oldRoots.put(spot, roots);
+		}
+		for (Spot spot : linkedSpots) {
+			for (Spot root : oldRoots.get(spot)) {
+				union(spot, root);
+			}
+		}
+		Map<Spot, Set<Spot>> joinedRoots = new LinkedHashMap<>();
+		for (Spot spot : linkedSpots) {
+			Spot root = find(spot);
+			joinedRoots.computeIfAbsent(root, r -> new LinkedHashSet<>()).addAll(oldRoots.get(spot));
+			newSpots.computeIfAbsent(root, r -> new ArrayList<>()).add(spot);
+		}
+
+		for (Map.Entry<Spot, Set<Spot>> entry : joinedRoots.entrySet()) {
+			Spot root = entry.getKey();
+			Set<Spot> joined = entry.getValue();
+			List<Spot> spots = newSpots.get(root);
+			ComponentState state = joined.size() == 1 ? states.get(joined.iterator().next()) : null;
+			if (state == null || state.indirect || !extend(state, spots)) {
+				state = prune(spots);
+			}
+			for (Spot oldRoot : joined) {
+				states.remove(oldRoot);
+			}
+			state.lastSpots = spots;
+			states.put(root, state);
+		}
+	}
+
+	/**
+	 * Links the last frame of a component to its new spots, if all these
+	 * links are raw links.
+	 * 
+	 * @return {@code false} if the component has to be pruned again instead
+	 */
+	private boolean extend(ComponentState state, List<Spot> spots) {
+		for (Spot source : state.lastSpots) {
+			for (Spot target : spots) {
+				if (!graph.containsEdge(source, target)) return false;
+			}
+		}
+		for (Spot source : state.lastSpots) {
+			for (Spot target : spots) {
+				prunedGraph.addVertex(target);
+				DefaultWeightedEdge edge = prunedGraph.addEdge(source, target);
+				prunedGraph.setEdgeWeight(edge, graph.getEdgeWeight(graph.getEdge(source, target)));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Prunes the whole component of the given spots again.
+	 * 
+	 * @return the new state of the component, without its last spots
+	 */
+	private ComponentState prune(List<Spot> spots) {
+		// the component in the raw graph
+		Set<Spot> component = new HashSet<>(spots);
+		ArrayDeque<Spot> queue = new ArrayDeque<>(spots);
+		SimpleWeightedGraph<Spot, DefaultWeightedEdge> componentGraph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+		while (!queue.isEmpty()) {
+			Spot spot = queue.poll();
+			componentGraph.addVertex(spot);
+			for (DefaultWeightedEdge edge : graph.edgesOf(spot)) {
+				Spot neighbor = Graphs.getOppositeVertex(graph, edge, spot);
+				if (component.add(neighbor)) {
+					queue.add(neighbor);
+				}
+				componentGraph.addVertex(neighbor);
+				if (!componentGraph.containsEdge(spot, neighbor)) {
+					componentGraph.setEdgeWeight(componentGraph.addEdge(spot, neighbor), graph.getEdgeWeight(edge));
+				}
+			}
+		}
+
+		prunedGraph.removeAllVertices(component);
+		ComponentState state = new ComponentState();
+		SimpleWeightedGraph<Spot, DefaultWeightedEdge> pruned = Tracks.prune(componentGraph, true);
+		for (DefaultWeightedEdge edge : pruned.edgeSet()) {
+			Spot source = pruned.getEdgeSource(edge);
+			Spot target = pruned.getEdgeTarget(edge);
+			prunedGraph.addVertex(source);
+			prunedGraph.addVertex(target);
+			prunedGraph.setEdgeWeight(prunedGraph.addEdge(source, target), pruned.getEdgeWeight(edge));
+			state.indirect |= !graph.containsEdge(source, target);
+		}
+		return state;
+	}
+
+	private Spot find(Spot spot) {
+		Spot root = spot;
+		Spot parent;
+		while ((parent = parents.get(root)) != null) {
+			root = parent;
+		}
+		// path compression
+		while ((parent = parents.get(spot)) != null && parent != root) {
+			parents.put(spot, root);
+			spot = parent;
+		}
+		return root;
+	}
+
+	private void union(Spot a, Spot b) {
+		Spot rootA = find(a);
+		Spot rootB = find(b);
+		if (rootA != rootB) {
+			parents.put(rootA, rootB);
+		}
+	}
+}
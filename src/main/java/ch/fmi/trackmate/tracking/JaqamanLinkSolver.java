@@ -0,0 +1,63 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.Map;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.jaqaman.JaqamanLinker;
+import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.CostMatrixCreatorInterface;
+
+/**
+ * {@link LinkSolver} that runs the {@link JaqamanLinker} of TrackMate on a
+ * single thread.
+ */
+public final class JaqamanLinkSolver implements LinkSolver {
+
+	private JaqamanLinker<Spot, Spot> linker;
+	private String errorMessage;
+
+	@Override
+	public boolean solve(CostMatrixCreatorInterface<Spot, Spot> costMatrixCreator) {
+		linker = new JaqamanLinker<>(costMatrixCreator);
+		if (!linker.checkInput() || !linker.process()) {
+			errorMessage = linker.getErrorMessage();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public Map<Spot, Spot> getResult() {
+		return linker.getResult();
+	}
+
+	@Override
+	public Map<Spot, Double> getAssignmentCosts() {
+		return linker.getAssignmentCosts();
+	}
+
+	@Override
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+}
@@ -0,0 +1,122 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.Arrays;
+
+import fiji.plugin.trackmate.Spot;
+
+/**
+ * Growable primitive buffer of links (source index, target index, cost)
+ * between the spots of one frame pair, using the dense spot indices of
+ * {@link FrameDescriptors}. The spots of both frames are kept, so links can be
+ * resolved after the descriptors were discarded.
+ */
+public final class LinkBuffer {
+
+	private final int sourceFrame;
+	private final int targetFrame;
+	private final Spot[] sourceSpots;
+	private final Spot[] targetSpots;
+	private int[] sources;
+	private int[] targets;
+	private double[] costs;
+	private int size;
+
+	public LinkBuffer(FrameDescriptors sources, FrameDescriptors targets, int initialCapacity) {
+		this.sourceFrame = sources.frame();
+		this.targetFrame = targets.frame();
+		this.sourceSpots = sources.spots();
+		this.targetSpots = targets.spots();
+		int capacity = Math.max(1, initialCapacity);
+		this.sources = new int[capacity];
+		this.targets = new int[capacity];
+		this.costs = new double[capacity];
+	}
+
+	public void add(int source, int target, double cost) {
+		if (size == sources.length) {
+			int capacity = 2 * size;
+			sources = Arrays.copyOf(sources, capacity);
+			targets = Arrays.copyOf(targets, capacity);
+			costs = Arrays.copyOf(costs, capacity);
+		}
+		sources[size] = source;
+		targets[size] = target;
+		costs[size] = cost;
+		size++;
+	}
+
+	public int sourceFrame() {
+		return sourceFrame;
+	}
+
+	public int targetFrame() {
+		return targetFrame;
+	}
+
+	public int numSources() {
+		return sourceSpots.length;
+	}
+
+	public int numTargets() {
+		return targetSpots.length;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int source(int i) {
+		return sources[i];
+	}
+
+	public int target(int i) {
+		return targets[i];
+	}
+
+	public double cost(int i) {
+		return costs[i];
+	}
+
+	public Spot sourceSpot(int i) {
+		return sourceSpots[sources[i]];
+	}
+
+	public Spot targetSpot(int i) {
+		return targetSpots[targets[i]];
+	}
+
+	/**
+	 * @return the spots of the source frame, by dense index
+	 */
+	public Spot[] sourceSpots() {
+		return sourceSpots;
+	}
+
+	/**
+	 * @return the spots of the target frame, by dense index
+	 */
+	public Spot[] targetSpots() {
+		return targetSpots;
+	}
+}
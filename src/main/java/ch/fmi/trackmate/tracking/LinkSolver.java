@@ -0,0 +1,60 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.Map;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.CostMatrixCreatorInterface;
+
+/**
+ * Solver of the linear assignment problem of one frame pair: every source is
+ * linked to at most one target and vice versa, or left unlinked at the
+ * alternative cost of the cost matrix creator.
+ * <p>
+ * Instances are used for a single frame pair.
+ * </p>
+ */
+public interface LinkSolver {
+
+	/**
+	 * Creates the cost matrix with {@code costMatrixCreator} and solves it.
+	 * 
+	 * @param costMatrixCreator
+	 *            the creator of the cost matrix, not processed yet
+	 * @return {@code false} if the cost matrix cannot be created or solved,
+	 *         with an error message
+	 */
+	boolean solve(CostMatrixCreatorInterface<Spot, Spot> costMatrixCreator);
+
+	/**
+	 * @return the target of each linked source
+	 */
+	Map<Spot, Spot> getResult();
+
+	/**
+	 * @return the cost of the link of each linked source
+	 */
+	Map<Spot, Double> getAssignmentCosts();
+
+	String getErrorMessage();
+}
@@ -0,0 +1,38 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+/**
+ * Choice of the {@link LinkSolver} used for frame pairs by
+ * {@link PointDescriptorTracker}.
+ */
+public enum LinkSolverType {
+
+	/** {@link AuctionLinkSolver} for large frame pairs, Jaqaman otherwise. */
+	AUTO,
+
+	/** Always {@link JaqamanLinkSolver}. */
+	JAQAMAN,
+
+	/** {@link AuctionLinkSolver} wherever the cost matrix allows it. */
+	AUCTION;
+}
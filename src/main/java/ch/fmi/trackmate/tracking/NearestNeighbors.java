@@ -0,0 +1,101 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.KDTree;
+import net.imglib2.RealLocalizable;
+import net.imglib2.neighborsearch.KNearestNeighborSearchOnKDTree;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+
+/**
+ * Batched k-nearest-neighbor graph of a point cloud.
+ * <p>
+ * One {@link KDTree} is built over all points, then all points are queried in
+ * blocks that run in parallel on the current {@link Parallelization} context,
+ * each block with its own {@link KNearestNeighborSearchOnKDTree}. The result is
+ * written to a single flat {@code int[]}.
+ * </p>
+ */
+public final class NearestNeighbors {
+
+	// points per parallel task
+	private static final int BLOCK_SIZE = 1024;
+
+	private NearestNeighbors() {
+		// prevent instantiation of static utility class
+	}
+
+	/**
+	 * Finds the {@code k} nearest neighbors of every point, excluding the point
+	 * itself.
+	 * 
+	 * @param points
+	 *            the points, the list index is used as point index
+	 * @param k
+	 *            number of neighbors per point
+	 * @return the neighbor indices of point {@code i} ordered by distance at
+	 *         {@code [k * i, k * i + k)}, padded with {@code -1} if there are
+	 *         fewer than {@code k} other points
+	 */
+	public static int[] build(List<? extends RealLocalizable> points, int k) {
+		int n = points.size();
+		int[] neighbors = new int[n * k];
+		Arrays.fill(neighbors, -1);
+		if (n < 2 || k < 1) {
+			return neighbors;
+		}
+
+		// the value of each tree node is the point index
+		List<Integer> indices = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			indices.add(i);
+		}
+		KDTree<Integer> tree = new KDTree<>(indices, points);
+		int numResults = Math.min(k + 1, n);
+
+		List<int[]> blocks = new ArrayList<>();
+		for (int start = 0; start < n; start += BLOCK_SIZE) {
+			blocks.add(new int[] { start, Math.min(start + BLOCK_SIZE, n) });
+		}
+		TaskExecutor executor = Parallelization.getTaskExecutor();
+		executor.forEach(blocks, block -> {
+			KNearestNeighborSearchOnKDTree<Integer> search = new KNearestNeighborSearchOnKDTree<>(tree, numResults);
+			for (int i = block[0]; i < block[1]; i++) {
+				search.search(points.get(i));
+				// skip the point itself, usually the first result unless positions coincide
+				int rank = 0;
+				for (int r = 0; r < numResults && rank < k; r++) {
+					int neighbor = search.getSampler(r).get();
+					if (neighbor != i) {
+						neighbors[k * i + rank++] = neighbor;
+					}
+				}
+			}
+		});
+		return neighbors;
+	}
+}
@@ -0,0 +1,390 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import fiji.plugin.trackmate.Spot;
+
+/**
+ * Prunes the links of frame pairs while they are being linked, without
+ * building the raw graph.
+ * <p>
+ * A frame is pruned once all frame pairs within the window of {@code reach}
+ * frames before and after it are linked. It is pruned like
+ * {@link Tracks#prune(SimpleWeightedGraph, boolean)} does, but with connected
+ * components and path weights restricted to that window: every spot is linked
+ * to all spots of its window component in the next frame of that component.
+ * Windows are taken in ascending frame order, and the links of a frame pair are
+ * released once no later window contains its source frame. If the pairs are
+ * linked in frame order, only the links of about {@code 2 * reach} frames plus
+ * the pairs in progress are held at any time.
+ * </p>
+ * <p>
+ * The lock of {@link #pairDone(int, LinkBuffer)} only covers the bookkeeping,
+ * the windows are pruned by the calling threads concurrently with linking.
+ * Pruned frames are added to the graph in frame order, so the result does not
+ * depend on the number of threads.
+ * </p>
+ * <p>
+ * The result equals the one of {@link Tracks} unless two spots of a component
+ * are only connected through frames outside the window, or their cheapest
+ * path leaves the window.
+ * </p>
+ */
+final class OnlinePruner {
+
+	private final int reach;
+	private final SimpleWeightedGraph<Spot, DefaultWeightedEdge> prunedGraph;
+
+	// frames of all pairs, ascending, with the pairs starting at each frame
+	private final int[] frames;
+	private final List<List<Integer>> pairsBySource;
+	private final List<int[]> framePairs;
+	// number of pairs within the window of each frame that are not linked yet
+	private final int[] pending;
+	private final LinkBuffer[] pairLinks;
+	private int nextFrame;
+	private int released;
+	private int held;
+	private int maxHeld;
+	// pruned frames waiting for the earlier frames, guarded by itself
+	private final PrunedFrame[] prunedFrames;
+	private int nextCommit;
+
+	/**
+	 * @param framePairs
+	 *            source and target frame of all frame pairs
+	 * @param reach
+	 *            number of frames before and after each frame that are
+	 *            considered when pruning it
+	 * @param prunedGraph
+	 *            graph that receives the pruned links
+	 */
+	OnlinePruner(List<int[]> framePairs, int reach, SimpleWeightedGraph<Spot, DefaultWeightedEdge> prunedGraph) {
+		this.framePairs = framePairs;
+		this.reach = reach;
+		this.prunedGraph = prunedGraph;
+
+		TreeSet<Integer> frameSet = new TreeSet<>();
+		for (int[] framePair : framePairs) {
+			frameSet.add(framePair[0]);
+			frameSet.add(framePair[1]);
+		}
+		frames = frameSet.stream().mapToInt(Integer::intValue).toArray();
+		pairsBySource = new ArrayList<>(frames.length);
+		for (int i = 0; i < frames.length; i++) {
+			pairsBySource.add(new ArrayList<>());
+		}
+		pending = new int[frames.length];
+		for (int i = 0; i < framePairs.size(); i++) {
+			int[] framePair = framePairs.get(i);
+			int source = position(framePair[0]);
+			pairsBySource.get(source).add(i);
+			for (int f = firstWindow(framePair); f <= lastWindow(framePair); f++) {
+				pending[f]++;
+			}
+		}
+		pairLinks = new LinkBuffer[framePairs.size()];
+		prunedFrames = new PrunedFrame[frames.length];
+	}
+
+	private int position(int frame) {
+		return Arrays.binarySearch(frames, frame);
+	}
+
+	/**
+	 * @return the position of the first frame whose window contains the pair,
+	 *         i.e. the first frame {@code f >= target - reach}
+	 */
+	private int firstWindow(int[] framePair) {
+		int i = position(framePair[1] - reach);
+		return i >= 0 ? i : -i - 1;
+	}
+
+	/**
+	 * @return the position of the last frame whose window contains the pair,
+	 *         i.e. the last frame {@code f <= source + reach}
+	 */
+	private int lastWindow(int[] framePair) {
+		int i = position(framePair[0] + reach);
+		return i >= 0 ? i : -i - 2;
+	}
+
+	/**
+	 * Stores the links of a frame pair, then prunes all frames whose windows
+	 * are complete. Threads linking other pairs only wait for the bookkeeping,
+	 * not while frames are being pruned.
+	 * 
+	 * @param pair
+	 *            index of the frame pair
+	 * @param links
+	 *            the links of the frame pair
+	 */
+	void pairDone(int pair, LinkBuffer links) {
+		List<Window> windows = new ArrayList<>();
+		synchronized (this) {
+			pairLinks[pair] = links;
+			held++;
+			maxHeld = Math.max(maxHeld, held);
+			int[] framePair = framePairs.get(pair);
+			for (int f = firstWindow(framePair); f <= lastWindow(framePair); f++) {
+				pending[f]--;
+			}
+			while (nextFrame < frames.length && pending[nextFrame] == 0) {
+				windows.add(window(nextFrame));
+				nextFrame++;
+				// release the pairs that are not part of any later window
+				int firstNeeded = nextFrame < frames.length ? frames[nextFrame] - reach : Integer.MAX_VALUE;
+				while (released < frames.length && frames[released] < firstNeeded) {
+					for (int i : pairsBySource.get(released)) {
+						pairLinks[i] = null;
+						held--;
+					}
+					released++;
+				}
+			}
+		}
+		for (Window window : windows) {
+			commit(window.position, pruneFrame(window));
+		}
+	}
+
+	/**
+	 * @return {@code true} if all frames were pruned and added to the graph
+	 */
+	boolean isDone() {
+		synchronized (prunedFrames) {
+			return nextCommit == frames.length;
+		}
+	}
+
+	/**
+	 * @return the largest number of frame pairs whose links were held at the
+	 *         same time
+	 */
+	synchronized int maxHeldPairs() {
+		return maxHeld;
+	}
+
+	/**
+	 * The links of the frame pairs within the window of a frame.
+	 */
+	private static final class Window {
+
+		private final int position;
+		private final List<LinkBuffer> links;
+
+		private Window(int position, List<LinkBuffer> links) {
+			this.position = position;
+			this.links = links;
+		}
+	}
+
+	/**
+	 * The pruned links of one frame, added to the graph in frame order.
+	 */
+	private static final class PrunedFrame {
+
+		private final List<Spot> sources = new ArrayList<>();
+		private final List<Spot> targets = new ArrayList<>();
+		private final List<Double> weights = new ArrayList<>();
+
+		private void add(Spot source, Spot target, double weight) {
+			sources.add(source);
+			targets.add(target);
+			weights.add(weight);
+		}
+	}
+
+	private Window window(int position) {
+		int frame = frames[position];
+		int first = firstWindow(new int[] { frame, frame });
+		int last = lastWindow(new int[] { frame, frame });
+		List<LinkBuffer> links = new ArrayList<>();
+		for (int f = first; f <= last; f++) {
+			for (int i : pairsBySource.get(f)) {
+				if (framePairs.get(i)[1] <= frame + reach) {
+					links.add(pairLinks[i]);
+				}
+			}
+		}
+		return new Window(position, links);
+	}
+
+	private void commit(int position, PrunedFrame prunedFrame) {
+		synchronized (prunedFrames) {
+			prunedFrames[position] = prunedFrame;
+			while (nextCommit < frames.length && prunedFrames[nextCommit] != null) {
+				PrunedFrame next = prunedFrames[nextCommit];
+				for (int i = 0; i < next.sources.size(); i++) {
+					Spot source = next.sources.get(i);
+					Spot target = next.targets.get(i);
+					prunedGraph.addVertex(source);
+					prunedGraph.addVertex(target);
+					DefaultWeightedEdge edge = prunedGraph.addEdge(source, target);
+					prunedGraph.setEdgeWeight(edge, next.weights.get(i));
+				}
+				prunedFrames[nextCommit++] = null;
+			}
+		}
+	}
+
+	/**
+	 * Prunes the frame of {@code window}, without modifying any shared state.
+	 */
+	private PrunedFrame pruneFrame(Window window) {
+		int position = window.position;
+		int frame = frames[position];
+		int first = firstWindow(new int[] { frame, frame });
+		int last = lastWindow(new int[] { frame, frame });
+
+		// spots of the window frames, indexed from offsets[f - first]
+		int nFrames = last - first + 1;
+		Spot[][] frameSpots = new Spot[nFrames][];
+		for (LinkBuffer links : window.links) {
+			frameSpots[position(links.sourceFrame()) - first] = links.sourceSpots();
+			frameSpots[position(links.targetFrame()) - first] = links.targetSpots();
+		}
+		PrunedFrame prunedFrame = new PrunedFrame();
+		int current = position - first;
+		if (frameSpots[current] == null) {
+			return prunedFrame; // no links
+		}
+		int[] offsets = new int[nFrames + 1];
+		for (int f = 0; f < nFrames; f++) {
+			offsets[f + 1] = offsets[f] + (frameSpots[f] == null ? 0 : frameSpots[f].length);
+		}
+		int n = offsets[nFrames];
+
+		// window graph as adjacency lists, and its connected components
+		int[] degrees = new int[n + 1];
+		for (LinkBuffer links : window.links) {
+			int sourceOffset = offsets[position(links.sourceFrame()) - first];
+			int targetOffset = offsets[position(links.targetFrame()) - first];
+			for (int i = 0; i < links.size(); i++) {
+				degrees[sourceOffset + links.source(i) + 1]++;
+				degrees[targetOffset + links.target(i) + 1]++;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			degrees[i + 1] += degrees[i];
+		}
+		int[] neighbors = new int[degrees[n]];
+		double[] weights = new double[degrees[n]];
+		int[] next = Arrays.copyOf(degrees, n);
+		int[] parent = new int[n];
+		for (int i = 0; i < n; i++) {
+			parent[i] = i;
+		}
+		for (LinkBuffer links : window.links) {
+			int sourceOffset = offsets[position(links.sourceFrame()) - first];
+			int targetOffset = offsets[position(links.targetFrame()) - first];
+			for (int i = 0; i < links.size(); i++) {
+				int source = sourceOffset + links.source(i);
+				int target = targetOffset + links.target(i);
+				neighbors[next[source]] = target;
+				weights[next[source]++] = links.cost(i);
+				neighbors[next[target]] = source;
+				weights[next[target]++] = links.cost(i);
+				int a = find(parent, source);
+				int b = find(parent, target);
+				if (a != b) {
+					parent[Math.max(a, b)] = Math.min(a, b);
+				}
+			}
+		}
+
+		// first frame after the current one of each component
+		int[] nextFrames = new int[n];
+		Arrays.fill(nextFrames, -1);
+		for (int f = current + 1; f < nFrames; f++) {
+			for (int i = offsets[f]; i < offsets[f + 1]; i++) {
+				int root = find(parent, i);
+				if (nextFrames[root] < 0 && degrees[i + 1] > degrees[i]) {
+					nextFrames[root] = f;
+				}
+			}
+		}
+
+		for (int s = offsets[current]; s < offsets[current + 1]; s++) {
+			int root = find(parent, s);
+			if (degrees[s + 1] == degrees[s] || nextFrames[root] < 0) continue;
+			int f = nextFrames[root];
+			double[] pathWeights = null;
+			for (int t = offsets[f]; t < offsets[f + 1]; t++) {
+				if (find(parent, t) != root) continue;
+				double weight = Double.NaN;
+				for (int k = degrees[s]; k < degrees[s + 1]; k++) {
+					if (neighbors[k] == t) weight = weights[k];
+				}
+				if (Double.isNaN(weight)) {
+					if (pathWeights == null) {
+						pathWeights = shortestPaths(degrees, neighbors, weights, s);
+					}
+					weight = pathWeights[t];
+				}
+				prunedFrame.add(frameSpots[current][s - offsets[current]], frameSpots[f][t - offsets[f]], weight);
+			}
+		}
+		return prunedFrame;
+	}
+
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Dijkstra search from {@code source} within the window graph.
+	 */
+	private static double[] shortestPaths(int[] offsets, int[] neighbors, double[] weights, int source) {
+		double[] distances = new double[offsets.length - 1];
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		distances[source] = 0;
+		PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+		queue.add(new double[] { 0, source });
+		while (!queue.isEmpty()) {
+			double[] head = queue.poll();
+			int spot = (int) head[1];
+			if (head[0] > distances[spot]) continue;
+			for (int k = offsets[spot]; k < offsets[spot + 1]; k++) {
+				double distance = head[0] + weights[k];
+				if (distance < distances[neighbors[k]]) {
+					distances[neighbors[k]] = distance;
+					queue.add(new double[] { distance, neighbors[k] });
+				}
+			}
+		}
+		return distances;
+	}
+}
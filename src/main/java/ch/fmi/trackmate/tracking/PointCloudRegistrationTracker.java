@@ -24,6 +24,7 @@ package ch.fmi.trackmate.tracking;
 import com.google.common.collect.Lists;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
@@ -35,7 +36,9 @@ import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.tracking.SpotTracker;
 import mpicbg.imglib.algorithm.scalespace.DifferenceOfGaussianPeak;
 import mpicbg.imglib.type.numeric.real.FloatType;
+import mpicbg.models.PointMatch;
 import mpicbg.models.RigidModel3D;
+import net.imglib2.parallel.Parallelization;
 import plugin.DescriptorParameters;
 import process.ComparePair;
 import process.Matching;
@@ -59,6 +62,8 @@ public class PointCloudRegistrationTracker implements SpotTracker {
 	private boolean discardLowCoverage;
 	private double minCoverage;
 
+	private int numThreads;
+	private Logger logger = Logger.VOID_LOGGER;
 	private String errorMessage;
 
 	public PointCloudRegistrationTracker(final SpotCollection spots, int minNumInliers, int frameRange, boolean discardLowCoverage, double minCoverage) {
@@ -67,6 +72,7 @@ public class PointCloudRegistrationTracker implements SpotTracker {
 		this.discardLowCoverage = discardLowCoverage;
 		this.minCoverage = minCoverage;
 		this.spots = spots;
+		setNumThreads();
 	}
 
 	@Override
@@ -85,42 +91,87 @@ public class PointCloudRegistrationTracker implements SpotTracker {
 
 	@Override
 	public boolean process() {
-		// Create list of peaks
-		ArrayList<ArrayList<DifferenceOfGaussianPeak<FloatType>>> peakListList = new ArrayList<>();
-		spots.keySet().forEach(f -> {
-			peakListList.add(spotsToPeakList(spots.iterable(f, false)));
-		});
+		// Index spots and create peaks once per frame, in the same order
+		List<Integer> frames = new ArrayList<>(spots.keySet());
+		List<Spot[]> frameSpots = new ArrayList<>(frames.size());
+		List<ArrayList<DifferenceOfGaussianPeak<FloatType>>> peakLists = new ArrayList<>(frames.size());
+		for (Integer frame : frames) {
+			Spot[] spotArray = Lists.newArrayList(spots.iterable(frame, false)).toArray(new Spot[0]);
+			frameSpots.add(spotArray);
+			peakLists.add(spotsToPeakList(spotArray));
+		}
 
-		// Get parameters for matching
-		DescriptorParameters params = createDescriptorParameters(frameRange);
+		// Pairs of frame indices within the frame range
+		List<int[]> framePairs = new ArrayList<>();
+		for (int a = 0; a < frames.size(); a++) {
+			for (int b = a + 1; b < frames.size() && frames.get(b) - frames.get(a) <= frameRange; b++) {
+				framePairs.add(new int[] { a, b });
+			}
+		}
 
-		Vector<ComparePair> comparePairs = Matching.descriptorMatching(peakListList, peakListList.size(), params, 1.0f);
+		// Match each pair independently: descriptor matching and RANSAC
+		logger.log("Matching " + framePairs.size() + " frame pairs on " + numThreads + " threads.\n");
+		List<ComparePair> comparePairs = Parallelization.runWithNumThreads(numThreads,
+				() -> Parallelization.getTaskExecutor().forEachApply(framePairs,
+						framePair -> matchFramePair(peakLists.get(framePair[0]), peakLists.get(framePair[1]))));
 
-		// Create and populate graph
-		// TODO multi-threaded?
+		// Create and populate graph, in frame pair order
 		// TODO implement discard low coverage
 		graph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
-		comparePairs.forEach(pair -> {
-			if (pair.inliers.size() < minNumInliers) return;
-			ArrayList<Spot> thisFrameSpotList = Lists.newArrayList(spots.iterable(pair.indexA, false));
-			ArrayList<Spot> otherFrameSpotList = Lists.newArrayList(spots.iterable(pair.indexB, false));
-			pair.inliers.forEach(pointMatch -> {
-				long thisIndex = ((Particle) pointMatch.getP1()).getID();
-				long otherIndex = ((Particle) pointMatch.getP2()).getID() - peakListList.get(pair.indexA).size();
-				Spot thisSpot = thisFrameSpotList.get((int) thisIndex);
-				Spot otherSpot = otherFrameSpotList.get((int) otherIndex);
+		for (int i = 0; i < framePairs.size(); i++) {
+			ComparePair pair = comparePairs.get(i);
+			if (pair == null || pair.inliers.size() < minNumInliers) continue;
+			Spot[] thisFrameSpots = frameSpots.get(framePairs.get(i)[0]);
+			Spot[] otherFrameSpots = frameSpots.get(framePairs.get(i)[1]);
+			for (PointMatch pointMatch : pair.inliers) {
+				// particles of the second frame are numbered after those of the first
+				int thisIndex = (int) ((Particle) pointMatch.getP1()).getID();
+				int otherIndex = (int) ((Particle) pointMatch.getP2()).getID() - thisFrameSpots.length;
+				Spot thisSpot = thisFrameSpots[thisIndex];
+				Spot otherSpot = otherFrameSpots[otherIndex];
 				graph.addVertex(thisSpot);
 				graph.addVertex(otherSpot);
 				DefaultWeightedEdge edge = graph.addEdge(thisSpot, otherSpot);
-				graph.setEdgeWeight(edge, pair.model.getCost());
-			});
-		});
+				if (edge != null) {
+					graph.setEdgeWeight(edge, pair.model.getCost());
+				}
+			}
+		}
 
-		prunedGraph = Tracks.prune(graph, false);
+		prunedGraph = Parallelization.runWithNumThreads(numThreads, () -> Tracks.prune(graph, false));
 
 		return true;
 	}
 
+	/**
+	 * Runs descriptor matching and RANSAC on a single pair of frames.
+	 * <p>
+	 * Pairs are matched concurrently on {@code numThreads} workers. Each call
+	 * of {@link Matching#descriptorMatching} builds its own pair list,
+	 * particles and matcher from its arguments, and gets its own parameters
+	 * and model. It starts its own threads for its pairs, but with a single
+	 * pair only one of them has work, so about {@code numThreads} threads are
+	 * busy at any time. Shared state is limited to the static defaults of
+	 * {@link DescriptorParameters}, which are only read, and the static random
+	 * generator that mpicbg models use for RANSAC. The latter is thread-safe,
+	 * but with several threads the samples drawn for a pair depend on
+	 * scheduling, as they already did with the plugin's own threads. Inliers
+	 * of borderline pairs can therefore differ between runs; with one thread
+	 * the result is reproducible.
+	 * </p>
+	 * 
+	 * @return the matching result, or {@code null} if no model was found
+	 */
+	private ComparePair matchFramePair(ArrayList<DifferenceOfGaussianPeak<FloatType>> peaksA,
+			ArrayList<DifferenceOfGaussianPeak<FloatType>> peaksB) {
+		ArrayList<ArrayList<DifferenceOfGaussianPeak<FloatType>>> peakListList = new ArrayList<>(2);
+		peakListList.add(peaksA);
+		peakListList.add(peaksB);
+		// new parameters for each pair, the model is not shared between threads
+		Vector<ComparePair> result = Matching.descriptorMatching(peakListList, 2, createDescriptorParameters(1), 1.0f);
+		return result == null || result.isEmpty() ? null : result.get(0);
+	}
+
 	private DescriptorParameters createDescriptorParameters(int range) {
 		DescriptorParameters params = new DescriptorParameters();
 		params.model = new RigidModel3D();
@@ -135,13 +186,13 @@ public class PointCloudRegistrationTracker implements SpotTracker {
 		return params;
 	}
 
-	private ArrayList<DifferenceOfGaussianPeak<FloatType>> spotsToPeakList(Iterable<Spot> iterable) {
-		ArrayList<DifferenceOfGaussianPeak<FloatType>> list = new ArrayList<>();
+	private ArrayList<DifferenceOfGaussianPeak<FloatType>> spotsToPeakList(Spot[] spotArray) {
+		ArrayList<DifferenceOfGaussianPeak<FloatType>> list = new ArrayList<>(spotArray.length);
 		double[] realPosition = new double[3];
 		int[] position = new int[3];
-		iterable.forEach(spot -> {
+		for (Spot spot : spotArray) {
 			list.add(Spots.createPeak(spot, realPosition, position));
-		});
+		}
 		return list;
 	}
 
@@ -152,22 +203,22 @@ public class PointCloudRegistrationTracker implements SpotTracker {
 
 	@Override
 	public void setNumThreads() {
-		// Ignore for now
+		this.numThreads = Runtime.getRuntime().availableProcessors();
 	}
 
 	@Override
 	public void setNumThreads(int numThreads) {
-		// Ignore for now
+		this.numThreads = numThreads;
 	}
 
 	@Override
 	public int getNumThreads() {
-		return 1;
+		return numThreads;
 	}
 
 	@Override
 	public void setLogger(Logger logger) {
-		// Ignore for now
+		this.logger = logger;
 	}
 
 }
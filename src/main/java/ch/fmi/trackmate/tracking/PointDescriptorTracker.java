@@ -21,37 +21,45 @@
  */
 package ch.fmi.trackmate.tracking;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
+import org.jgrapht.Graphs;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
+import org.scijava.Cancelable;
 
+import com.google.common.collect.Lists;
+
+import ch.fmi.trackmate.tracking.TrackerMetrics.FrameMetrics;
+import ch.fmi.trackmate.tracking.TrackerMetrics.PairMetrics;
+import ch.fmi.trackmate.tracking.TrackerMetrics.Phase;
 import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.tracking.SpotTracker;
+import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.CostMatrixCreatorInterface;
+import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.DefaultCostMatrixCreator;
 import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.JaqamanLinkingCostMatrixCreator;
 import fiji.plugin.trackmate.tracking.jaqaman.JaqamanLinker;
-import fiji.util.KDTree;
-import fiji.util.NNearestNeighborSearch;
-// TODO use multiview-reconstruction
-import mpicbg.pointdescriptor.SimplePointDescriptor;
-import mpicbg.pointdescriptor.exception.NoSuitablePointsException;
-import mpicbg.pointdescriptor.matcher.Matcher;
-import mpicbg.pointdescriptor.matcher.SubsetMatcher;
-import mpicbg.pointdescriptor.similarity.SimilarityMeasure;
-import mpicbg.pointdescriptor.similarity.SquareDistance;
+import net.imglib2.KDTree;
 import net.imglib2.algorithm.BenchmarkAlgorithm;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnKDTree;
 import net.imglib2.parallel.Parallelization;
-import process.Particle;
+import net.imglib2.parallel.TaskExecutor;
 
 /**
  * A {@link SpotTracker} that uses point descriptors and descriptor distances to
@@ -60,11 +68,16 @@ import process.Particle;
  * @author Jan Eglinger
  *
  */
-public class PointDescriptorTracker extends BenchmarkAlgorithm implements SpotTracker {
+public class PointDescriptorTracker extends BenchmarkAlgorithm implements SpotTracker, Cancelable {
+
+	/**
+	 * Minimal number of spots in both frames of a pair for which
+	 * {@link LinkSolverType#AUTO} uses the {@link AuctionLinkSolver}.
+	 */
+	public static final int AUTO_AUCTION_SPOTS = 10000;
 
 	private Logger logger;
 	private final SpotCollection spots;
-	private Matcher matcher;
 	private int subsetSize;
 	private int numNeighbors;
 	private int numThreads;
@@ -72,14 +85,47 @@ public class PointDescriptorTracker extends BenchmarkAlgorithm implements SpotTr
 	private double costThreshold;
 	private double squareDistThreshold;
 	private boolean doPruneGraph;
-	private DescriptorDistanceCostFunction costFunction;
+	private boolean spatialGating = true;
+	private Verbosity verbosity = Verbosity.NORMAL;
+	private LinkSolverType linkSolver = LinkSolverType.JAQAMAN;
+	private boolean splitComponents = false;
+	private DescriptorCache descriptorCache;
+	private boolean windowedDescriptors;
+	private boolean allowGapClosing;
+	private int maxFrameGap;
+	private boolean allowTrackSplitting;
+	private boolean allowTrackMerging;
+	private boolean limitLinksPerSpot;
+	private int maxLinksPerSpot;
+	private boolean onlinePruning;
+	private boolean compactEdges;
+	private long edgeMemoryBudget;
+	private DescriptorWindow descriptorWindow;
+	private OnlinePruner onlinePruner;
+	private int maxHeldPairLinks;
+	private IncrementalPruner incrementalPruner;
+	private EdgeStore edgeStore;
+	private ProgressReporter linkProgress;
+	private DescriptorStore descriptorStore;
 	private AtomicInteger atomicInteger;
 	private AtomicBoolean ok;
 	private Set<Integer> excludedFrames;
 	private SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph;
 	private SimpleWeightedGraph<Spot, DefaultWeightedEdge> prunedGraph;
+	private Integer lastAppendedFrame;
+	private volatile boolean canceled;
+	private volatile String cancelReason;
+	private TrackerMetrics metrics = new TrackerMetrics();
 
+	/**
+	 * @throws IllegalArgumentException
+	 *             if {@code subsetSize} is larger than {@code numNeighbors}
+	 */
 	public PointDescriptorTracker(SpotCollection spots, int subsetSize, int numNeighbors, int maxInterval, double costThreshold, double squareDistThreshold, boolean pruneGraph) {
+		if (subsetSize > numNeighbors) {
+			throw new IllegalArgumentException(
+					"Subset size " + subsetSize + " is larger than the number of neighbors " + numNeighbors + ".");
+		}
 		this.spots = spots;
 		this.subsetSize = subsetSize;
 		this.numNeighbors = numNeighbors;
@@ -87,10 +133,15 @@ public class PointDescriptorTracker extends BenchmarkAlgorithm implements SpotTr
 		this.costThreshold = costThreshold;
 		this.squareDistThreshold = squareDistThreshold;
 		this.doPruneGraph = pruneGraph;
+		setNumThreads();
 	}
 
 	@Override
 	public SimpleWeightedGraph<Spot, DefaultWeightedEdge> getResult() {
+		if (doPruneGraph && prunedGraph == null && graph != null) {
+			// appended frames since the last call, with removed links
+			prunedGraph = pruneGraph();
+		}
 		return doPruneGraph ? prunedGraph : graph;
 	}
 
@@ -108,35 +159,98 @@ public class PointDescriptorTracker extends BenchmarkAlgorithm implements SpotTr
 		logger.log("Matching descriptors...\n");
 		long startTime = System.currentTimeMillis();
 		ok = new AtomicBoolean(true);
+		metrics = new TrackerMetrics();
+		maxHeldPairLinks = 0;
 
-		matcher = new SubsetMatcher(subsetSize, numNeighbors);
 		excludedFrames = new HashSet<>();
-		// create mapping
-		// make flat map
-		Map<Integer, SimplePointDescriptor<Particle>> spotMapping = createSpotDescriptorMapping(spots);
-		// generate spot descriptors for all spots
-		// compute descriptor distances for pairs of spots
-		// cost function: lookup descriptor for spots, compute descriptor distance
-		costFunction = new DistanceConstrainedDescriptorDistanceCostFunction(spotMapping, squareDistThreshold);
+		if (windowedDescriptors) {
+			// descriptors are created and discarded while linking
+			selectFrames(spots);
+			descriptorStore = new DescriptorStore(numNeighbors, subsetSize);
+		} else {
+			// generate spot descriptors for all spots
+			descriptorStore = createDescriptorStore(spots);
+		}
+		if (isCanceled()) return canceled(startTime);
 		// generate framePairs
 
 		final ArrayList<int[]> framePairs = generateFramePairs();
+		if (windowedDescriptors) {
+			descriptorWindow = new DescriptorWindow(descriptorStore, framePairs, this::loadFrameDescriptors);
+		}
 
-		atomicInteger = new AtomicInteger(0);
-		graph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+		if (doPruneGraph && onlinePruning) {
+			// frames are pruned as soon as their window is linked, there is no raw graph
+			prunedGraph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+			onlinePruner = new OnlinePruner(framePairs, maxInterval, prunedGraph);
+		}
 
 		// multithreaded over all pairs: create cost matrix and run linker
 		logger.log("Computing links on " + numThreads + " threads.\n");
-		Parallelization.runWithNumThreads(numThreads, () -> createLinks(framePairs));
+		final LinkBuffer[] pairLinks;
+		try {
+			pairLinks = linkFramePairs(framePairs);
+		} finally {
+			descriptorWindow = null;
+		}
+		boolean prunedOnline = onlinePruner != null;
+		if (prunedOnline) {
+			maxHeldPairLinks = onlinePruner.maxHeldPairs();
+			if (verbosity.isAtLeast(Verbosity.VERBOSE)) {
+				logger.log("Online pruning held the links of at most " + maxHeldPairLinks + " frame pairs.\n");
+			}
+		}
+		onlinePruner = null;
+		if (isCanceled()) return canceled(startTime);
+
+		try {
+			if (prunedOnline) {
+				graph = prunedGraph;
+			} else if (compactEdges) {
+				// raw links are kept off-heap, a graph is only built for the result
+				graph = null;
+				edgeStore = new EdgeStore(edgeMemoryBudget);
+				if (edgeStore.memoryBudget() < edgeMemoryBudget) {
+					logger.log("Memory for links capped at " + edgeStore.memoryBudget() / (1024 * 1024)
+							+ " MB, half of the direct memory limit.\n");
+				}
+				long graphStart = System.nanoTime();
+				addLinks(edgeStore, pairLinks);
+				metrics.addPhase(Phase.GRAPH, System.nanoTime() - graphStart);
+				if (edgeStore.spilledChunks() > 0) {
+					logger.log("Spilled " + edgeStore.spilledChunks() + " chunks of links to disk.\n");
+				}
+			} else {
+				// single pass in frame pair order, independent of the number of threads
+				graph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+				long graphStart = System.nanoTime();
+				addLinks(graph, pairLinks);
+				metrics.addPhase(Phase.GRAPH, System.nanoTime() - graphStart);
+			}
 
-		// TODO link segments to allow split and merge events (and gaps?)
-		// for track starts (graph root nodes), search previous frame
-		// for track ends (graph leaf nodes), search next frame
+			if (doPruneGraph && !prunedOnline) {
+				// prune graph
+				logger.log("Pruning graph...\n");
+				prunedGraph = pruneGraph();
+				if (isCanceled()) return canceled(startTime);
+			} else if (edgeStore != null) {
+				graph = edgeStore.toGraph();
+			}
+		} catch (IOException e) {
+			errorMessage = "Cannot store links: " + e.getMessage();
+			logger.log(errorMessage + "\n");
+			return false;
+		} finally {
+			closeEdgeStore();
+		}
 
-		if (doPruneGraph) {
-			// prune graph
-			logger.log("Pruning graph...\n");
-			prunedGraph = Tracks.prune(graph, true);
+		// on the pruned graph, as pruning would join the branches of a split or merge
+		if (ok.get() && (allowGapClosing || allowTrackSplitting || allowTrackMerging)) {
+			logger.log("Linking segments...\n");
+			long segmentStart = System.nanoTime();
+			linkSegments(doPruneGraph ? prunedGraph : graph);
+			metrics.addPhase(Phase.SEGMENTS, System.nanoTime() - segmentStart);
+			if (isCanceled()) return canceled(startTime);
 		}
 
 		long endTime = System.currentTimeMillis();
@@ -144,50 +258,636 @@ public class PointDescriptorTracker extends BenchmarkAlgorithm implements SpotTr
 		return ok.get();
 	}
 
-	private void createLinks(ArrayList<int[]> framePairs) {
-		for (int i = atomicInteger.getAndIncrement(); i < framePairs.size(); i = atomicInteger.getAndIncrement()) {
-			if (!ok.get()) break;
+	private boolean canceled(long startTime) {
+		errorMessage = cancelMessage();
+		logger.log(errorMessage + "\n");
+		processingTime = System.currentTimeMillis() - startTime;
+		return false;
+	}
+
+	private String cancelMessage() {
+		return cancelReason == null ? "Canceled" : "Canceled: " + cancelReason;
+	}
+
+	private void closeEdgeStore() {
+		if (edgeStore == null) return;
+		try {
+			edgeStore.close();
+		} catch (IOException e) {
+			logger.log("[WARNING] Cannot delete the temporary file of links: " + e.getMessage() + "\n");
+		}
+		edgeStore = null;
+	}
+
+	private SimpleWeightedGraph<Spot, DefaultWeightedEdge> pruneGraph() {
+		long start = System.nanoTime();
+		SimpleWeightedGraph<Spot, DefaultWeightedEdge> pruned = Parallelization.runWithNumThreads(numThreads,
+				() -> edgeStore != null ? Tracks.prune(edgeStore, true, this) : Tracks.prune(graph, true, this));
+		metrics.addPhase(Phase.PRUNE, System.nanoTime() - start);
+		return pruned;
+	}
+
+	/**
+	 * Adds a frame to an incremental tracking run, e.g. during a live
+	 * acquisition.
+	 * <p>
+	 * Descriptors are only built for the new frame, and only the frame pairs
+	 * between the new frame and the previous frames within the maximal frame
+	 * interval are linked. Descriptors of frames that cannot be paired with
+	 * any later frame are dropped, so the time and memory needed per frame do
+	 * not grow with the length of the movie. Frames have to be appended in
+	 * ascending order, after their spots were added to the
+	 * {@link SpotCollection} of this tracker. {@link #getResult()} returns the
+	 * links of all frames appended so far.
+	 * </p>
+	 * <p>
+	 * With pruning, only the tracks touched by the new frame are pruned again,
+	 * and a track that is only extended just links its last frame to the new
+	 * spots. With a limit of links per spot, links of earlier frames can be
+	 * removed, and {@link #getResult()} prunes all links again instead.
+	 * </p>
+	 * <p>
+	 * Do not mix calls to this method and {@link #process()} on the same
+	 * tracker.
+	 * </p>
+	 * 
+	 * @param frame
+	 *            the frame to append
+	 * @return {@code true} if the frame was linked successfully
+	 */
+	public boolean appendFrame(int frame) {
+		long startTime = System.currentTimeMillis();
+		if (isCanceled()) {
+			errorMessage = cancelMessage();
+			return false;
+		}
+		if (lastAppendedFrame == null) {
+			ok = new AtomicBoolean(true);
+			metrics = new TrackerMetrics();
+			excludedFrames = new HashSet<>();
+			descriptorStore = new DescriptorStore(numNeighbors, subsetSize);
+			graph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+			// the link limit removes links, so components could split
+			incrementalPruner = doPruneGraph && !limitLinksPerSpot ? new IncrementalPruner(graph) : null;
+			prunedGraph = incrementalPruner != null ? incrementalPruner.prunedGraph() : null;
+		} else if (frame <= lastAppendedFrame) {
+			errorMessage = "Frames have to be appended in ascending order: " + frame + " after " + lastAppendedFrame + ".";
+			return false;
+		}
+		lastAppendedFrame = frame;
+
+		if (spots.getNSpots(frame, true) <= numNeighbors) {
+			excludedFrames.add(frame);
+			logger.log("[WARNING] Ignoring frame " + frame + ": too few spots.\n");
+		} else {
+			descriptorStore.put(Parallelization.runWithNumThreads(numThreads, () -> loadFrameDescriptors(frame)));
+			final ArrayList<int[]> framePairs = new ArrayList<>(maxInterval);
+			for (Integer sourceFrame : spots.keySet().subSet(frame - maxInterval, true, frame, false)) {
+				if (descriptorStore.contains(sourceFrame)) {
+					framePairs.add(new int[] { sourceFrame, frame });
+				}
+			}
+			LinkBuffer[] pairLinks = linkFramePairs(framePairs);
+			long graphStart = System.nanoTime();
+			addLinks(graph, pairLinks);
+			metrics.addPhase(Phase.GRAPH, System.nanoTime() - graphStart);
+			if (incrementalPruner != null) {
+				long pruneStart = System.nanoTime();
+				Parallelization.runWithNumThreads(numThreads, () -> incrementalPruner.frameAdded(Arrays.asList(frameSpots(frame))));
+				metrics.addPhase(Phase.PRUNE, System.nanoTime() - pruneStart);
+			} else {
+				prunedGraph = null;
+			}
+		}
+
+		// sliding window: later frames will not be paired with these any more
+		for (Integer oldFrame : spots.keySet().headSet(frame - maxInterval, true)) {
+			descriptorStore.remove(oldFrame);
+		}
+
+		processingTime += System.currentTimeMillis() - startTime;
+		return ok.get();
+	}
+
+	/**
+	 * Links the spots of all frame pairs on {@code numThreads} workers.
+	 * 
+	 * @return the links of each frame pair, in the order of
+	 *         {@code framePairs}
+	 */
+	private LinkBuffer[] linkFramePairs(List<int[]> framePairs) {
+		atomicInteger = new AtomicInteger(0);
+		// windowed descriptors and online pruning are only bounded in memory if pairs are linked in frame order
+		final int[] schedule = descriptorWindow == null && onlinePruner == null ? scheduleFramePairs(framePairs)
+				: IntStream.range(0, framePairs.size()).toArray();
+		final LinkBuffer[] pairLinks = new LinkBuffer[framePairs.size()];
+		final long[] pairNanos = new long[framePairs.size()];
+		linkProgress = new ProgressReporter(logger, "Linking", "frame pairs", "links", framePairs.size(), verbosity);
+		long start = System.nanoTime();
+		Parallelization.runWithNumThreads(numThreads, () -> runWorkers(() -> createLinks(framePairs, schedule, pairLinks, pairNanos)));
+		long wallNanos = System.nanoTime() - start;
+		linkProgress.finish();
+
+		if (verbosity.isAtLeast(Verbosity.NORMAL) && framePairs.size() > 0) {
+			long sumNanos = 0;
+			long maxNanos = 0;
+			for (long nanos : pairNanos) {
+				sumNanos += nanos;
+				maxNanos = Math.max(maxNanos, nanos);
+			}
+			logger.log(String.format("Linking took %d ms on %d threads: %d ms for all pairs, %d ms for the longest pair, %.0f%% utilization.%n",
+					wallNanos / 1000000, numThreads, sumNanos / 1000000, maxNanos / 1000000,
+					100.0 * sumNanos / Math.max(1, wallNanos * Math.min(numThreads, framePairs.size()))));
+		}
+		return pairLinks;
+	}
+
+	/**
+	 * Orders frame pairs by their estimated linking cost, the product of the
+	 * spot counts of both frames, largest first. Small pairs at the end of the
+	 * schedule fill the gaps, instead of a few large pairs keeping single
+	 * threads busy while the others are idle.
+	 * 
+	 * @return indices into {@code framePairs}, in the order of processing
+	 */
+	private int[] scheduleFramePairs(List<int[]> framePairs) {
+		long[] costs = new long[framePairs.size()];
+		Integer[] order = new Integer[framePairs.size()];
+		for (int i = 0; i < order.length; i++) {
+			int[] framePair = framePairs.get(i);
+			costs[i] = (long) descriptorStore.get(framePair[0]).size() * descriptorStore.get(framePair[1]).size();
+			order[i] = i;
+		}
+		// stable, equal pairs stay in frame order
+		Arrays.sort(order, Comparator.comparingLong((Integer i) -> costs[i]).reversed());
+		int[] schedule = new int[order.length];
+		for (int i = 0; i < order.length; i++) {
+			schedule[i] = order[i];
+		}
+		return schedule;
+	}
+
+	/**
+	 * Links the spots of frame pairs taken from the shared counter, in the
+	 * order of {@code schedule}, and stores the links of each pair in
+	 * {@code pairLinks} and the time it took in {@code pairNanos}. Workers do
+	 * not share any other state, the graph is created once all pairs are done.
+	 * With online pruning, the links are handed to the pruner instead.
+	 */
+	private void createLinks(List<int[]> framePairs, int[] schedule, LinkBuffer[] pairLinks, long[] pairNanos) {
+		for (int next = atomicInteger.getAndIncrement(); next < schedule.length; next = atomicInteger.getAndIncrement()) {
+			if (!ok.get() || isCanceled()) break;
+			long start = System.nanoTime();
+			int i = schedule[next];
 			int sourceFrame = framePairs.get(i)[0];
 			int targetFrame = framePairs.get(i)[1];
-			logger.log("Linking spots in frames " + sourceFrame + " and " + targetFrame + ".\n");
-
-			// sources and targets
-			Iterable<Spot> sources = spots.iterable(sourceFrame, true);
-			Iterable<Spot> targets = spots.iterable(targetFrame, true);
-			if (!sources.iterator().hasNext()) continue;
-			if (!targets.iterator().hasNext()) continue;
-
-			// create cost matrix
-			JaqamanLinkingCostMatrixCreator<Spot, Spot> costMatrixCreator = new JaqamanLinkingCostMatrixCreator<>(sources, targets, costFunction, costThreshold , 2.0d, 1d);
-			JaqamanLinker<Spot, Spot> linker = new JaqamanLinker<>(costMatrixCreator);
-			if (!linker.checkInput() || !linker.process()) {
+			if (verbosity.isAtLeast(Verbosity.VERBOSE)) {
+				logger.log("Linking spots in frames " + sourceFrame + " and " + targetFrame + ".\n");
+			}
+
+			LinkBuffer links;
+			try {
+				links = linkFramePair(acquireDescriptors(sourceFrame), acquireDescriptors(targetFrame));
+			} finally {
+				releaseDescriptors(sourceFrame);
+				releaseDescriptors(targetFrame);
+			}
+			if (links == null) {
 				// update error message
 				errorMessage = "Linking failed: source frame: " + sourceFrame + ",  target frame: " + targetFrame + ".";
 				ok.set(false);
 				return;
 			}
+			pairNanos[i] = System.nanoTime() - start;
+			if (onlinePruner != null) {
+				long pruneStart = System.nanoTime();
+				onlinePruner.pairDone(i, links);
+				metrics.addPhase(Phase.PRUNE, System.nanoTime() - pruneStart);
+			} else {
+				pairLinks[i] = links;
+			}
+			if (verbosity.isAtLeast(Verbosity.VERBOSE)) {
+				logger.log("Linked frames " + sourceFrame + " and " + targetFrame + ": " + links.size() + " links in "
+						+ pairNanos[i] / 1000000 + " ms.\n");
+			}
+			linkProgress.completed(links.size());
+		}
+	}
+
+	/**
+	 * Creates the cost matrix of one frame pair and runs the linker.
+	 * 
+	 * @return the links in source index order, or {@code null} if linking
+	 *         failed
+	 */
+	private LinkBuffer linkFramePair(FrameDescriptors sourceDescriptors, FrameDescriptors targetDescriptors) {
+		// sources and targets
+		List<Spot> sources = Arrays.asList(sourceDescriptors.spots());
+		List<Spot> targets = Arrays.asList(targetDescriptors.spots());
+		if (sources.isEmpty() || targets.isEmpty()) {
+			return new LinkBuffer(sourceDescriptors, targetDescriptors, 0);
+		}
+
+		// cost function: lookup descriptors for spots, compute descriptor distance
+		DescriptorDistanceCostFunction costFunction = new DistanceConstrainedDescriptorDistanceCostFunction(
+				sourceDescriptors, targetDescriptors, descriptorStore.createDistance(), squareDistThreshold,
+				costThreshold);
+
+		// create cost matrix
+		CostMatrixCreatorInterface<Spot, Spot> matrixCreator;
+		if (spatialGating && coversFrame(targetDescriptors)) {
+			// the linking distance does not restrict candidates, search in descriptor space instead
+			matrixCreator = new DescriptorIndexCostMatrixCreator(sourceDescriptors, targetDescriptors, costFunction, subsetSize, costThreshold, 2.0d, 1d);
+		} else if (spatialGating) {
+			// only evaluate descriptor distances for targets within the linking distance
+			matrixCreator = new SparseLinkingCostMatrixCreator(sources, targets, costFunction, Math.sqrt(squareDistThreshold), costThreshold, 2.0d, 1d);
+		} else {
+			matrixCreator = new JaqamanLinkingCostMatrixCreator<>(sources, targets, costFunction, costThreshold , 2.0d, 1d);
+		}
+		TimedCostMatrixCreator<Spot, Spot> costMatrixCreator = new TimedCostMatrixCreator<>(matrixCreator);
+		LinkSolver solver = createSolver(matrixCreator, Math.min(sources.size(), targets.size()));
+		long start = System.nanoTime();
+		if (!solver.solve(costMatrixCreator)) {
+			return null;
+		}
+		long linkerNanos = System.nanoTime() - start;
+
+		// collect links in source index order
+		Map<Spot, Spot> linkMap = solver.getResult();
+		Map<Spot, Double> costs = solver.getAssignmentCosts();
+		LinkBuffer links = new LinkBuffer(sourceDescriptors, targetDescriptors, linkMap.size());
+		for (int source = 0; source < sourceDescriptors.size(); source++) {
+			Spot sourceSpot = sourceDescriptors.spot(source);
+			Spot targetSpot = linkMap.get(sourceSpot);
+			if (targetSpot != null) {
+				links.add(source, targetDescriptors.indexOf(targetSpot), costs.get(sourceSpot));
+			}
+		}
+
+		List<Spot> matrixRows = costMatrixCreator.getSourceList();
+		List<Spot> matrixColumns = costMatrixCreator.getTargetList();
+		PairMetrics pairMetrics = new PairMetrics(sourceDescriptors.frame(), targetDescriptors.frame(), sources.size(),
+				targets.size(), costFunction.getEvaluations(), matrixRows == null ? 0 : matrixRows.size(),
+				matrixColumns == null ? 0 : matrixColumns.size(), links.size(), costMatrixCreator.getNanos(),
+				linkerNanos - costMatrixCreator.getNanos());
+		metrics.addPair(pairMetrics);
+		TrackerEvents.framePair(pairMetrics);
+		return links;
+	}
+
+	/**
+	 * @return the {@link JaqamanLinkSolver} if the cost matrix has no
+	 *         candidate pairs to read, a {@link ComponentLinkSolver} if frame
+	 *         pairs are split into components, and the selected solver
+	 *         otherwise
+	 */
+	private LinkSolver createSolver(CostMatrixCreatorInterface<Spot, Spot> matrixCreator, int numSpots) {
+		if (!(matrixCreator instanceof AbstractSparseCostMatrixCreator)) {
+			return new JaqamanLinkSolver();
+		}
+		if (splitComponents) {
+			return new ComponentLinkSolver(this::createSolver);
+		}
+		return createSolver(numSpots);
+	}
+
+	/**
+	 * @return the {@link AuctionLinkSolver} if selected, or with
+	 *         {@link LinkSolverType#AUTO} for problems of at least
+	 *         {@link #AUTO_AUCTION_SPOTS} spots, and the
+	 *         {@link JaqamanLinkSolver} otherwise
+	 */
+	private LinkSolver createSolver(int numSpots) {
+		boolean auction = linkSolver == LinkSolverType.AUCTION
+				|| linkSolver == LinkSolverType.AUTO && numSpots >= AUTO_AUCTION_SPOTS;
+		return auction ? new AuctionLinkSolver() : new JaqamanLinkSolver();
+	}
+
+	/**
+	 * @return {@code true} if the linking distance around the center of the
+	 *         bounding box of the target frame reaches all of it, so that a
+	 *         spatial search would hardly reject any candidate
+	 */
+	private boolean coversFrame(FrameDescriptors targetDescriptors) {
+		double[] positions = targetDescriptors.positions();
+		double squareHalfDiagonal = 0;
+		for (int d = 0; d < FrameDescriptors.N_DIMENSIONS; d++) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = d; i < positions.length; i += FrameDescriptors.N_DIMENSIONS) {
+				min = Math.min(min, positions[i]);
+				max = Math.max(max, positions[i]);
+			}
+			squareHalfDiagonal += 0.25 * (max - min) * (max - min);
+		}
+		return squareDistThreshold >= squareHalfDiagonal;
+	}
+
+	/**
+	 * Second linking stage on the segments of the frame pair graph. Segment
+	 * ends are linked to segment starts in later frames (gap closing), segment
+	 * starts to spots with a successor in the previous frame (splitting), and
+	 * segment ends to spots with a predecessor in the next frame (merging).
+	 * Candidates are found within the maximal linking distance and scored by
+	 * their descriptor distance, then all of them are solved as one sparse LAP.
+	 * The segment links are added to {@code linkGraph}.
+	 */
+	private void linkSegments(SimpleWeightedGraph<Spot, DefaultWeightedEdge> linkGraph) {
+		// spots with links to later or earlier frames
+		Set<Spot> hasNext = new HashSet<>();
+		Set<Spot> hasPrevious = new HashSet<>();
+		for (DefaultWeightedEdge edge : linkGraph.edgeSet()) {
+			Spot source = linkGraph.getEdgeSource(edge);
+			Spot target = linkGraph.getEdgeTarget(edge);
+			if (source.getFeature(Spot.FRAME) > target.getFeature(Spot.FRAME)) {
+				Spot earlier = target;
+				target = source;
+				source = earlier;
+			}
+			hasNext.add(source);
+			hasPrevious.add(target);
+		}
+
+		// frame pairs that can hold candidates
+		int maxSegmentInterval = allowGapClosing ? Math.max(1, maxFrameGap) : 1;
+		List<Integer> frames = new ArrayList<>(spots.keySet());
+		frames.removeAll(excludedFrames);
+		List<int[]> segmentPairs = new ArrayList<>();
+		for (int a = 0; a < frames.size(); a++) {
+			for (int b = a + 1; b < frames.size() && frames.get(b) - frames.get(a) <= maxSegmentInterval; b++) {
+				segmentPairs.add(new int[] { frames.get(a), frames.get(b) });
+			}
+		}
+		if (windowedDescriptors) {
+			descriptorWindow = new DescriptorWindow(descriptorStore, segmentPairs, this::loadFrameDescriptors);
+		}
+		List<LinkBuffer> pairCandidates;
+		try {
+			pairCandidates = Parallelization.runWithNumThreads(numThreads, () -> Parallelization.getTaskExecutor()
+					.forEachApply(segmentPairs, pair -> segmentCandidates(pair[0], pair[1], hasNext, hasPrevious)));
+		} finally {
+			descriptorWindow = null;
+		}
+
+		List<Spot> rows = new ArrayList<>();
+		List<Spot> cols = new ArrayList<>();
+		double[] costs = new double[0];
+		if (isCanceled()) {
+			return;
+		}
+		for (LinkBuffer candidates : pairCandidates) {
+			if (rows.size() + candidates.size() > costs.length) {
+				costs = Arrays.copyOf(costs, Math.max(rows.size() + candidates.size(), 2 * costs.length));
+			}
+			for (int i = 0; i < candidates.size(); i++) {
+				costs[rows.size()] = candidates.cost(i);
+				rows.add(candidates.sourceSpot(i));
+				cols.add(candidates.targetSpot(i));
+			}
+		}
+		logger.log("Found " + rows.size() + " segment linking candidates.\n");
+		if (rows.isEmpty()) {
+			return;
+		}
+
+		DefaultCostMatrixCreator<Spot, Spot> costMatrixCreator = new DefaultCostMatrixCreator<>(rows, cols,
+				Arrays.copyOf(costs, rows.size()), 2.0d, 1d);
+		JaqamanLinker<Spot, Spot> linker = new JaqamanLinker<>(costMatrixCreator);
+		if (!linker.checkInput() || !linker.process()) {
+			errorMessage = "Segment linking failed: " + linker.getErrorMessage();
+			ok.set(false);
+			return;
+		}
+		Map<Spot, Double> assignmentCosts = linker.getAssignmentCosts();
+		int nLinks = 0;
+		for (Map.Entry<Spot, Spot> link : linker.getResult().entrySet()) {
+			linkGraph.addVertex(link.getKey());
+			linkGraph.addVertex(link.getValue());
+			DefaultWeightedEdge edge = linkGraph.addEdge(link.getKey(), link.getValue());
+			if (edge != null) {
+				linkGraph.setEdgeWeight(edge, assignmentCosts.get(link.getKey()));
+				nLinks++;
+			}
+		}
+		logger.log("Added " + nLinks + " segment links.\n");
+	}
+
+	/**
+	 * Collects the segment linking candidates from spots in
+	 * {@code sourceFrame} to spots in {@code targetFrame}.
+	 */
+	private LinkBuffer segmentCandidates(int sourceFrame, int targetFrame, Set<Spot> hasNext, Set<Spot> hasPrevious) {
+		if (isCanceled()) {
+			return null;
+		}
+		FrameDescriptors sourceDescriptors = acquireDescriptors(sourceFrame);
+		FrameDescriptors targetDescriptors = acquireDescriptors(targetFrame);
+		try {
+			boolean adjacent = targetFrame - sourceFrame == 1;
+			boolean gapClosing = allowGapClosing && targetFrame - sourceFrame <= maxFrameGap;
+			boolean splitting = allowTrackSplitting && adjacent;
+			boolean merging = allowTrackMerging && adjacent;
+			LinkBuffer candidates = new LinkBuffer(sourceDescriptors, targetDescriptors, 0);
+
+			List<Integer> indices = new ArrayList<>();
+			List<Spot> targets = new ArrayList<>();
+			for (int j = 0; j < targetDescriptors.size(); j++) {
+				Spot target = targetDescriptors.spot(j);
+				boolean start = !hasPrevious.contains(target);
+				if (start ? gapClosing || splitting : merging) {
+					indices.add(j);
+					targets.add(target);
+				}
+			}
+			if (targets.isEmpty()) {
+				return candidates;
+			}
+			KDTree<Integer> tree = new KDTree<>(indices, targets);
+			RadiusNeighborSearchOnKDTree<Integer> search = new RadiusNeighborSearchOnKDTree<>(tree);
+			DescriptorDistanceCostFunction costFunction = new DescriptorDistanceCostFunction(sourceDescriptors,
+					targetDescriptors, descriptorStore.createDistance(), costThreshold);
+			double radius = SparseLinkingCostMatrixCreator.searchRadius(Math.sqrt(squareDistThreshold));
+
+			for (int i = 0; i < sourceDescriptors.size(); i++) {
+				Spot source = sourceDescriptors.spot(i);
+				boolean end = !hasNext.contains(source);
+				if (end ? !(gapClosing || merging) : !splitting) continue;
+				search.search(source, radius, false);
+				for (int k = 0; k < search.numNeighbors(); k++) {
+					int j = search.getSampler(k).get();
+					Spot target = targetDescriptors.spot(j);
+					boolean start = !hasPrevious.contains(target);
+					// end to start: gap, end to continuing spot: merge, continuing spot to start: split
+					boolean allowed = end ? (start ? gapClosing : merging) : start && splitting;
+					if (!allowed || source.squareDistanceTo(target) > squareDistThreshold) continue;
+					double cost = costFunction.linkingCost(i, j);
+					if (cost < costThreshold) {
+						candidates.add(i, j, cost);
+					}
+				}
+			}
+			return candidates;
+		} finally {
+			releaseDescriptors(sourceFrame);
+			releaseDescriptors(targetFrame);
+		}
+	}
+
+	private FrameDescriptors acquireDescriptors(int frame) {
+		return descriptorWindow == null ? descriptorStore.get(frame) : descriptorWindow.acquire(frame);
+	}
+
+	private void releaseDescriptors(int frame) {
+		if (descriptorWindow != null) {
+			descriptorWindow.release(frame);
+		}
+	}
 
-			//
-			Map<Spot, Spot> linkMap = linker.getResult();
-			Map<Spot, Double> costs = linker.getAssignmentCosts();
-			synchronized (graph) {
-				linkMap.forEach((sourceSpot, targetSpot) -> {
+	private void addLinks(SimpleWeightedGraph<Spot, DefaultWeightedEdge> linkGraph, LinkBuffer[] pairLinks) {
+		boolean logLinks = verbosity.isAtLeast(Verbosity.VERBOSE);
+		boolean[][] keep = limitLinksPerSpot ? selectLinks(pairLinks) : null;
+		Set<Spot> linkedSources = limitLinksPerSpot ? new HashSet<>() : null;
+		for (int b = 0; b < pairLinks.length; b++) {
+			LinkBuffer links = pairLinks[b];
+			if (links == null) continue; // failed pair
+			for (int i = 0; i < links.size(); i++) {
+				if (keep != null && !keep[b][i]) continue;
+				Spot sourceSpot = links.sourceSpot(i);
+				Spot targetSpot = links.targetSpot(i);
+				if (logLinks) {
 					logger.log("Linking spots: " + sourceSpot + " -> " + targetSpot + ".\n");
-					// add edges to graph
-					double cost = costs.get(sourceSpot);
-					graph.addVertex(sourceSpot);
-					graph.addVertex(targetSpot);
-					DefaultWeightedEdge edge = graph.addEdge(sourceSpot, targetSpot);
-					if (edge == null) {
-						logger.error("Error creating edge.\n"); // Edge already present!
-					} else {
-						graph.setEdgeWeight(edge, cost);
+				}
+				// add edges to graph
+				linkGraph.addVertex(sourceSpot);
+				linkGraph.addVertex(targetSpot);
+				DefaultWeightedEdge edge = linkGraph.addEdge(sourceSpot, targetSpot);
+				if (edge == null) {
+					logger.error("Error creating edge.\n"); // Edge already present!
+				} else {
+					linkGraph.setEdgeWeight(edge, links.cost(i));
+					if (linkedSources != null) linkedSources.add(sourceSpot);
+				}
+			}
+		}
+		if (linkedSources != null) {
+			// appended frames add forward links to spots that are already in the graph
+			for (Spot source : linkedSources) {
+				limitForwardEdges(linkGraph, source);
+			}
+		}
+	}
+
+	/**
+	 * Same as {@link #addLinks(SimpleWeightedGraph, LinkBuffer[])}, but into
+	 * an {@link EdgeStore}. Frame pairs never link the same two spots, so
+	 * there are no duplicate edges to check.
+	 */
+	private void addLinks(EdgeStore edges, LinkBuffer[] pairLinks) throws IOException {
+		boolean logLinks = verbosity.isAtLeast(Verbosity.VERBOSE);
+		boolean[][] keep = limitLinksPerSpot ? selectLinks(pairLinks) : null;
+		for (int b = 0; b < pairLinks.length; b++) {
+			LinkBuffer links = pairLinks[b];
+			if (links == null) continue; // failed pair
+			int sourceOffset = edges.frameOffset(links.sourceFrame(), links.sourceSpots());
+			int targetOffset = edges.frameOffset(links.targetFrame(), links.targetSpots());
+			for (int i = 0; i < links.size(); i++) {
+				if (keep != null && !keep[b][i]) continue;
+				if (logLinks) {
+					logger.log("Linking spots: " + links.sourceSpot(i) + " -> " + links.targetSpot(i) + ".\n");
+				}
+				edges.add(sourceOffset + links.source(i), targetOffset + links.target(i), links.cost(i));
+			}
+		}
+	}
+
+	/**
+	 * Keeps only the {@code maxLinksPerSpot} best links of each spot: first
+	 * among the backward links of every target spot, then among the remaining
+	 * forward links of every source spot. Links are ranked by cost, then by
+	 * frame interval. As each frame pair links a spot at most once, nothing is
+	 * dropped if {@code maxLinksPerSpot >= maxInterval}.
+	 * 
+	 * @return for each frame pair, the flags of the links to keep
+	 */
+	private boolean[][] selectLinks(LinkBuffer[] pairLinks) {
+		boolean[][] keep = new boolean[pairLinks.length][];
+		for (int b = 0; b < pairLinks.length; b++) {
+			if (pairLinks[b] == null) continue;
+			keep[b] = new boolean[pairLinks[b].size()];
+			Arrays.fill(keep[b], true);
+		}
+		limitLinks(pairLinks, keep, false);
+		limitLinks(pairLinks, keep, true);
+		return keep;
+	}
+
+	private void limitLinks(LinkBuffer[] pairLinks, boolean[][] keep, boolean forward) {
+		// frame pairs sharing the frame of the ranked spots
+		Map<Integer, List<Integer>> groups = new HashMap<>();
+		for (int b = 0; b < pairLinks.length; b++) {
+			if (pairLinks[b] == null) continue;
+			int frame = forward ? pairLinks[b].sourceFrame() : pairLinks[b].targetFrame();
+			groups.computeIfAbsent(frame, f -> new ArrayList<>()).add(b);
+		}
+		for (List<Integer> group : groups.values()) {
+			if (group.size() <= maxLinksPerSpot) continue;
+			LinkBuffer first = pairLinks[group.get(0)];
+			int numSpots = forward ? first.numSources() : first.numTargets();
+			// link index of every spot in every frame pair of the group
+			int[][] linkOf = new int[group.size()][numSpots];
+			for (int g = 0; g < group.size(); g++) {
+				Arrays.fill(linkOf[g], -1);
+				LinkBuffer links = pairLinks[group.get(g)];
+				for (int i = 0; i < links.size(); i++) {
+					if (keep[group.get(g)][i]) {
+						linkOf[g][forward ? links.source(i) : links.target(i)] = i;
+					}
+				}
+			}
+			for (int spot = 0; spot < numSpots; spot++) {
+				for (int g = 0; g < group.size(); g++) {
+					if (linkOf[g][spot] < 0) continue;
+					int rank = 0;
+					for (int h = 0; h < group.size(); h++) {
+						if (h != g && linkOf[h][spot] >= 0 && precedes(pairLinks[group.get(h)], linkOf[h][spot],
+								pairLinks[group.get(g)], linkOf[g][spot])) {
+							rank++;
+						}
+					}
+					if (rank >= maxLinksPerSpot) {
+						keep[group.get(g)][linkOf[g][spot]] = false;
 					}
-				});
+				}
 			}
 		}
 	}
 
+	private static boolean precedes(LinkBuffer a, int i, LinkBuffer b, int j) {
+		if (a.cost(i) != b.cost(j)) return a.cost(i) < b.cost(j);
+		return a.targetFrame() - a.sourceFrame() < b.targetFrame() - b.sourceFrame();
+	}
+
+	/**
+	 * Removes the worst edges to later frames of {@code source} beyond
+	 * {@code maxLinksPerSpot}, ranked as in {@link #selectLinks}.
+	 */
+	private void limitForwardEdges(SimpleWeightedGraph<Spot, DefaultWeightedEdge> linkGraph, Spot source) {
+		int frame = source.getFeature(Spot.FRAME).intValue();
+		List<DefaultWeightedEdge> forwardEdges = new ArrayList<>();
+		for (DefaultWeightedEdge edge : linkGraph.edgesOf(source)) {
+			Spot other = Graphs.getOppositeVertex(linkGraph, edge, source);
+			if (other.getFeature(Spot.FRAME).intValue() > frame) {
+				forwardEdges.add(edge);
+			}
+		}
+		if (forwardEdges.size() <= maxLinksPerSpot) return;
+		forwardEdges.sort(Comparator.comparingDouble((DefaultWeightedEdge edge) -> linkGraph.getEdgeWeight(edge))
+				.thenComparingInt(edge -> Graphs.getOppositeVertex(linkGraph, edge, source).getFeature(Spot.FRAME).intValue()));
+		for (DefaultWeightedEdge edge : forwardEdges.subList(maxLinksPerSpot, forwardEdges.size())) {
+			linkGraph.removeEdge(edge);
+		}
+	}
+
 	private ArrayList<int[]> generateFramePairs() {
 		NavigableSet<Integer> keySet = spots.keySet();
 
@@ -206,16 +906,23 @@ public class PointDescriptorTracker extends BenchmarkAlgorithm implements SpotTr
 				}
 				// add framePair if difference smaller/equal maxInterval
 				if (frameB - frameA <= maxInterval) {
-					logger.log("Adding frame pair: " + frameA + "," + frameB + "\n");
+					if (verbosity.isAtLeast(Verbosity.VERBOSE)) {
+						logger.log("Adding frame pair: " + frameA + "," + frameB + "\n");
+					}
 					framePairs.add(new int[] { frameA, frameB });					
 				}
 			}
 		}
+		logger.log("Generated " + framePairs.size() + " frame pairs.\n");
 		return framePairs;
 	}
 
-	private Map<Integer, SimplePointDescriptor<Particle>> createSpotDescriptorMapping(SpotCollection spotCollection) {
-		Map<Integer, SimplePointDescriptor<Particle>> spotDescriptorMap = new HashMap<>(spotCollection.getNSpots(true));
+	/**
+	 * @return the frames with enough spots to create descriptors, the other
+	 *         frames are added to {@code excludedFrames}
+	 */
+	private List<Integer> selectFrames(SpotCollection spotCollection) {
+		List<Integer> frames = new ArrayList<>();
 		for (Integer frame : spotCollection.keySet()) {
 			// only process frames with enough spots
 			// add excluded frames to excludedFrames
@@ -223,49 +930,344 @@ public class PointDescriptorTracker extends BenchmarkAlgorithm implements SpotTr
 				excludedFrames.add(frame);
 				logger.log("[WARNING] Ignoring frame " + frame + ": too few spots.\n");
 			} else {
-				appendDescriptorMapping(spots.iterable(frame, true), spotDescriptorMap);
+				frames.add(frame);
 			}
 		}
-		return spotDescriptorMap;
+		return frames;
+	}
+
+	private DescriptorStore createDescriptorStore(SpotCollection spotCollection) {
+		DescriptorStore store = new DescriptorStore(numNeighbors, subsetSize);
+		List<Integer> frames = selectFrames(spotCollection);
+		// largest frames first, so that no big frame is left over when the other threads are done
+		frames.sort(Comparator.comparingInt((Integer frame) -> spots.getNSpots(frame, true)).reversed());
+
+		logger.log("Computing descriptors for " + frames.size() + " frames on " + numThreads + " threads.\n");
+		ProgressReporter progress = new ProgressReporter(logger, "Computing descriptors", "frames", "spots", frames.size(), verbosity);
+		AtomicInteger nextFrame = new AtomicInteger(0);
+		Parallelization.runWithNumThreads(numThreads, () -> runWorkers(() -> {
+			for (int i = nextFrame.getAndIncrement(); i < frames.size(); i = nextFrame.getAndIncrement()) {
+				if (isCanceled()) break;
+				FrameDescriptors descriptors = loadFrameDescriptors(frames.get(i));
+				store.put(descriptors);
+				progress.completed(descriptors.size());
+			}
+		}));
+		progress.finish();
+		return store;
+	}
+
+	/**
+	 * Reads the descriptors of a frame from the descriptor cache, if one is
+	 * set, or creates them and adds them to the cache. Cache errors are logged
+	 * and the descriptors are created as if there was no cache.
+	 */
+	private FrameDescriptors loadFrameDescriptors(int frame) {
+		long start = System.nanoTime();
+		FrameDescriptors descriptors = readOrCreateFrameDescriptors(frame);
+		FrameMetrics frameMetrics = new FrameMetrics(frame, descriptors.size(), System.nanoTime() - start);
+		metrics.addFrame(frameMetrics);
+		TrackerEvents.frameDescriptors(frameMetrics);
+		return descriptors;
 	}
 
-	private void appendDescriptorMapping(Iterable<Spot> spotIterable, Map<Integer, SimplePointDescriptor<Particle>> mapping) {
-		ArrayList<Particle> list = new ArrayList<>();
-		double[] realPosition = new double[3];
-		int[] position = new int[3];
-		for (Spot spot : spotIterable) {
-			// create new particle
-			list.add(new Particle(spot.ID(), Spots.createPeak(spot, realPosition, position), 1.0f));
+	private FrameDescriptors readOrCreateFrameDescriptors(int frame) {
+		if (descriptorCache == null) {
+			return createFrameDescriptors(frame);
+		}
+		Spot[] frameSpots = frameSpots(frame);
+		// hashed once for the lookup and the store
+		DescriptorCache.Key key = descriptorCache.key(frameSpots, numNeighbors, subsetSize);
+		try {
+			FrameDescriptors cached = descriptorCache.load(frame, frameSpots, key);
+			if (cached != null) {
+				return cached;
+			}
+		} catch (IOException e) {
+			logger.log("[WARNING] Cannot read cached descriptors for frame " + frame + ": " + e.getMessage() + "\n");
 		}
-		KDTree<Particle> tree = new KDTree<>(list);
-		SimilarityMeasure similarityMeasure = new SquareDistance();
-		ArrayList<SimplePointDescriptor<Particle>> pointDescriptors = createSimplePointDescriptors(tree, list, numNeighbors, matcher, similarityMeasure);
-		// TODO the following loop should probably be inside the above function call
-		for (SimplePointDescriptor<Particle> pointDescriptor : pointDescriptors) {
-			mapping.put((int) pointDescriptor.getBasisPoint().getID(), pointDescriptor);
+		FrameDescriptors descriptors = createFrameDescriptors(frame, frameSpots);
+		try {
+			descriptorCache.store(descriptors, key);
+		} catch (IOException e) {
+			logger.log("[WARNING] Cannot cache descriptors for frame " + frame + ": " + e.getMessage() + "\n");
 		}
+		return descriptors;
 	}
 
-	private ArrayList<SimplePointDescriptor<Particle>> createSimplePointDescriptors(KDTree<Particle> tree,
-			ArrayList<Particle> list, int nNeighbors, Matcher matcher, SimilarityMeasure similarityMeasure) {
-		ArrayList<SimplePointDescriptor<Particle>> descriptors = new ArrayList<>();
-		NNearestNeighborSearch<Particle> nnsearch = new NNearestNeighborSearch<>(tree);
-		for (Particle p : list) {
-			ArrayList<Particle> neighbors = new ArrayList<>();
-			Particle[] neighborList = nnsearch.findNNearestNeighbors(p, nNeighbors + 1);
-			for (int i = 1; i < neighborList.length; i++) {
-				neighbors.add(neighborList[i]);
-			}
-			try {
-				descriptors.add(new SimplePointDescriptor<Particle>(p, neighbors, similarityMeasure, matcher));
-			} catch (NoSuitablePointsException e) {
-				logger.error("Not enough neighbors to create descriptor for spot " + p.getID());
-				e.printStackTrace();
+	private Spot[] frameSpots(int frame) {
+		return Lists.newArrayList(spots.iterable(frame, true)).toArray(new Spot[0]);
+	}
+
+	FrameDescriptors createFrameDescriptors(int frame) {
+		return createFrameDescriptors(frame, frameSpots(frame));
+	}
+
+	private FrameDescriptors createFrameDescriptors(int frame, Spot[] frameSpots) {
+		FrameDescriptors descriptors = new FrameDescriptors(frame, frameSpots, numNeighbors);
+		int[] neighbors = NearestNeighbors.build(Arrays.asList(frameSpots), numNeighbors);
+		for (int i = 0; i < frameSpots.length; i++) {
+			for (int rank = 0; rank < numNeighbors; rank++) {
+				int neighbor = neighbors[numNeighbors * i + rank];
+				if (neighbor < 0) break;
+				descriptors.setNeighbor(i, rank, neighbor);
 			}
 		}
 		return descriptors;
 	}
 
+	/**
+	 * Runs one copy of {@code worker} per thread of the current
+	 * {@link Parallelization} context and waits for all of them.
+	 */
+	private static void runWorkers(Runnable worker) {
+		TaskExecutor executor = Parallelization.getTaskExecutor();
+		executor.runAll(Collections.nCopies(executor.getParallelism(), worker));
+	}
+
+	/**
+	 * Sets the amount of log output. At {@link Verbosity#NORMAL} (the default),
+	 * progress is summarized periodically. Messages for every frame pair and
+	 * every link are only written at {@link Verbosity#VERBOSE}.
+	 * 
+	 * @param verbosity
+	 *            the verbosity level
+	 */
+	public void setVerbosity(Verbosity verbosity) {
+		this.verbosity = verbosity;
+	}
+
+	/**
+	 * Sets the solver of the assignment problem of each frame pair. The
+	 * {@link AuctionLinkSolver} solves a single pair on several threads, which
+	 * pays off for pairs with tens of thousands of spots. It needs spatial
+	 * gating, frame pairs are linked with {@link JaqamanLinkSolver} otherwise.
+	 * The default is {@link LinkSolverType#JAQAMAN}.
+	 * 
+	 * @param linkSolver
+	 *            the solver for frame pairs
+	 */
+	public void setLinkSolver(LinkSolverType linkSolver) {
+		this.linkSolver = linkSolver;
+	}
+
+	/**
+	 * Sets whether the candidate links of each frame pair are split into
+	 * connected components that are solved independently and in parallel.
+	 * With spatial gating, dense frames usually fall apart into many small
+	 * components, so even a single large frame pair keeps all threads busy.
+	 * The links only differ from the ones of the whole problem where costs
+	 * are tied. Without spatial gating, frame pairs are solved as a whole.
+	 * 
+	 * @param splitComponents
+	 *            whether to solve components of frame pairs separately
+	 */
+	public void setSplitComponents(boolean splitComponents) {
+		this.splitComponents = splitComponents;
+	}
+
+	/**
+	 * Sets whether segment ends are linked to segment starts in later frames,
+	 * after frame pairs were linked. Gaps up to {@code maxInterval} frames are
+	 * already closed when linking frame pairs, segment linking closes longer
+	 * gaps at a much lower cost than a larger {@code maxInterval}. Segments
+	 * are linked after pruning, so split and merge links keep the branches
+	 * apart.
+	 * 
+	 * @param allowGapClosing
+	 *            {@code true} to close gaps between segments
+	 * @param maxFrameGap
+	 *            the maximal number of frames between a segment end and start
+	 */
+	public void setGapClosing(boolean allowGapClosing, int maxFrameGap) {
+		this.allowGapClosing = allowGapClosing;
+		this.maxFrameGap = maxFrameGap;
+	}
+
+	/**
+	 * Sets whether segment starts can be linked to a spot with a successor in
+	 * the previous frame, after frame pairs were linked.
+	 * 
+	 * @param allowTrackSplitting
+	 *            {@code true} to allow split events
+	 */
+	public void setTrackSplitting(boolean allowTrackSplitting) {
+		this.allowTrackSplitting = allowTrackSplitting;
+	}
+
+	/**
+	 * Sets whether segment ends can be linked to a spot with a predecessor in
+	 * the next frame, after frame pairs were linked.
+	 * 
+	 * @param allowTrackMerging
+	 *            {@code true} to allow merge events
+	 */
+	public void setTrackMerging(boolean allowTrackMerging) {
+		this.allowTrackMerging = allowTrackMerging;
+	}
+
+	/**
+	 * Sets whether the raw graph keeps only the {@code maxLinksPerSpot}
+	 * lowest-cost links to earlier and to later frames of each spot. This
+	 * bounds the size of the raw graph and the cost of pruning, and does not
+	 * change anything if {@code maxLinksPerSpot} is at least
+	 * {@code maxInterval}.
+	 * 
+	 * @param limitLinksPerSpot
+	 *            {@code true} to limit the links per spot
+	 * @param maxLinksPerSpot
+	 *            the maximal number of forward and of backward links per spot
+	 */
+	public void setLinkLimit(boolean limitLinksPerSpot, int maxLinksPerSpot) {
+		this.limitLinksPerSpot = limitLinksPerSpot;
+		this.maxLinksPerSpot = maxLinksPerSpot;
+	}
+
+	/**
+	 * Sets whether the graph is pruned while frame pairs are being linked,
+	 * instead of after all of them. The links of a frame are pruned as soon as
+	 * all frame pairs within {@code maxInterval} frames before and after it
+	 * are linked, and released once no later frame needs them, so the links
+	 * of about {@code 2 * maxInterval} frames are held. No raw graph is built,
+	 * which lowers the peak memory.
+	 * <p>
+	 * This is an approximation of the default pruning: connected components
+	 * and path weights are only evaluated within this window, so links differ
+	 * where frames outside the window join components. On synthetic data with
+	 * a maximal interval of 3 frames, about 1% of the links differ with a
+	 * selective cost threshold and about 20% with a threshold that links most
+	 * neighbors; with an interval of 1 frame, the links were the same. Only
+	 * applies if the graph is pruned, segments are linked on the pruned graph
+	 * and the limit of links per spot is not applied.
+	 * </p>
+	 * 
+	 * @param onlinePruning
+	 *            {@code true} to prune while linking
+	 */
+	public void setOnlinePruning(boolean onlinePruning) {
+		this.onlinePruning = onlinePruning;
+	}
+
+	/**
+	 * Sets whether the raw links are kept in a compact store outside of the
+	 * Java heap instead of a {@code jgrapht} graph. Each link then takes 16
+	 * bytes, and links beyond {@code memoryBudget} bytes are written to a
+	 * memory-mapped temporary file. The budget is capped at half of the
+	 * direct memory limit of the VM ({@code -XX:MaxDirectMemorySize}). A graph
+	 * is only built for the result, i.e. the pruned links if the graph is
+	 * pruned. Only applies to {@link #process()}, and not with online
+	 * pruning.
+	 * 
+	 * @param compactEdges
+	 *            {@code true} to store the raw links off-heap
+	 * @param memoryBudget
+	 *            the number of bytes of links kept in memory
+	 */
+	public void setCompactEdges(boolean compactEdges, long memoryBudget) {
+		this.compactEdges = compactEdges;
+		this.edgeMemoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Sets whether descriptors are only kept in memory while they are needed.
+	 * By default, descriptors are created for all frames before linking. In
+	 * windowed mode, frame pairs are linked in frame order, the descriptors of
+	 * a frame are created when its first pair is linked and discarded after
+	 * its last pair. Peak memory then scales with the maximal frame interval
+	 * times the number of spots per frame instead of the total number of
+	 * spots. The links do not depend on this setting.
+	 * 
+	 * @param windowedDescriptors
+	 *            {@code true} to create and discard descriptors while linking
+	 */
+	public void setWindowedDescriptors(boolean windowedDescriptors) {
+		this.windowedDescriptors = windowedDescriptors;
+	}
+
+	/**
+	 * Sets an on-disk cache for the spot descriptors. Frames whose spot
+	 * positions did not change since an earlier run with the same number of
+	 * neighbors and subset size are read from the cache instead of being
+	 * computed again. The cache evicts least recently used files of earlier
+	 * runs beyond its size limit, and frames that do not fit are computed
+	 * without being stored.
+	 * 
+	 * @param descriptorCache
+	 *            the cache, or {@code null} (the default) to always compute
+	 *            the descriptors
+	 */
+	public void setDescriptorCache(DescriptorCache descriptorCache) {
+		this.descriptorCache = descriptorCache;
+	}
+
+	/**
+	 * Sets whether candidate targets are found with a spatial index (the
+	 * default) instead of evaluating the cost function for all pairs of spots
+	 * in a frame pair. Both modes create the same links.
+	 * 
+	 * @param spatialGating
+	 *            {@code true} to only compute descriptor distances for spots
+	 *            within the maximal linking distance, or, if that distance
+	 *            covers the whole frame, for spots found by a
+	 *            {@link DescriptorIndex}; the latter only saves work if the
+	 *            cost threshold is small compared to the square distance
+	 *            between neighbors
+	 */
+	public void setSpatialGating(boolean spatialGating) {
+		this.spatialGating = spatialGating;
+	}
+
+	/**
+	 * @return timings and counts of the last run, or of all frames appended
+	 *         so far
+	 */
+	public TrackerMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the largest number of frame pairs whose links were held at the
+	 *         same time by online pruning in the last run
+	 */
+	int getMaxHeldPairLinks() {
+		return maxHeldPairLinks;
+	}
+
+	@Override
+	public boolean isCanceled() {
+		return canceled;
+	}
+
+	/**
+	 * Stops a running {@link #process()} as soon as the current descriptors,
+	 * frame pairs or track components are done. {@code process()} then
+	 * returns {@code false}. The tracker stays canceled, also for calls of
+	 * {@link #process()} or {@link #appendFrame(int)} made afterwards, until
+	 * {@link #resetCancel()}.
+	 * 
+	 * @param reason
+	 *            the reason for the error message, can be {@code null}
+	 */
+	@Override
+	public void cancel(String reason) {
+		cancelReason = reason;
+		canceled = true;
+	}
+
+	/**
+	 * Clears an earlier {@link #cancel(String)}, so the tracker can be run
+	 * again.
+	 */
+	public void resetCancel() {
+		canceled = false;
+		cancelReason = null;
+	}
+
+	@Override
+	public String getCancelReason() {
+		return cancelReason;
+	}
+
 	@Override
 	public int getNumThreads() {
 		return numThreads;
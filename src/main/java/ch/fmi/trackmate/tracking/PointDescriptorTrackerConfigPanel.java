@@ -25,8 +25,10 @@ import java.util.HashMap;
 import java.util.Map;
 
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFormattedTextField;
 import javax.swing.JLabel;
+import javax.swing.JTextField;
 
 import fiji.plugin.trackmate.gui.components.ConfigurationPanel;
 
@@ -46,6 +48,23 @@ public class PointDescriptorTrackerConfigPanel extends ConfigurationPanel {
 	private JFormattedTextField costThresholdTextField;
 	private JFormattedTextField maxDistanceTextField;
 	private JCheckBox pruneCheckBox;
+	private JCheckBox spatialGatingCheckBox;
+	private JComboBox<Verbosity> verbosityComboBox;
+	private JComboBox<LinkSolverType> linkSolverComboBox;
+	private JCheckBox cacheCheckBox;
+	private JTextField cacheDirectoryTextField;
+	private JFormattedTextField cacheMemoryTextField;
+	private JCheckBox windowedDescriptorsCheckBox;
+	private JCheckBox allowGapClosingCheckBox;
+	private JFormattedTextField maxFrameGapTextField;
+	private JCheckBox allowTrackSplittingCheckBox;
+	private JCheckBox allowTrackMergingCheckBox;
+	private JCheckBox limitLinksPerSpotCheckBox;
+	private JFormattedTextField maxLinksPerSpotTextField;
+	private JCheckBox onlinePruningCheckBox;
+	private JCheckBox compactEdgesCheckBox;
+	private JFormattedTextField edgeMemoryTextField;
+	private JCheckBox splitComponentsCheckBox;
 
 	public PointDescriptorTrackerConfigPanel() {
 		initGui();
@@ -75,6 +94,79 @@ public class PointDescriptorTrackerConfigPanel extends ConfigurationPanel {
 		add(new JLabel("Return pruned graph"));
 		pruneCheckBox = new JCheckBox(PointDescriptorTrackerFactory.PRUNE_GRAPH, PointDescriptorTrackerFactory.DEFAULT_PRUNE_GRAPH);
 		add(pruneCheckBox);
+
+		add(new JLabel("Spatially gated linking"));
+		spatialGatingCheckBox = new JCheckBox(PointDescriptorTrackerFactory.SPATIAL_GATING, PointDescriptorTrackerFactory.DEFAULT_SPATIAL_GATING);
+		add(spatialGatingCheckBox);
+
+		add(new JLabel("Log verbosity"));
+		verbosityComboBox = new JComboBox<>(Verbosity.values());
+		verbosityComboBox.setSelectedItem(Verbosity.valueOf(PointDescriptorTrackerFactory.DEFAULT_VERBOSITY));
+		add(verbosityComboBox);
+
+		add(new JLabel("Link solver"));
+		linkSolverComboBox = new JComboBox<>(LinkSolverType.values());
+		linkSolverComboBox.setSelectedItem(LinkSolverType.valueOf(PointDescriptorTrackerFactory.DEFAULT_LINK_SOLVER));
+		add(linkSolverComboBox);
+
+		add(new JLabel("Cache descriptors on disk"));
+		cacheCheckBox = new JCheckBox(PointDescriptorTrackerFactory.CACHE_DESCRIPTORS, PointDescriptorTrackerFactory.DEFAULT_CACHE_DESCRIPTORS);
+		add(cacheCheckBox);
+
+		add(new JLabel("Descriptor cache directory"));
+		cacheDirectoryTextField = new JTextField(PointDescriptorTrackerFactory.DEFAULT_CACHE_DIRECTORY);
+		cacheDirectoryTextField.setToolTipText("Empty for " + DescriptorCache.defaultDirectory());
+		add(cacheDirectoryTextField);
+
+		add(new JLabel("Descriptor cache size (MB)"));
+		cacheMemoryTextField = new JFormattedTextField( PointDescriptorTrackerFactory.DEFAULT_CACHE_MEMORY_MB );
+		add(cacheMemoryTextField);
+
+		add(new JLabel("Windowed descriptors"));
+		windowedDescriptorsCheckBox = new JCheckBox(PointDescriptorTrackerFactory.WINDOWED_DESCRIPTORS, PointDescriptorTrackerFactory.DEFAULT_WINDOWED_DESCRIPTORS);
+		add(windowedDescriptorsCheckBox);
+
+		add(new JLabel("Allow gap closing"));
+		allowGapClosingCheckBox = new JCheckBox(PointDescriptorTrackerFactory.ALLOW_GAP_CLOSING, PointDescriptorTrackerFactory.DEFAULT_ALLOW_GAP_CLOSING);
+		add(allowGapClosingCheckBox);
+
+		add(new JLabel("Maximum frame gap"));
+		maxFrameGapTextField = new JFormattedTextField( PointDescriptorTrackerFactory.DEFAULT_MAX_FRAME_GAP );
+		add(maxFrameGapTextField);
+
+		add(new JLabel("Allow track splitting"));
+		allowTrackSplittingCheckBox = new JCheckBox(PointDescriptorTrackerFactory.ALLOW_TRACK_SPLITTING, PointDescriptorTrackerFactory.DEFAULT_ALLOW_TRACK_SPLITTING);
+		add(allowTrackSplittingCheckBox);
+
+		add(new JLabel("Allow track merging"));
+		allowTrackMergingCheckBox = new JCheckBox(PointDescriptorTrackerFactory.ALLOW_TRACK_MERGING, PointDescriptorTrackerFactory.DEFAULT_ALLOW_TRACK_MERGING);
+		add(allowTrackMergingCheckBox);
+
+		add(new JLabel("Limit links per spot"));
+		limitLinksPerSpotCheckBox = new JCheckBox(PointDescriptorTrackerFactory.LIMIT_LINKS_PER_SPOT, PointDescriptorTrackerFactory.DEFAULT_LIMIT_LINKS_PER_SPOT);
+		add(limitLinksPerSpotCheckBox);
+
+		add(new JLabel("Maximum links per spot"));
+		maxLinksPerSpotTextField = new JFormattedTextField( PointDescriptorTrackerFactory.DEFAULT_MAX_LINKS_PER_SPOT );
+		add(maxLinksPerSpotTextField);
+
+		add(new JLabel("Prune while linking (approximate)"));
+		onlinePruningCheckBox = new JCheckBox(PointDescriptorTrackerFactory.ONLINE_PRUNING, PointDescriptorTrackerFactory.DEFAULT_ONLINE_PRUNING);
+		onlinePruningCheckBox.setToolTipText("<html>Lowers the memory, but only considers tracks within the maximal frame interval<br>"
+				+ "around each frame, so links can differ from pruning after linking.</html>");
+		add(onlinePruningCheckBox);
+
+		add(new JLabel("Compact off-heap links"));
+		compactEdgesCheckBox = new JCheckBox(PointDescriptorTrackerFactory.COMPACT_EDGES, PointDescriptorTrackerFactory.DEFAULT_COMPACT_EDGES);
+		add(compactEdgesCheckBox);
+
+		add(new JLabel("Memory for links (MB)"));
+		edgeMemoryTextField = new JFormattedTextField( PointDescriptorTrackerFactory.DEFAULT_EDGE_MEMORY_MB );
+		add(edgeMemoryTextField);
+
+		add(new JLabel("Split frame pairs into components"));
+		splitComponentsCheckBox = new JCheckBox(PointDescriptorTrackerFactory.SPLIT_COMPONENTS, PointDescriptorTrackerFactory.DEFAULT_SPLIT_COMPONENTS);
+		add(splitComponentsCheckBox);
 }
 
 	@Override
@@ -91,6 +183,23 @@ public class PointDescriptorTrackerConfigPanel extends ConfigurationPanel {
 		map.put(PointDescriptorTrackerFactory.COST_THRESHOLD, (double) costThresholdTextField.getValue());
 		map.put(PointDescriptorTrackerFactory.MAX_LINKING_DISTANCE, (double) maxDistanceTextField.getValue());
 		map.put(PointDescriptorTrackerFactory.PRUNE_GRAPH, pruneCheckBox.isSelected());
+		map.put(PointDescriptorTrackerFactory.SPATIAL_GATING, spatialGatingCheckBox.isSelected());
+		map.put(PointDescriptorTrackerFactory.VERBOSITY, ((Verbosity) verbosityComboBox.getSelectedItem()).name());
+		map.put(PointDescriptorTrackerFactory.LINK_SOLVER, ((LinkSolverType) linkSolverComboBox.getSelectedItem()).name());
+		map.put(PointDescriptorTrackerFactory.CACHE_DESCRIPTORS, cacheCheckBox.isSelected());
+		map.put(PointDescriptorTrackerFactory.CACHE_DIRECTORY, cacheDirectoryTextField.getText().trim());
+		map.put(PointDescriptorTrackerFactory.CACHE_MEMORY_MB, (int) cacheMemoryTextField.getValue());
+		map.put(PointDescriptorTrackerFactory.WINDOWED_DESCRIPTORS, windowedDescriptorsCheckBox.isSelected());
+		map.put(PointDescriptorTrackerFactory.ALLOW_GAP_CLOSING, allowGapClosingCheckBox.isSelected());
+		map.put(PointDescriptorTrackerFactory.MAX_FRAME_GAP, (int) maxFrameGapTextField.getValue());
+		map.put(PointDescriptorTrackerFactory.ALLOW_TRACK_SPLITTING, allowTrackSplittingCheckBox.isSelected());
+		map.put(PointDescriptorTrackerFactory.ALLOW_TRACK_MERGING, allowTrackMergingCheckBox.isSelected());
+		map.put(PointDescriptorTrackerFactory.LIMIT_LINKS_PER_SPOT, limitLinksPerSpotCheckBox.isSelected());
+		map.put(PointDescriptorTrackerFactory.MAX_LINKS_PER_SPOT, (int) maxLinksPerSpotTextField.getValue());
+		map.put(PointDescriptorTrackerFactory.ONLINE_PRUNING, onlinePruningCheckBox.isSelected());
+		map.put(PointDescriptorTrackerFactory.COMPACT_EDGES, compactEdgesCheckBox.isSelected());
+		map.put(PointDescriptorTrackerFactory.EDGE_MEMORY_MB, (int) edgeMemoryTextField.getValue());
+		map.put(PointDescriptorTrackerFactory.SPLIT_COMPONENTS, splitComponentsCheckBox.isSelected());
 		return map;
 	}
 
@@ -102,5 +211,22 @@ public class PointDescriptorTrackerConfigPanel extends ConfigurationPanel {
 		costThresholdTextField.setText("" + settings.get(PointDescriptorTrackerFactory.COST_THRESHOLD));
 		maxDistanceTextField.setText("" + settings.get(PointDescriptorTrackerFactory.MAX_LINKING_DISTANCE));
 		pruneCheckBox.setSelected((boolean) settings.get(PointDescriptorTrackerFactory.PRUNE_GRAPH));
+		spatialGatingCheckBox.setSelected((boolean) settings.getOrDefault(PointDescriptorTrackerFactory.SPATIAL_GATING, PointDescriptorTrackerFactory.DEFAULT_SPATIAL_GATING));
+		verbosityComboBox.setSelectedItem(Verbosity.valueOf((String) settings.getOrDefault(PointDescriptorTrackerFactory.VERBOSITY, PointDescriptorTrackerFactory.DEFAULT_VERBOSITY)));
+		linkSolverComboBox.setSelectedItem(LinkSolverType.valueOf((String) settings.getOrDefault(PointDescriptorTrackerFactory.LINK_SOLVER, PointDescriptorTrackerFactory.DEFAULT_LINK_SOLVER)));
+		cacheCheckBox.setSelected((boolean) settings.getOrDefault(PointDescriptorTrackerFactory.CACHE_DESCRIPTORS, PointDescriptorTrackerFactory.DEFAULT_CACHE_DESCRIPTORS));
+		cacheDirectoryTextField.setText((String) settings.getOrDefault(PointDescriptorTrackerFactory.CACHE_DIRECTORY, PointDescriptorTrackerFactory.DEFAULT_CACHE_DIRECTORY));
+		cacheMemoryTextField.setText("" + settings.getOrDefault(PointDescriptorTrackerFactory.CACHE_MEMORY_MB, PointDescriptorTrackerFactory.DEFAULT_CACHE_MEMORY_MB));
+		windowedDescriptorsCheckBox.setSelected((boolean) settings.getOrDefault(PointDescriptorTrackerFactory.WINDOWED_DESCRIPTORS, PointDescriptorTrackerFactory.DEFAULT_WINDOWED_DESCRIPTORS));
+		allowGapClosingCheckBox.setSelected((boolean) settings.getOrDefault(PointDescriptorTrackerFactory.ALLOW_GAP_CLOSING, PointDescriptorTrackerFactory.DEFAULT_ALLOW_GAP_CLOSING));
+		maxFrameGapTextField.setText("" + settings.getOrDefault(PointDescriptorTrackerFactory.MAX_FRAME_GAP, PointDescriptorTrackerFactory.DEFAULT_MAX_FRAME_GAP));
+		allowTrackSplittingCheckBox.setSelected((boolean) settings.getOrDefault(PointDescriptorTrackerFactory.ALLOW_TRACK_SPLITTING, PointDescriptorTrackerFactory.DEFAULT_ALLOW_TRACK_SPLITTING));
+		allowTrackMergingCheckBox.setSelected((boolean) settings.getOrDefault(PointDescriptorTrackerFactory.ALLOW_TRACK_MERGING, PointDescriptorTrackerFactory.DEFAULT_ALLOW_TRACK_MERGING));
+		limitLinksPerSpotCheckBox.setSelected((boolean) settings.getOrDefault(PointDescriptorTrackerFactory.LIMIT_LINKS_PER_SPOT, PointDescriptorTrackerFactory.DEFAULT_LIMIT_LINKS_PER_SPOT));
+		maxLinksPerSpotTextField.setText("" + settings.getOrDefault(PointDescriptorTrackerFactory.MAX_LINKS_PER_SPOT, PointDescriptorTrackerFactory.DEFAULT_MAX_LINKS_PER_SPOT));
+		onlinePruningCheckBox.setSelected((boolean) settings.getOrDefault(PointDescriptorTrackerFactory.ONLINE_PRUNING, PointDescriptorTrackerFactory.DEFAULT_ONLINE_PRUNING));
+		compactEdgesCheckBox.setSelected((boolean) settings.getOrDefault(PointDescriptorTrackerFactory.COMPACT_EDGES, PointDescriptorTrackerFactory.DEFAULT_COMPACT_EDGES));
+		edgeMemoryTextField.setText("" + settings.getOrDefault(PointDescriptorTrackerFactory.EDGE_MEMORY_MB, PointDescriptorTrackerFactory.DEFAULT_EDGE_MEMORY_MB));
+		splitComponentsCheckBox.setSelected((boolean) settings.getOrDefault(PointDescriptorTrackerFactory.SPLIT_COMPONENTS, PointDescriptorTrackerFactory.DEFAULT_SPLIT_COMPONENTS));
 	}
 }
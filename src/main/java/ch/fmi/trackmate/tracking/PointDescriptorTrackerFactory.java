@@ -21,6 +21,7 @@
  */
 package ch.fmi.trackmate.tracking;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -55,6 +56,23 @@ public class PointDescriptorTrackerFactory implements SpotTrackerFactory {
 	static final String COST_THRESHOLD = "COST_THRESHOLD";
 	static final String MAX_LINKING_DISTANCE = "MAX_LINKING_DISTANCE";
 	static final String PRUNE_GRAPH = "PRUNE_GRAPH";
+	static final String ONLINE_PRUNING = "ONLINE_PRUNING";
+	static final String SPLIT_COMPONENTS = "SPLIT_COMPONENTS";
+	static final String COMPACT_EDGES = "COMPACT_EDGES";
+	static final String EDGE_MEMORY_MB = "EDGE_MEMORY_MB";
+	static final String SPATIAL_GATING = "SPATIAL_GATING";
+	static final String VERBOSITY = "VERBOSITY";
+	static final String LINK_SOLVER = "LINK_SOLVER";
+	static final String CACHE_DESCRIPTORS = "CACHE_DESCRIPTORS";
+	static final String CACHE_DIRECTORY = "CACHE_DIRECTORY";
+	static final String CACHE_MEMORY_MB = "CACHE_MEMORY_MB";
+	static final String WINDOWED_DESCRIPTORS = "WINDOWED_DESCRIPTORS";
+	static final String ALLOW_GAP_CLOSING = "ALLOW_GAP_CLOSING";
+	static final String MAX_FRAME_GAP = "MAX_FRAME_GAP";
+	static final String ALLOW_TRACK_SPLITTING = "ALLOW_TRACK_SPLITTING";
+	static final String ALLOW_TRACK_MERGING = "ALLOW_TRACK_MERGING";
+	static final String LIMIT_LINKS_PER_SPOT = "LIMIT_LINKS_PER_SPOT";
+	static final String MAX_LINKS_PER_SPOT = "MAX_LINKS_PER_SPOT";
 
 	static final Integer DEFAULT_SUBSET_NEIGHBORS = 5;
 	static final Integer DEFAULT_NUM_NEIGHBORS = 7;
@@ -62,6 +80,24 @@ public class PointDescriptorTrackerFactory implements SpotTrackerFactory {
 	static final Double DEFAULT_COST_THRESHOLD = 100d;
 	static final Double DEFAULT_MAX_LINKING_DISTANCE = 10d;
 	static final Boolean DEFAULT_PRUNE_GRAPH = true;
+	static final Boolean DEFAULT_ONLINE_PRUNING = false;
+	static final Boolean DEFAULT_SPLIT_COMPONENTS = false;
+	static final Boolean DEFAULT_COMPACT_EDGES = false;
+	static final Integer DEFAULT_EDGE_MEMORY_MB = 1024;
+	static final Boolean DEFAULT_SPATIAL_GATING = true;
+	static final String DEFAULT_VERBOSITY = Verbosity.NORMAL.name();
+	static final String DEFAULT_LINK_SOLVER = LinkSolverType.JAQAMAN.name();
+	static final Boolean DEFAULT_CACHE_DESCRIPTORS = false;
+	/** Empty for {@link DescriptorCache#defaultDirectory()}. */
+	static final String DEFAULT_CACHE_DIRECTORY = "";
+	static final Integer DEFAULT_CACHE_MEMORY_MB = (int) (DescriptorCache.DEFAULT_MAX_BYTES >> 20);
+	static final Boolean DEFAULT_WINDOWED_DESCRIPTORS = false;
+	static final Boolean DEFAULT_ALLOW_GAP_CLOSING = false;
+	static final Integer DEFAULT_MAX_FRAME_GAP = 10;
+	static final Boolean DEFAULT_ALLOW_TRACK_SPLITTING = false;
+	static final Boolean DEFAULT_ALLOW_TRACK_MERGING = false;
+	static final Boolean DEFAULT_LIMIT_LINKS_PER_SPOT = false;
+	static final Integer DEFAULT_MAX_LINKS_PER_SPOT = 2;
 
 	private String errorMessage;
 
@@ -109,6 +145,11 @@ public class PointDescriptorTrackerFactory implements SpotTrackerFactory {
 			errorMessage = "Wrong parameter for " + NUM_NEIGHBORS;
 			return false;
 		}
+		if ((int) settings.get(SUBSET_NEIGHBORS) > (int) settings.get(NUM_NEIGHBORS))
+		{
+			errorMessage = SUBSET_NEIGHBORS + " must not be larger than " + NUM_NEIGHBORS;
+			return false;
+		}
 		if (!settings.containsKey(MAX_INTERVAL)
 				|| !(settings.get(MAX_INTERVAL) instanceof Integer)
 				|| (int) settings.get(MAX_INTERVAL) < 1)
@@ -125,7 +166,7 @@ public class PointDescriptorTrackerFactory implements SpotTrackerFactory {
 		}
 		if (!settings.containsKey(MAX_LINKING_DISTANCE)
 				|| !(settings.get(MAX_LINKING_DISTANCE) instanceof Double)
-				|| (double) settings.get(MAX_LINKING_DISTANCE) <= 0)
+				|| !((double) settings.get(MAX_LINKING_DISTANCE) >= 0))
 		{
 			errorMessage = "Wrong parameter for " + MAX_LINKING_DISTANCE;
 			return false;
@@ -136,6 +177,113 @@ public class PointDescriptorTrackerFactory implements SpotTrackerFactory {
 			errorMessage = "Wrong parameter for " + PRUNE_GRAPH;
 			return false;
 		}
+		if (settings.containsKey(ONLINE_PRUNING)
+				&& !(settings.get(ONLINE_PRUNING) instanceof Boolean))
+		{
+			errorMessage = "Wrong parameter for " + ONLINE_PRUNING;
+			return false;
+		}
+		if (settings.containsKey(SPLIT_COMPONENTS)
+				&& !(settings.get(SPLIT_COMPONENTS) instanceof Boolean))
+		{
+			errorMessage = "Wrong parameter for " + SPLIT_COMPONENTS;
+			return false;
+		}
+		if (settings.containsKey(COMPACT_EDGES)
+				&& !(settings.get(COMPACT_EDGES) instanceof Boolean))
+		{
+			errorMessage = "Wrong parameter for " + COMPACT_EDGES;
+			return false;
+		}
+		if (settings.containsKey(EDGE_MEMORY_MB)
+				&& (!(settings.get(EDGE_MEMORY_MB) instanceof Integer)
+				|| (int) settings.get(EDGE_MEMORY_MB) < 0))
+		{
+			errorMessage = "Wrong parameter for " + EDGE_MEMORY_MB;
+			return false;
+		}
+		// optional, settings from older versions do not have it
+		if (settings.containsKey(SPATIAL_GATING)
+				&& !(settings.get(SPATIAL_GATING) instanceof Boolean))
+		{
+			errorMessage = "Wrong parameter for " + SPATIAL_GATING;
+			return false;
+		}
+		if (settings.containsKey(VERBOSITY)
+				&& !isVerbosity(settings.get(VERBOSITY)))
+		{
+			errorMessage = "Wrong parameter for " + VERBOSITY;
+			return false;
+		}
+		if (settings.containsKey(LINK_SOLVER)
+				&& !isLinkSolverType(settings.get(LINK_SOLVER)))
+		{
+			errorMessage = "Wrong parameter for " + LINK_SOLVER;
+			return false;
+		}
+		if (settings.containsKey(CACHE_DESCRIPTORS)
+				&& !(settings.get(CACHE_DESCRIPTORS) instanceof Boolean))
+		{
+			errorMessage = "Wrong parameter for " + CACHE_DESCRIPTORS;
+			return false;
+		}
+		if (settings.containsKey(CACHE_DIRECTORY)
+				&& !(settings.get(CACHE_DIRECTORY) instanceof String))
+		{
+			errorMessage = "Wrong parameter for " + CACHE_DIRECTORY;
+			return false;
+		}
+		if (settings.containsKey(CACHE_MEMORY_MB)
+				&& (!(settings.get(CACHE_MEMORY_MB) instanceof Integer)
+				|| (int) settings.get(CACHE_MEMORY_MB) < 0))
+		{
+			errorMessage = "Wrong parameter for " + CACHE_MEMORY_MB;
+			return false;
+		}
+		if (settings.containsKey(WINDOWED_DESCRIPTORS)
+				&& !(settings.get(WINDOWED_DESCRIPTORS) instanceof Boolean))
+		{
+			errorMessage = "Wrong parameter for " + WINDOWED_DESCRIPTORS;
+			return false;
+		}
+		if (settings.containsKey(ALLOW_GAP_CLOSING)
+				&& !(settings.get(ALLOW_GAP_CLOSING) instanceof Boolean))
+		{
+			errorMessage = "Wrong parameter for " + ALLOW_GAP_CLOSING;
+			return false;
+		}
+		if (settings.containsKey(MAX_FRAME_GAP)
+				&& (!(settings.get(MAX_FRAME_GAP) instanceof Integer)
+				|| (int) settings.get(MAX_FRAME_GAP) < 1))
+		{
+			errorMessage = "Wrong parameter for " + MAX_FRAME_GAP;
+			return false;
+		}
+		if (settings.containsKey(ALLOW_TRACK_SPLITTING)
+				&& !(settings.get(ALLOW_TRACK_SPLITTING) instanceof Boolean))
+		{
+			errorMessage = "Wrong parameter for " + ALLOW_TRACK_SPLITTING;
+			return false;
+		}
+		if (settings.containsKey(ALLOW_TRACK_MERGING)
+				&& !(settings.get(ALLOW_TRACK_MERGING) instanceof Boolean))
+		{
+			errorMessage = "Wrong parameter for " + ALLOW_TRACK_MERGING;
+			return false;
+		}
+		if (settings.containsKey(LIMIT_LINKS_PER_SPOT)
+				&& !(settings.get(LIMIT_LINKS_PER_SPOT) instanceof Boolean))
+		{
+			errorMessage = "Wrong parameter for " + LIMIT_LINKS_PER_SPOT;
+			return false;
+		}
+		if (settings.containsKey(MAX_LINKS_PER_SPOT)
+				&& (!(settings.get(MAX_LINKS_PER_SPOT) instanceof Integer)
+				|| (int) settings.get(MAX_LINKS_PER_SPOT) < 1))
+		{
+			errorMessage = "Wrong parameter for " + MAX_LINKS_PER_SPOT;
+			return false;
+		}
 		return true;
 	}
 
@@ -147,7 +295,29 @@ public class PointDescriptorTrackerFactory implements SpotTrackerFactory {
 		final double costThreshold = (double) settings.get(COST_THRESHOLD);
 		final double maxDistance = (double) settings.get(MAX_LINKING_DISTANCE);
 		final boolean pruneGraph = (boolean) settings.get(PRUNE_GRAPH);
-		return new PointDescriptorTracker(spots, subsetSize, numNeighbors, maxInterval, costThreshold, maxDistance*maxDistance, pruneGraph);
+		final boolean spatialGating = (boolean) settings.getOrDefault(SPATIAL_GATING, DEFAULT_SPATIAL_GATING);
+		final PointDescriptorTracker tracker = new PointDescriptorTracker(spots, subsetSize, numNeighbors, maxInterval, costThreshold, maxDistance*maxDistance, pruneGraph);
+		tracker.setSpatialGating(spatialGating);
+		tracker.setVerbosity(Verbosity.valueOf((String) settings.getOrDefault(VERBOSITY, DEFAULT_VERBOSITY)));
+		tracker.setLinkSolver(LinkSolverType.valueOf((String) settings.getOrDefault(LINK_SOLVER, DEFAULT_LINK_SOLVER)));
+		if ((boolean) settings.getOrDefault(CACHE_DESCRIPTORS, DEFAULT_CACHE_DESCRIPTORS)) {
+			final String cacheDirectory = (String) settings.getOrDefault(CACHE_DIRECTORY, DEFAULT_CACHE_DIRECTORY);
+			tracker.setDescriptorCache(new DescriptorCache(
+					cacheDirectory.isEmpty() ? DescriptorCache.defaultDirectory() : new File(cacheDirectory),
+					(int) settings.getOrDefault(CACHE_MEMORY_MB, DEFAULT_CACHE_MEMORY_MB) * 1024L * 1024L));
+		}
+		tracker.setWindowedDescriptors((boolean) settings.getOrDefault(WINDOWED_DESCRIPTORS, DEFAULT_WINDOWED_DESCRIPTORS));
+		tracker.setGapClosing((boolean) settings.getOrDefault(ALLOW_GAP_CLOSING, DEFAULT_ALLOW_GAP_CLOSING),
+				(int) settings.getOrDefault(MAX_FRAME_GAP, DEFAULT_MAX_FRAME_GAP));
+		tracker.setTrackSplitting((boolean) settings.getOrDefault(ALLOW_TRACK_SPLITTING, DEFAULT_ALLOW_TRACK_SPLITTING));
+		tracker.setTrackMerging((boolean) settings.getOrDefault(ALLOW_TRACK_MERGING, DEFAULT_ALLOW_TRACK_MERGING));
+		tracker.setLinkLimit((boolean) settings.getOrDefault(LIMIT_LINKS_PER_SPOT, DEFAULT_LIMIT_LINKS_PER_SPOT),
+				(int) settings.getOrDefault(MAX_LINKS_PER_SPOT, DEFAULT_MAX_LINKS_PER_SPOT));
+		tracker.setOnlinePruning((boolean) settings.getOrDefault(ONLINE_PRUNING, DEFAULT_ONLINE_PRUNING));
+		tracker.setCompactEdges((boolean) settings.getOrDefault(COMPACT_EDGES, DEFAULT_COMPACT_EDGES),
+				(int) settings.getOrDefault(EDGE_MEMORY_MB, DEFAULT_EDGE_MEMORY_MB) * 1024L * 1024L);
+		tracker.setSplitComponents((boolean) settings.getOrDefault(SPLIT_COMPONENTS, DEFAULT_SPLIT_COMPONENTS));
+		return tracker;
 	}
 
 	@Override
@@ -160,6 +330,23 @@ public class PointDescriptorTrackerFactory implements SpotTrackerFactory {
 		settings.put(COST_THRESHOLD, DEFAULT_COST_THRESHOLD);
 		settings.put(MAX_LINKING_DISTANCE, DEFAULT_MAX_LINKING_DISTANCE);
 		settings.put(PRUNE_GRAPH, DEFAULT_PRUNE_GRAPH);
+		settings.put(ONLINE_PRUNING, DEFAULT_ONLINE_PRUNING);
+		settings.put(SPLIT_COMPONENTS, DEFAULT_SPLIT_COMPONENTS);
+		settings.put(COMPACT_EDGES, DEFAULT_COMPACT_EDGES);
+		settings.put(EDGE_MEMORY_MB, DEFAULT_EDGE_MEMORY_MB);
+		settings.put(SPATIAL_GATING, DEFAULT_SPATIAL_GATING);
+		settings.put(VERBOSITY, DEFAULT_VERBOSITY);
+		settings.put(LINK_SOLVER, DEFAULT_LINK_SOLVER);
+		settings.put(CACHE_DESCRIPTORS, DEFAULT_CACHE_DESCRIPTORS);
+		settings.put(CACHE_DIRECTORY, DEFAULT_CACHE_DIRECTORY);
+		settings.put(CACHE_MEMORY_MB, DEFAULT_CACHE_MEMORY_MB);
+		settings.put(WINDOWED_DESCRIPTORS, DEFAULT_WINDOWED_DESCRIPTORS);
+		settings.put(ALLOW_GAP_CLOSING, DEFAULT_ALLOW_GAP_CLOSING);
+		settings.put(MAX_FRAME_GAP, DEFAULT_MAX_FRAME_GAP);
+		settings.put(ALLOW_TRACK_SPLITTING, DEFAULT_ALLOW_TRACK_SPLITTING);
+		settings.put(ALLOW_TRACK_MERGING, DEFAULT_ALLOW_TRACK_MERGING);
+		settings.put(LIMIT_LINKS_PER_SPOT, DEFAULT_LIMIT_LINKS_PER_SPOT);
+		settings.put(MAX_LINKS_PER_SPOT, DEFAULT_MAX_LINKS_PER_SPOT);
 
 		return settings;
 	}
@@ -190,6 +377,40 @@ public class PointDescriptorTrackerFactory implements SpotTrackerFactory {
 		element.setAttribute(MAX_LINKING_DISTANCE, "" + maxDistance);
 		final boolean doPrune = (boolean) settings.get(PRUNE_GRAPH);
 		element.setAttribute(PRUNE_GRAPH, "" + doPrune);
+		final boolean onlinePruning = (boolean) settings.getOrDefault(ONLINE_PRUNING, DEFAULT_ONLINE_PRUNING);
+		element.setAttribute(ONLINE_PRUNING, "" + onlinePruning);
+		final boolean splitComponents = (boolean) settings.getOrDefault(SPLIT_COMPONENTS, DEFAULT_SPLIT_COMPONENTS);
+		element.setAttribute(SPLIT_COMPONENTS, "" + splitComponents);
+		final boolean compactEdges = (boolean) settings.getOrDefault(COMPACT_EDGES, DEFAULT_COMPACT_EDGES);
+		element.setAttribute(COMPACT_EDGES, "" + compactEdges);
+		final int edgeMemory = (int) settings.getOrDefault(EDGE_MEMORY_MB, DEFAULT_EDGE_MEMORY_MB);
+		element.setAttribute(EDGE_MEMORY_MB, "" + edgeMemory);
+		final boolean spatialGating = (boolean) settings.getOrDefault(SPATIAL_GATING, DEFAULT_SPATIAL_GATING);
+		element.setAttribute(SPATIAL_GATING, "" + spatialGating);
+		final String verbosity = (String) settings.getOrDefault(VERBOSITY, DEFAULT_VERBOSITY);
+		element.setAttribute(VERBOSITY, verbosity);
+		final String linkSolver = (String) settings.getOrDefault(LINK_SOLVER, DEFAULT_LINK_SOLVER);
+		element.setAttribute(LINK_SOLVER, linkSolver);
+		final boolean cacheDescriptors = (boolean) settings.getOrDefault(CACHE_DESCRIPTORS, DEFAULT_CACHE_DESCRIPTORS);
+		element.setAttribute(CACHE_DESCRIPTORS, "" + cacheDescriptors);
+		final String cacheDirectory = (String) settings.getOrDefault(CACHE_DIRECTORY, DEFAULT_CACHE_DIRECTORY);
+		element.setAttribute(CACHE_DIRECTORY, cacheDirectory);
+		final int cacheMemory = (int) settings.getOrDefault(CACHE_MEMORY_MB, DEFAULT_CACHE_MEMORY_MB);
+		element.setAttribute(CACHE_MEMORY_MB, "" + cacheMemory);
+		final boolean windowedDescriptors = (boolean) settings.getOrDefault(WINDOWED_DESCRIPTORS, DEFAULT_WINDOWED_DESCRIPTORS);
+		element.setAttribute(WINDOWED_DESCRIPTORS, "" + windowedDescriptors);
+		final boolean allowGapClosing = (boolean) settings.getOrDefault(ALLOW_GAP_CLOSING, DEFAULT_ALLOW_GAP_CLOSING);
+		element.setAttribute(ALLOW_GAP_CLOSING, "" + allowGapClosing);
+		final int maxFrameGap = (int) settings.getOrDefault(MAX_FRAME_GAP, DEFAULT_MAX_FRAME_GAP);
+		element.setAttribute(MAX_FRAME_GAP, "" + maxFrameGap);
+		final boolean allowTrackSplitting = (boolean) settings.getOrDefault(ALLOW_TRACK_SPLITTING, DEFAULT_ALLOW_TRACK_SPLITTING);
+		element.setAttribute(ALLOW_TRACK_SPLITTING, "" + allowTrackSplitting);
+		final boolean allowTrackMerging = (boolean) settings.getOrDefault(ALLOW_TRACK_MERGING, DEFAULT_ALLOW_TRACK_MERGING);
+		element.setAttribute(ALLOW_TRACK_MERGING, "" + allowTrackMerging);
+		final boolean limitLinksPerSpot = (boolean) settings.getOrDefault(LIMIT_LINKS_PER_SPOT, DEFAULT_LIMIT_LINKS_PER_SPOT);
+		element.setAttribute(LIMIT_LINKS_PER_SPOT, "" + limitLinksPerSpot);
+		final int maxLinksPerSpot = (int) settings.getOrDefault(MAX_LINKS_PER_SPOT, DEFAULT_MAX_LINKS_PER_SPOT);
+		element.setAttribute(MAX_LINKS_PER_SPOT, "" + maxLinksPerSpot);
 
 		return true;
 	}
@@ -211,6 +432,42 @@ public class PointDescriptorTrackerFactory implements SpotTrackerFactory {
 		str.append("  Maximal linking distance: " + maxDistance + ".\n");
 		final boolean doPrune = (boolean) settings.get(PRUNE_GRAPH);
 		str.append("  Return pruned graph: " + doPrune + ".\n");
+		final boolean onlinePruning = (boolean) settings.getOrDefault(ONLINE_PRUNING, DEFAULT_ONLINE_PRUNING);
+		str.append("  Prune while linking: " + onlinePruning
+				+ (onlinePruning ? " (approximate, tracks within " + maxInterval + " frames around each frame)" : "") + ".\n");
+		final boolean compactEdges = (boolean) settings.getOrDefault(COMPACT_EDGES, DEFAULT_COMPACT_EDGES);
+		str.append("  Compact off-heap links: " + compactEdges + ".\n");
+		final int edgeMemory = (int) settings.getOrDefault(EDGE_MEMORY_MB, DEFAULT_EDGE_MEMORY_MB);
+		str.append("  Memory for links (MB): " + edgeMemory + ".\n");
+		final boolean spatialGating = (boolean) settings.getOrDefault(SPATIAL_GATING, DEFAULT_SPATIAL_GATING);
+		str.append("  Spatially gated linking: " + spatialGating + ".\n");
+		final String verbosity = (String) settings.getOrDefault(VERBOSITY, DEFAULT_VERBOSITY);
+		str.append("  Log verbosity: " + verbosity + ".\n");
+		final String linkSolver = (String) settings.getOrDefault(LINK_SOLVER, DEFAULT_LINK_SOLVER);
+		str.append("  Link solver: " + linkSolver + ".\n");
+		final boolean cacheDescriptors = (boolean) settings.getOrDefault(CACHE_DESCRIPTORS, DEFAULT_CACHE_DESCRIPTORS);
+		str.append("  Cache descriptors on disk: " + cacheDescriptors + ".\n");
+		final String cacheDirectory = (String) settings.getOrDefault(CACHE_DIRECTORY, DEFAULT_CACHE_DIRECTORY);
+		str.append("  Descriptor cache directory: "
+				+ (cacheDirectory.isEmpty() ? DescriptorCache.defaultDirectory() : cacheDirectory) + ".\n");
+		final int cacheMemory = (int) settings.getOrDefault(CACHE_MEMORY_MB, DEFAULT_CACHE_MEMORY_MB);
+		str.append("  Descriptor cache size (MB): " + cacheMemory + ".\n");
+		final boolean windowedDescriptors = (boolean) settings.getOrDefault(WINDOWED_DESCRIPTORS, DEFAULT_WINDOWED_DESCRIPTORS);
+		str.append("  Windowed descriptors: " + windowedDescriptors + ".\n");
+		final boolean allowGapClosing = (boolean) settings.getOrDefault(ALLOW_GAP_CLOSING, DEFAULT_ALLOW_GAP_CLOSING);
+		str.append("  Allow gap closing: " + allowGapClosing + ".\n");
+		final int maxFrameGap = (int) settings.getOrDefault(MAX_FRAME_GAP, DEFAULT_MAX_FRAME_GAP);
+		str.append("  Max frame gap: " + maxFrameGap + ".\n");
+		final boolean allowTrackSplitting = (boolean) settings.getOrDefault(ALLOW_TRACK_SPLITTING, DEFAULT_ALLOW_TRACK_SPLITTING);
+		str.append("  Allow track splitting: " + allowTrackSplitting + ".\n");
+		final boolean allowTrackMerging = (boolean) settings.getOrDefault(ALLOW_TRACK_MERGING, DEFAULT_ALLOW_TRACK_MERGING);
+		str.append("  Allow track merging: " + allowTrackMerging + ".\n");
+		final boolean limitLinksPerSpot = (boolean) settings.getOrDefault(LIMIT_LINKS_PER_SPOT, DEFAULT_LIMIT_LINKS_PER_SPOT);
+		str.append("  Limit links per spot: " + limitLinksPerSpot + ".\n");
+		final int maxLinksPerSpot = (int) settings.getOrDefault(MAX_LINKS_PER_SPOT, DEFAULT_MAX_LINKS_PER_SPOT);
+		str.append("  Max links per spot: " + maxLinksPerSpot + ".\n");
+		final boolean splitComponents = (boolean) settings.getOrDefault(SPLIT_COMPONENTS, DEFAULT_SPLIT_COMPONENTS);
+		str.append("  Split frame pairs into components: " + splitComponents + ".\n");
 
 		return str.toString();
 	}
@@ -235,6 +492,79 @@ public class PointDescriptorTrackerFactory implements SpotTrackerFactory {
 
 			final boolean doPrune = element.getAttribute(PRUNE_GRAPH).getBooleanValue();
 			settings.put(PRUNE_GRAPH, doPrune);
+
+			final boolean onlinePruning = element.getAttribute(ONLINE_PRUNING) == null ? DEFAULT_ONLINE_PRUNING
+					: element.getAttribute(ONLINE_PRUNING).getBooleanValue();
+			settings.put(ONLINE_PRUNING, onlinePruning);
+
+			final boolean splitComponents = element.getAttribute(SPLIT_COMPONENTS) == null ? DEFAULT_SPLIT_COMPONENTS
+					: element.getAttribute(SPLIT_COMPONENTS).getBooleanValue();
+			settings.put(SPLIT_COMPONENTS, splitComponents);
+
+			final boolean compactEdges = element.getAttribute(COMPACT_EDGES) == null ? DEFAULT_COMPACT_EDGES
+					: element.getAttribute(COMPACT_EDGES).getBooleanValue();
+			settings.put(COMPACT_EDGES, compactEdges);
+
+			final int edgeMemory = element.getAttribute(EDGE_MEMORY_MB) == null ? DEFAULT_EDGE_MEMORY_MB
+					: element.getAttribute(EDGE_MEMORY_MB).getIntValue();
+			settings.put(EDGE_MEMORY_MB, edgeMemory);
+
+			final boolean spatialGating = element.getAttribute(SPATIAL_GATING) == null ? DEFAULT_SPATIAL_GATING
+					: element.getAttribute(SPATIAL_GATING).getBooleanValue();
+			settings.put(SPATIAL_GATING, spatialGating);
+
+			final String verbosity = element.getAttributeValue(VERBOSITY, DEFAULT_VERBOSITY);
+			if (!isVerbosity(verbosity)) {
+				errorMessage = "Unknown " + VERBOSITY + " in XML: " + verbosity;
+				return false;
+			}
+			settings.put(VERBOSITY, verbosity);
+
+			final String linkSolver = element.getAttributeValue(LINK_SOLVER, DEFAULT_LINK_SOLVER);
+			if (!isLinkSolverType(linkSolver)) {
+				errorMessage = "Unknown " + LINK_SOLVER + " in XML: " + linkSolver;
+				return false;
+			}
+			settings.put(LINK_SOLVER, linkSolver);
+
+			final boolean cacheDescriptors = element.getAttribute(CACHE_DESCRIPTORS) == null ? DEFAULT_CACHE_DESCRIPTORS
+					: element.getAttribute(CACHE_DESCRIPTORS).getBooleanValue();
+			settings.put(CACHE_DESCRIPTORS, cacheDescriptors);
+
+			final String cacheDirectory = element.getAttributeValue(CACHE_DIRECTORY, DEFAULT_CACHE_DIRECTORY);
+			settings.put(CACHE_DIRECTORY, cacheDirectory);
+
+			final int cacheMemory = element.getAttribute(CACHE_MEMORY_MB) == null ? DEFAULT_CACHE_MEMORY_MB
+					: element.getAttribute(CACHE_MEMORY_MB).getIntValue();
+			settings.put(CACHE_MEMORY_MB, cacheMemory);
+
+			final boolean windowedDescriptors = element.getAttribute(WINDOWED_DESCRIPTORS) == null ? DEFAULT_WINDOWED_DESCRIPTORS
+					: element.getAttribute(WINDOWED_DESCRIPTORS).getBooleanValue();
+			settings.put(WINDOWED_DESCRIPTORS, windowedDescriptors);
+
+			final boolean allowGapClosing = element.getAttribute(ALLOW_GAP_CLOSING) == null ? DEFAULT_ALLOW_GAP_CLOSING
+					: element.getAttribute(ALLOW_GAP_CLOSING).getBooleanValue();
+			settings.put(ALLOW_GAP_CLOSING, allowGapClosing);
+
+			final int maxFrameGap = element.getAttribute(MAX_FRAME_GAP) == null ? DEFAULT_MAX_FRAME_GAP
+					: element.getAttribute(MAX_FRAME_GAP).getIntValue();
+			settings.put(MAX_FRAME_GAP, maxFrameGap);
+
+			final boolean allowTrackSplitting = element.getAttribute(ALLOW_TRACK_SPLITTING) == null ? DEFAULT_ALLOW_TRACK_SPLITTING
+					: element.getAttribute(ALLOW_TRACK_SPLITTING).getBooleanValue();
+			settings.put(ALLOW_TRACK_SPLITTING, allowTrackSplitting);
+
+			final boolean allowTrackMerging = element.getAttribute(ALLOW_TRACK_MERGING) == null ? DEFAULT_ALLOW_TRACK_MERGING
+					: element.getAttribute(ALLOW_TRACK_MERGING).getBooleanValue();
+			settings.put(ALLOW_TRACK_MERGING, allowTrackMerging);
+
+			final boolean limitLinksPerSpot = element.getAttribute(LIMIT_LINKS_PER_SPOT) == null ? DEFAULT_LIMIT_LINKS_PER_SPOT
+					: element.getAttribute(LIMIT_LINKS_PER_SPOT).getBooleanValue();
+			settings.put(LIMIT_LINKS_PER_SPOT, limitLinksPerSpot);
+
+			final int maxLinksPerSpot = element.getAttribute(MAX_LINKS_PER_SPOT) == null ? DEFAULT_MAX_LINKS_PER_SPOT
+					: element.getAttribute(MAX_LINKS_PER_SPOT).getIntValue();
+			settings.put(MAX_LINKS_PER_SPOT, maxLinksPerSpot);
 		}
 		catch (final DataConversionException exc) {
 			errorMessage = "Error retrieving settings from XML: " + exc.toString();
@@ -243,6 +573,22 @@ public class PointDescriptorTrackerFactory implements SpotTrackerFactory {
 		return true;
 	}
 
+	private static boolean isVerbosity(final Object value) {
+		if (!(value instanceof String)) return false;
+		for (final Verbosity verbosity : Verbosity.values()) {
+			if (verbosity.name().equals(value)) return true;
+		}
+		return false;
+	}
+
+	private static boolean isLinkSolverType(final Object value) {
+		if (!(value instanceof String)) return false;
+		for (final LinkSolverType linkSolver : LinkSolverType.values()) {
+			if (linkSolver.name().equals(value)) return true;
+		}
+		return false;
+	}
+
 	@Override
 	public SpotTrackerFactory copy() {
 		return new PointDescriptorTrackerFactory();
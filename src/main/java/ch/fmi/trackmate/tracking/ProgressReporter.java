@@ -0,0 +1,139 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import fiji.plugin.trackmate.Logger;
+
+/**
+ * Thread-safe progress counter that writes an aggregated message to a
+ * {@link Logger} at most once per interval, instead of one message per work
+ * item.
+ * <p>
+ * The counter tracks completed tasks (e.g. frame pairs) out of a known total,
+ * and an additional count of produced items (e.g. links). Messages include the
+ * item rate and the estimated remaining time, and the fraction of completed
+ * tasks is passed to {@link Logger#setProgress(double)}.
+ * </p>
+ */
+public final class ProgressReporter {
+
+	/** Default minimal time between two messages. */
+	public static final long DEFAULT_INTERVAL_MILLIS = 2000;
+
+	private final Logger logger;
+	private final String task;
+	private final String taskUnit;
+	private final String itemUnit;
+	private final long total;
+	private final long intervalNanos;
+	private final boolean enabled;
+
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong items = new AtomicLong();
+	private final long startNanos;
+	private final AtomicLong lastFlush;
+
+	/**
+	 * @param logger
+	 *            logger for the progress messages
+	 * @param task
+	 *            name of the task, e.g. {@code "Linking"}
+	 * @param taskUnit
+	 *            name of the counted tasks, e.g. {@code "frame pairs"}
+	 * @param itemUnit
+	 *            name of the counted items, e.g. {@code "links"}
+	 * @param total
+	 *            total number of tasks
+	 * @param verbosity
+	 *            progress is only reported from {@link Verbosity#NORMAL} on
+	 */
+	public ProgressReporter(Logger logger, String task, String taskUnit, String itemUnit, long total,
+			Verbosity verbosity) {
+		this(logger, task, taskUnit, itemUnit, total, verbosity, DEFAULT_INTERVAL_MILLIS);
+	}
+
+	public ProgressReporter(Logger logger, String task, String taskUnit, String itemUnit, long total,
+			Verbosity verbosity, long intervalMillis) {
+		this.logger = logger;
+		this.task = task;
+		this.taskUnit = taskUnit;
+		this.itemUnit = itemUnit;
+		this.total = total;
+		this.intervalNanos = intervalMillis * 1_000_000L;
+		this.enabled = verbosity.isAtLeast(Verbosity.NORMAL);
+		this.startNanos = System.nanoTime();
+		this.lastFlush = new AtomicLong(startNanos);
+		logger.setProgress(0);
+	}
+
+	/**
+	 * Counts one completed task and the items it produced, and updates the
+	 * progress if the last update is older than the interval.
+	 * 
+	 * @param nItems
+	 *            number of items produced by the task
+	 */
+	public void completed(long nItems) {
+		long done = completed.incrementAndGet();
+		items.addAndGet(nItems);
+		long now = System.nanoTime();
+		long last = lastFlush.get();
+		// only the thread that wins the update writes the message
+		if (now - last >= intervalNanos && lastFlush.compareAndSet(last, now)) {
+			logger.setProgress(total > 0 ? (double) done / total : 1);
+			if (enabled) {
+				logger.log(message(now, true));
+			}
+		}
+	}
+
+	/**
+	 * Writes the final counts, regardless of the verbosity.
+	 */
+	public void finish() {
+		logger.setProgress(1);
+		logger.log(message(System.nanoTime(), false));
+	}
+
+	public long getCompleted() {
+		return completed.get();
+	}
+
+	public long getItems() {
+		return items.get();
+	}
+
+	private String message(long now, boolean withEta) {
+		long done = completed.get();
+		double seconds = Math.max(1e-9, (now - startNanos) / 1e9);
+		StringBuilder message = new StringBuilder();
+		message.append(task).append(": ").append(done).append("/").append(total).append(" ").append(taskUnit)
+				.append(", ").append(items.get()).append(" ").append(itemUnit)
+				.append(String.format(" (%.0f %s/s", items.get() / seconds, itemUnit));
+		if (withEta && done > 0 && done < total) {
+			message.append(String.format(", about %.0f s left", seconds * (total - done) / done));
+		}
+		return message.append(").\n").toString();
+	}
+}
@@ -0,0 +1,130 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.List;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.jaqaman.costfunction.CostFunction;
+import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.CostMatrixCreatorInterface;
+import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.JaqamanLinkingCostMatrixCreator;
+import net.imglib2.KDTree;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnKDTree;
+
+/**
+ * A {@link CostMatrixCreatorInterface} for frame-to-frame linking that only
+ * evaluates the cost function for source-target pairs closer than a maximal
+ * linking distance.
+ * <p>
+ * Candidate targets are found with a radius search on a {@link KDTree} built
+ * over the target spots, so the number of cost function calls scales with the
+ * number of neighbors instead of the product of source and target counts. The
+ * resulting sparse cost matrix is identical to the one built by
+ * {@link JaqamanLinkingCostMatrixCreator} with a cost function that rejects
+ * pairs farther apart than the maximal linking distance.
+ * </p>
+ */
+public class SparseLinkingCostMatrixCreator extends AbstractSparseCostMatrixCreator {
+
+	private static final String BASE_ERROR_MSG = "[SparseLinkingCostMatrixCreator] ";
+
+	private final List<Spot> sources;
+	private final List<Spot> targets;
+	private final CostFunction<Spot, Spot> costFunction;
+	private final double maxDistance;
+
+	/**
+	 * @param sources
+	 *            spots in the source frame
+	 * @param targets
+	 *            spots in the target frame
+	 * @param costFunction
+	 *            cost function evaluated for candidate pairs
+	 * @param maxDistance
+	 *            radius of the candidate search around each source
+	 * @param costThreshold
+	 *            pairs with a cost equal or above this threshold are rejected
+	 * @param alternativeCostFactor
+	 *            factor applied to the cost percentile to get the alternative
+	 *            (no-linking) cost
+	 * @param percentile
+	 *            percentile of accepted costs used for the alternative cost
+	 */
+	public SparseLinkingCostMatrixCreator(final List<Spot> sources, final List<Spot> targets,
+			final CostFunction<Spot, Spot> costFunction, final double maxDistance, final double costThreshold,
+			final double alternativeCostFactor, final double percentile) {
+		super(costThreshold, alternativeCostFactor, percentile);
+		this.sources = sources;
+		this.targets = targets;
+		this.costFunction = costFunction;
+		this.maxDistance = maxDistance;
+	}
+
+	@Override
+	public boolean checkInput() {
+		if (sources == null || sources.isEmpty()) {
+			errorMessage = BASE_ERROR_MSG + "The source list is null or empty.";
+			return false;
+		}
+		if (targets == null || targets.isEmpty()) {
+			errorMessage = BASE_ERROR_MSG + "The target list is null or empty.";
+			return false;
+		}
+		if (maxDistance < 0 || Double.isNaN(maxDistance)) {
+			// zero only links coincident spots
+			errorMessage = BASE_ERROR_MSG + "The maximal linking distance must not be negative.";
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	protected boolean collectCandidates() {
+		final KDTree<Spot> tree = new KDTree<>(targets, targets);
+		final RadiusNeighborSearchOnKDTree<Spot> search = new RadiusNeighborSearchOnKDTree<>(tree);
+		final double radius = searchRadius(maxDistance);
+
+		for (final Spot source : sources) {
+			search.search(source, radius, false);
+			for (int i = 0; i < search.numNeighbors(); i++) {
+				final Spot target = search.getSampler(i).get();
+				accept(source, target, costFunction.linkingCost(source, target));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The radius search only finds points strictly within the radius, so the
+	 * radius is padded against rounding and kept above zero, where a linking
+	 * distance of zero still finds coincident spots. The cost function checks
+	 * the exact distance.
+	 * 
+	 * @param maxDistance
+	 *            the maximal linking distance
+	 * @return the radius for {@link RadiusNeighborSearchOnKDTree#search}
+	 */
+	static double searchRadius(final double maxDistance) {
+		// the smallest radius whose square does not underflow to zero
+		return Math.max(Math.nextUp(maxDistance), Math.sqrt(Double.MIN_NORMAL));
+	}
+}
@@ -0,0 +1,115 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+/**
+ * Computes the matrix of pairwise square distances between the neighbor
+ * vectors of two descriptors, the innermost loop of {@link DescriptorDistance}.
+ * <p>
+ * {@link #scalar()} works on every Java version. On Java 17 and newer, the
+ * multi-release JAR also contains an implementation with the incubating JDK
+ * Vector API, which is used by {@link #best()} if the JVM was started with
+ * {@code --add-modules jdk.incubator.vector}. Both produce identical results.
+ * </p>
+ */
+interface SquareDistanceKernel {
+
+	/**
+	 * Stores the square distance between neighbor {@code p} of descriptor
+	 * {@code a} and neighbor {@code q} of descriptor {@code b} at
+	 * {@code squareDistances[p * n + q]}.
+	 * 
+	 * @param n
+	 *            number of neighbors per descriptor
+	 * @return the smallest of the square distances
+	 */
+	double compute(double[] a, int aOffset, double[] b, int bOffset, int n, double[] squareDistances);
+
+	/**
+	 * @return the scalar implementation
+	 */
+	static SquareDistanceKernel scalar() {
+		return Kernels.SCALAR;
+	}
+
+	/**
+	 * @return the Vector API implementation, or {@code null} if it is not
+	 *         available in this JVM
+	 */
+	static SquareDistanceKernel vector() {
+		return Kernels.VECTOR;
+	}
+
+	/**
+	 * @return the fastest available implementation
+	 */
+	static SquareDistanceKernel best() {
+		return Kernels.VECTOR != null ? Kernels.VECTOR : Kernels.SCALAR;
+	}
+
+	final class Kernels {
+
+		private static final String VECTOR_KERNEL = "ch.fmi.trackmate.tracking.VectorSquareDistanceKernel";
+
+		static final SquareDistanceKernel SCALAR = Kernels::scalar;
+
+		static final SquareDistanceKernel VECTOR = loadVector();
+
+		private Kernels() {
+			// prevent instantiation of static utility class
+		}
+
+		private static double scalar(double[] a, int aOffset, double[] b, int bOffset, int n,
+				double[] squareDistances) {
+			double min = Double.POSITIVE_INFINITY;
+			for (int p = 0; p < n; p++) {
+				final double ax = a[aOffset + p];
+				final double ay = a[aOffset + n + p];
+				final double az = a[aOffset + 2 * n + p];
+				for (int q = 0; q < n; q++) {
+					final double dx = ax - b[bOffset + q];
+					final double dy = ay - b[bOffset + n + q];
+					final double dz = az - b[bOffset + 2 * n + q];
+					final double squareDistance = dx * dx + dy * dy + dz * dz;
+					squareDistances[p * n + q] = squareDistance;
+					min = Math.min(min, squareDistance);
+				}
+			}
+			return min;
+		}
+
+		/**
+		 * The vector kernel only exists in the Java 17 part of the JAR, and
+		 * fails to link without the incubator module.
+		 */
+		private static SquareDistanceKernel loadVector() {
+			try {
+				Class<?> kernelClass = Class.forName(VECTOR_KERNEL, true, SquareDistanceKernel.class.getClassLoader());
+				SquareDistanceKernel kernel = (SquareDistanceKernel) kernelClass.getDeclaredConstructor().newInstance();
+				kernel.compute(new double[3], 0, new double[3], 0, 1, new double[1]);
+				return kernel;
+			} catch (ReflectiveOperationException | LinkageError e) {
+				return null;
+			}
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.List;
+
+import fiji.plugin.trackmate.tracking.jaqaman.SparseCostMatrix;
+import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.CostMatrixCreatorInterface;
+
+/**
+ * Delegating {@link CostMatrixCreatorInterface} that measures the time spent
+ * creating the cost matrix with nanosecond resolution.
+ */
+final class TimedCostMatrixCreator<K extends Comparable<K>, J extends Comparable<J>> implements CostMatrixCreatorInterface<K, J> {
+
+	private final CostMatrixCreatorInterface<K, J> creator;
+	private long nanos;
+
+	TimedCostMatrixCreator(CostMatrixCreatorInterface<K, J> creator) {
+		this.creator = creator;
+	}
+
+	/**
+	 * @return the wrapped creator
+	 */
+	CostMatrixCreatorInterface<K, J> delegate() {
+		return creator;
+	}
+
+	/**
+	 * @return the time spent in {@link #process()}, in nanoseconds
+	 */
+	long getNanos() {
+		return nanos;
+	}
+
+	@Override
+	public boolean checkInput() {
+		return creator.checkInput();
+	}
+
+	@Override
+	public boolean process() {
+		long start = System.nanoTime();
+		boolean ok = creator.process();
+		nanos += System.nanoTime() - start;
+		return ok;
+	}
+
+	@Override
+	public String getErrorMessage() {
+		return creator.getErrorMessage();
+	}
+
+	@Override
+	public SparseCostMatrix getResult() {
+		return creator.getResult();
+	}
+
+	@Override
+	public List<K> getSourceList() {
+		return creator.getSourceList();
+	}
+
+	@Override
+	public List<J> getTargetList() {
+		return creator.getTargetList();
+	}
+
+	@Override
+	public double getAlternativeCostForSource(K source) {
+		return creator.getAlternativeCostForSource(source);
+	}
+
+	@Override
+	public double getAlternativeCostForTarget(J target) {
+		return creator.getAlternativeCostForTarget(target);
+	}
+
+	@Override
+	public long getProcessingTime() {
+		return creator.getProcessingTime();
+	}
+}
@@ -0,0 +1,49 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import ch.fmi.trackmate.tracking.TrackerMetrics.FrameMetrics;
+import ch.fmi.trackmate.tracking.TrackerMetrics.PairMetrics;
+
+/**
+ * Emits tracker metrics as JDK Flight Recorder events.
+ * <p>
+ * This is the Java 8 version, which does nothing. On Java 11 and later, the
+ * version in {@code META-INF/versions/11} of the multi-release JAR is used
+ * instead, which commits {@code jdk.jfr} events that can be recorded with
+ * {@code -XX:StartFlightRecording}.
+ * </p>
+ */
+final class TrackerEvents {
+
+	private TrackerEvents() {
+		// prevent instantiation of static utility class
+	}
+
+	static void frameDescriptors(FrameMetrics metrics) {
+		// no JFR on Java 8
+	}
+
+	static void framePair(PairMetrics metrics) {
+		// no JFR on Java 8
+	}
+}
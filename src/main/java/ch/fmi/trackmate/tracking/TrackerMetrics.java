@@ -0,0 +1,232 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings and counts of one {@link PointDescriptorTracker} run, per phase,
+ * per frame and per frame pair.
+ * <p>
+ * All methods are thread-safe. Phases that run on several threads report the
+ * time summed over all threads.
+ * </p>
+ */
+public final class TrackerMetrics {
+
+	/** Phases of a tracking run. */
+	public enum Phase {
+		/** Descriptor construction, summed over all frames. */
+		DESCRIPTORS,
+		/** Cost matrix creation, summed over all frame pairs. */
+		COST_MATRIX,
+		/** Solving the LAP, summed over all frame pairs. */
+		LAP,
+		/** Adding the links of all frame pairs to the graph. */
+		GRAPH,
+		/** Segment linking (gap closing, splitting and merging). */
+		SEGMENTS,
+		/** Pruning the graph. */
+		PRUNE
+	}
+
+	/** Descriptor construction of one frame. */
+	public static final class FrameMetrics {
+
+		private final int frame;
+		private final int spots;
+		private final long nanos;
+
+		FrameMetrics(int frame, int spots, long nanos) {
+			this.frame = frame;
+			this.spots = spots;
+			this.nanos = nanos;
+		}
+
+		public int frame() {
+			return frame;
+		}
+
+		public int spots() {
+			return spots;
+		}
+
+		public long nanos() {
+			return nanos;
+		}
+	}
+
+	/** Linking of one frame pair. */
+	public static final class PairMetrics {
+
+		private final int sourceFrame;
+		private final int targetFrame;
+		private final int sources;
+		private final int targets;
+		private final long candidates;
+		private final int matrixRows;
+		private final int matrixColumns;
+		private final int links;
+		private final long costMatrixNanos;
+		private final long lapNanos;
+
+		PairMetrics(int sourceFrame, int targetFrame, int sources, int targets, long candidates, int matrixRows,
+				int matrixColumns, int links, long costMatrixNanos, long lapNanos) {
+			this.sourceFrame = sourceFrame;
+			this.targetFrame = targetFrame;
+			this.sources = sources;
+			this.targets = targets;
+			this.candidates = candidates;
+			this.matrixRows = matrixRows;
+			this.matrixColumns = matrixColumns;
+			this.links = links;
+			this.costMatrixNanos = costMatrixNanos;
+			this.lapNanos = lapNanos;
+		}
+
+		public int sourceFrame() {
+			return sourceFrame;
+		}
+
+		public int targetFrame() {
+			return targetFrame;
+		}
+
+		/** @return the number of spots in the source frame */
+		public int sources() {
+			return sources;
+		}
+
+		/** @return the number of spots in the target frame */
+		public int targets() {
+			return targets;
+		}
+
+		/** @return the number of computed descriptor distances */
+		public long candidates() {
+			return candidates;
+		}
+
+		/** @return the number of sources with at least one accepted cost */
+		public int matrixRows() {
+			return matrixRows;
+		}
+
+		/** @return the number of targets with at least one accepted cost */
+		public int matrixColumns() {
+			return matrixColumns;
+		}
+
+		public int links() {
+			return links;
+		}
+
+		public long costMatrixNanos() {
+			return costMatrixNanos;
+		}
+
+		public long lapNanos() {
+			return lapNanos;
+		}
+	}
+
+	private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+	private final ConcurrentLinkedQueue<FrameMetrics> frames = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<PairMetrics> pairs = new ConcurrentLinkedQueue<>();
+
+	public TrackerMetrics() {
+		// filled once, only read concurrently afterwards
+		for (Phase phase : Phase.values()) {
+			phaseNanos.put(phase, new LongAdder());
+		}
+	}
+
+	void addPhase(Phase phase, long nanos) {
+		phaseNanos.get(phase).add(nanos);
+	}
+
+	void addFrame(FrameMetrics metrics) {
+		frames.add(metrics);
+		addPhase(Phase.DESCRIPTORS, metrics.nanos());
+	}
+
+	void addPair(PairMetrics metrics) {
+		pairs.add(metrics);
+		addPhase(Phase.COST_MATRIX, metrics.costMatrixNanos());
+		addPhase(Phase.LAP, metrics.lapNanos());
+	}
+
+	/**
+	 * @return the time spent in {@code phase}, in nanoseconds
+	 */
+	public long getPhaseNanos(Phase phase) {
+		return phaseNanos.get(phase).sum();
+	}
+
+	/**
+	 * @return the descriptor construction metrics of all frames, ordered by
+	 *         frame
+	 */
+	public List<FrameMetrics> getFrames() {
+		List<FrameMetrics> list = new ArrayList<>(frames);
+		list.sort(Comparator.comparingInt(FrameMetrics::frame));
+		return list;
+	}
+
+	/**
+	 * @return the metrics of all linked frame pairs, ordered by source and
+	 *         target frame
+	 */
+	public List<PairMetrics> getPairs() {
+		List<PairMetrics> list = new ArrayList<>(pairs);
+		list.sort(Comparator.comparingInt(PairMetrics::sourceFrame).thenComparingInt(PairMetrics::targetFrame));
+		return list;
+	}
+
+	/**
+	 * @return the {@code n} frame pairs that took longest to link, slowest
+	 *         first
+	 */
+	public List<PairMetrics> getSlowestPairs(int n) {
+		List<PairMetrics> list = new ArrayList<>(pairs);
+		list.sort(Comparator.comparingLong((PairMetrics p) -> p.costMatrixNanos() + p.lapNanos()).reversed());
+		return new ArrayList<>(list.subList(0, Math.min(n, list.size())));
+	}
+
+	/**
+	 * @return one line per phase with its time in milliseconds
+	 */
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+		for (Phase phase : Phase.values()) {
+			str.append(String.format("  %-12s %8d ms%n", phase, getPhaseNanos(phase) / 1000000));
+		}
+		return str.toString();
+	}
+}
@@ -22,63 +22,500 @@
 package ch.fmi.trackmate.tracking;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.jgrapht.alg.connectivity.ConnectivityInspector;
-import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
+import org.scijava.Cancelable;
 
 import fiji.plugin.trackmate.Spot;
+import net.imglib2.parallel.Parallelization;
 
 public class Tracks {
 	private Tracks() {
 		// prevent instantiation of static utility class
 	}
 
+	/**
+	 * Reduces each connected component of {@code graph} to a chain of frames:
+	 * every spot is linked to all spots of the same component in the next
+	 * frame of that component.
+	 * <p>
+	 * With {@code setWeights}, the weight of a new edge is the weight of the
+	 * direct edge between source and target, if there is one. No path moving
+	 * forward in time connects two consecutive frames of a component other
+	 * than the direct edge, so spots that are not linked directly get the
+	 * weight of a shortest path ignoring the direction of the edges. It is
+	 * searched among the spots of the source and the target frame, and only if
+	 * they are not connected there, within the whole component, where it may
+	 * pass through earlier or later frames. The weight can therefore be larger
+	 * than the shortest path within the component, if a cheaper path leaves
+	 * the two frames although they are connected. Each search stops once all
+	 * targets of the source are reached, so the time per search does not grow
+	 * with the length of the track as long as consecutive frames are connected
+	 * directly. Otherwise, all weights are set to {@code -1}.
+	 * </p>
+	 * <p>
+	 * Components are processed in parallel on the {@link Parallelization}
+	 * context of the caller. The result does not depend on the number of
+	 * threads.
+	 * </p>
+	 */
 	public static SimpleWeightedGraph<Spot, DefaultWeightedEdge> prune(SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph, boolean setWeights) {
-		
+		return prune(graph, setWeights, null);
+	}
+
+	/**
+	 * Same as {@link #prune(SimpleWeightedGraph, boolean)}, but stops
+	 * processing components once {@code cancelable} is canceled. The result
+	 * is incomplete in that case.
+	 */
+	public static SimpleWeightedGraph<Spot, DefaultWeightedEdge> prune(SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph, boolean setWeights, Cancelable cancelable) {
+		return prune(links(graph), setWeights, cancelable);
+	}
+
+	/**
+	 * Same as {@link #prune(SimpleWeightedGraph, boolean, Cancelable)}, but
+	 * reads the links from an {@link EdgeStore}, so the raw links never have
+	 * to be held in a {@code jgrapht} graph. The links are read in a few
+	 * sequential passes over the store. Only components with spots that are
+	 * not linked directly to the next frame keep a copy of their links on the
+	 * heap, for the shortest path search.
+	 */
+	static SimpleWeightedGraph<Spot, DefaultWeightedEdge> prune(EdgeStore edges, boolean setWeights, Cancelable cancelable) {
+		return prune((Links) edges, setWeights, cancelable);
+	}
+
+	/**
+	 * Weighted links between spots that are referred to by index.
+	 */
+	interface Links {
+
+		/**
+		 * @return the spots, by index
+		 */
+		Spot[] spots();
+
+		/**
+		 * @return the number of links
+		 */
+		long size();
+
+		int source(long link);
+
+		int target(long link);
+
+		double cost(long link);
+	}
+
+	private static Links links(SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph) {
+		Spot[] spots = graph.vertexSet().toArray(new Spot[0]);
+		Map<Spot, Integer> indices = new HashMap<>(2 * spots.length);
+		for (int i = 0; i < spots.length; i++) {
+			indices.put(spots[i], i);
+		}
+		int nEdges = graph.edgeSet().size();
+		int[] sources = new int[nEdges];
+		int[] targets = new int[nEdges];
+		double[] costs = new double[nEdges];
+		int e = 0;
+		for (DefaultWeightedEdge edge : graph.edgeSet()) {
+			sources[e] = indices.get(graph.getEdgeSource(edge));
+			targets[e] = indices.get(graph.getEdgeTarget(edge));
+			costs[e] = graph.getEdgeWeight(edge);
+			e++;
+		}
+		return new Links() {
+
+			@Override
+			public Spot[] spots() {
+				return spots;
+			}
+
+			@Override
+			public long size() {
+				return nEdges;
+			}
+
+			@Override
+			public int source(long link) {
+				return sources[(int) link];
+			}
+
+			@Override
+			public int target(long link) {
+				return targets[(int) link];
+			}
+
+			@Override
+			public double cost(long link) {
+				return costs[(int) link];
+			}
+		};
+	}
+
+	private static SimpleWeightedGraph<Spot, DefaultWeightedEdge> prune(Links links, boolean setWeights, Cancelable cancelable) {
+		Pruning pruning = new Pruning(links);
+		if (setWeights) {
+			pruning.readDirectWeights(links);
+			pruning.readFallbackLinks(links);
+		}
+
+		AtomicBoolean canceled = new AtomicBoolean();
+		Parallelization.getTaskExecutor().forEach(pruning.components, component -> {
+			if (canceled.get() || cancelable != null && cancelable.isCanceled()) {
+				canceled.set(true);
+				component.weights = null;
+			} else {
+				pruning.setWeights(component, setWeights);
+			}
+		});
+
+		// single pass in component order
 		SimpleWeightedGraph<Spot, DefaultWeightedEdge> prunedGraph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
-		ConnectivityInspector<Spot, DefaultWeightedEdge> graphInspector = new ConnectivityInspector<>(graph);
-		// Consider changing to FloydWarshallShortestPaths
-		DijkstraShortestPath<Spot, DefaultWeightedEdge> shortestPath = new DijkstraShortestPath<>(graph);
+		for (Component component : pruning.components) {
+			if (component.weights == null) continue;
+			for (int i = 0; i < component.members.length; i++) {
+				Spot source = pruning.spots[component.members[i]];
+				for (int j = component.nextStarts[i]; j < component.nextEnds[i]; j++) {
+					Spot target = pruning.spots[component.members[j]];
+					prunedGraph.addVertex(source);
+					prunedGraph.addVertex(target);
+					DefaultWeightedEdge edge = prunedGraph.addEdge(source, target);
+					prunedGraph.setEdgeWeight(edge, component.weights[component.pairOffsets[i] + j - component.nextStarts[i]]);
+				}
+			}
+		}
+		return prunedGraph;
+	}
+
+	/**
+	 * A connected component with at least one link. Spots are referred to by
+	 * their position in {@link #members}.
+	 */
+	private static final class Component {
+
+		/** spot ranks, ascending, i.e. sorted by frame */
+		final int[] members;
+		/** the positions of the spots in the next frame of the component */
+		final int[] nextStarts;
+		final int[] nextEnds;
+		/** the position of the first pruned link of each spot in {@link #weights} */
+		final int[] pairOffsets;
+		double[] weights;
+
+		/** all links of the component, only if a shortest path search is needed */
+		int[] linkOffsets;
+		int[] neighbors;
+		double[] linkWeights;
+
+		Component(int[] members, int[] frames) {
+			this.members = members;
+			nextStarts = new int[members.length];
+			nextEnds = new int[members.length];
+			pairOffsets = new int[members.length + 1];
+			int start = 0; // first spot of the current frame
+			while (start < members.length) {
+				int next = start; // first spot of the next frame
+				while (next < members.length && frames[members[next]] == frames[members[start]]) {
+					next++;
+				}
+				int end = next;
+				while (end < members.length && frames[members[end]] == frames[members[next]]) {
+					end++;
+				}
+				for (int i = start; i < next; i++) {
+					nextStarts[i] = next;
+					nextEnds[i] = end;
+				}
+				start = next;
+			}
+			long nPairs = 0;
+			for (int i = 0; i < members.length; i++) {
+				nPairs += nextEnds[i] - nextStarts[i];
+				pairOffsets[i + 1] = checkedSize(nPairs, "pruned links");
+			}
+		}
+	}
+
+	private static int checkedSize(long size, String what) {
+		// the largest array size supported by common VMs
+		if (size > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("A track with " + size + " " + what + " is too large to prune.");
+		}
+		return (int) size;
+	}
+
+	/**
+	 * Pruning state of all components, with spots sorted by frame and ID and
+	 * referred to by their rank in that order.
+	 */
+	private static final class Pruning {
 
-		List<Set<Spot>> connectedSets = graphInspector.connectedSets();
+		private final Spot[] spots;
+		private final int[] frames;
+		/** the rank of each spot of the links, or -1 if it is not linked */
+		private final int[] ranks;
+		private final int[] componentIndices;
+		private final int[] positions;
+		private final List<Component> components = new ArrayList<>();
 
-		for (Set<Spot> track : connectedSets) {
-			// Sorting necessary?
-			List<Spot> trackSpots = new ArrayList<>(track);
-			Collections.sort(trackSpots, (s1, s2) -> {
-				return s1.getFeature(Spot.FRAME).compareTo(s2.getFeature(Spot.FRAME));
+		Pruning(Links links) {
+			Spot[] linkSpots = links.spots();
+			boolean[] linked = new boolean[linkSpots.length];
+			for (long e = 0; e < links.size(); e++) {
+				linked[links.source(e)] = true;
+				linked[links.target(e)] = true;
+			}
+			List<Spot> linkedSpots = new ArrayList<>();
+			Map<Spot, Integer> indices = new HashMap<>();
+			for (int i = 0; i < linkSpots.length; i++) {
+				if (linked[i]) {
+					linkedSpots.add(linkSpots[i]);
+					indices.put(linkSpots[i], i);
+				}
+			}
+			spots = linkedSpots.toArray(new Spot[0]);
+			Arrays.sort(spots, (s1, s2) -> {
+				int c = Integer.compare(frame(s1), frame(s2));
+				return c != 0 ? c : Integer.compare(s1.ID(), s2.ID());
 			});
+			frames = new int[spots.length];
+			ranks = new int[linkSpots.length];
+			Arrays.fill(ranks, -1);
+			for (int i = 0; i < spots.length; i++) {
+				frames[i] = frame(spots[i]);
+				ranks[indices.get(spots[i])] = i;
+			}
 
-			// loop through list
-			for (int i = 0; i < trackSpots.size(); i++) {
-				Spot source = trackSpots.get(i);
-				int sourceSpotFrame = source.getFeature(Spot.FRAME).intValue();
-				int firstLinkedFrame = Integer.MAX_VALUE;
-				for (int j = i + 1; j < trackSpots.size(); j++) {
-					Spot target = trackSpots.get(j);
-					int targetSpotFrame = target.getFeature(Spot.FRAME).intValue();
-					if (targetSpotFrame > firstLinkedFrame) break;
-					if (targetSpotFrame > sourceSpotFrame) {
-						firstLinkedFrame = targetSpotFrame;
-						prunedGraph.addVertex(source);
-						prunedGraph.addVertex(target);
-						DefaultWeightedEdge edge = prunedGraph.addEdge(source, target);
-						if (setWeights) {
-							prunedGraph.setEdgeWeight(edge, shortestPath.getPathWeight(source, target));
-						} else {
-							prunedGraph.setEdgeWeight(edge, -1);
-						}
+			// union-find with path halving
+			int[] parent = new int[spots.length];
+			for (int i = 0; i < parent.length; i++) {
+				parent[i] = i;
+			}
+			for (long e = 0; e < links.size(); e++) {
+				int a = find(parent, ranks[links.source(e)]);
+				int b = find(parent, ranks[links.target(e)]);
+				if (a != b) {
+					parent[Math.max(a, b)] = Math.min(a, b);
+				}
+			}
+			int[] sizes = new int[spots.length];
+			for (int i = 0; i < spots.length; i++) {
+				parent[i] = find(parent, i);
+				sizes[parent[i]]++;
+			}
+			int[][] members = new int[spots.length][];
+			componentIndices = new int[spots.length];
+			positions = new int[spots.length];
+			List<int[]> memberLists = new ArrayList<>();
+			for (int i = 0; i < spots.length; i++) {
+				int root = parent[i];
+				if (members[root] == null) {
+					members[root] = new int[sizes[root]];
+					componentIndices[root] = memberLists.size();
+					memberLists.add(members[root]);
+				}
+				componentIndices[i] = componentIndices[root];
+			}
+			// positions in ascending rank order
+			int[] counts = new int[memberLists.size()];
+			for (int i = 0; i < spots.length; i++) {
+				int c = componentIndices[i];
+				positions[i] = counts[c];
+				memberLists.get(c)[counts[c]++] = i;
+			}
+			for (int[] componentMembers : memberLists) {
+				components.add(new Component(componentMembers, frames));
+			}
+		}
+
+		private static int frame(Spot spot) {
+			return spot.getFeature(Spot.FRAME).intValue();
+		}
+
+		private static int find(int[] parent, int i) {
+			while (parent[i] != i) {
+				parent[i] = parent[parent[i]];
+				i = parent[i];
+			}
+			return i;
+		}
+
+		/**
+		 * Sets the weight of each pruned link with a direct link, in one pass
+		 * over the links. Other weights are {@code NaN}.
+		 */
+		void readDirectWeights(Links links) {
+			for (Component component : components) {
+				component.weights = new double[component.pairOffsets[component.members.length]];
+				Arrays.fill(component.weights, Double.NaN);
+			}
+			for (long e = 0; e < links.size(); e++) {
+				int a = ranks[links.source(e)];
+				int b = ranks[links.target(e)];
+				if (frames[a] > frames[b]) {
+					int swap = a;
+					a = b;
+					b = swap;
+				}
+				Component component = components.get(componentIndices[a]);
+				int i = positions[a];
+				int j = positions[b];
+				if (j >= component.nextStarts[i] && j < component.nextEnds[i]) {
+					component.weights[component.pairOffsets[i] + j - component.nextStarts[i]] = links.cost(e);
+				}
+			}
+		}
+
+		/**
+		 * Copies the links of components with missing direct weights, in two
+		 * passes over the links.
+		 */
+		void readFallbackLinks(Links links) {
+			List<Component> fallback = new ArrayList<>();
+			for (Component component : components) {
+				for (double weight : component.weights) {
+					if (Double.isNaN(weight)) {
+						fallback.add(component);
+						component.linkOffsets = new int[component.members.length + 1];
+						break;
 					}
 				}
 			}
+			if (fallback.isEmpty()) return;
+
+			for (long e = 0; e < links.size(); e++) {
+				Component component = components.get(componentIndices[ranks[links.source(e)]]);
+				if (component.linkOffsets == null) continue;
+				component.linkOffsets[positions[ranks[links.source(e)]] + 1]++;
+				component.linkOffsets[positions[ranks[links.target(e)]] + 1]++;
+			}
+			for (Component component : fallback) {
+				long total = 0;
+				for (int i = 0; i < component.members.length; i++) {
+					total += component.linkOffsets[i + 1];
+					component.linkOffsets[i + 1] = checkedSize(total, "link ends");
+				}
+				component.neighbors = new int[(int) total];
+				component.linkWeights = new double[(int) total];
+			}
+			int[] inserted = new int[spots.length];
+			for (long e = 0; e < links.size(); e++) {
+				int a = ranks[links.source(e)];
+				int b = ranks[links.target(e)];
+				Component component = components.get(componentIndices[a]);
+				if (component.linkOffsets == null) continue;
+				int i = positions[a];
+				int j = positions[b];
+				int k = component.linkOffsets[i] + inserted[a]++;
+				component.neighbors[k] = j;
+				component.linkWeights[k] = links.cost(e);
+				k = component.linkOffsets[j] + inserted[b]++;
+				component.neighbors[k] = i;
+				component.linkWeights[k] = links.cost(e);
+			}
 		}
 
-		return prunedGraph;
+		/**
+		 * Sets the remaining weights of a component, to the shortest path
+		 * within the component, or all weights to {@code -1}.
+		 */
+		void setWeights(Component component, boolean setWeights) {
+			if (!setWeights) {
+				component.weights = new double[component.pairOffsets[component.members.length]];
+				Arrays.fill(component.weights, -1);
+				return;
+			}
+			if (component.linkOffsets == null) return;
+			PathSearch search = new PathSearch(component);
+			int frameStart = 0; // first spot of the frame of spot i
+			for (int i = 0; i < component.members.length; i++) {
+				if (i > 0 && component.nextStarts[i] != component.nextStarts[i - 1]) {
+					frameStart = i;
+				}
+				if (component.nextStarts[i] == component.nextEnds[i]) continue;
+				// spots of the source and the target frame first, they are contiguous
+				if (search.run(i, frameStart, component.nextEnds[i]) > 0) {
+					search.run(i, 0, component.members.length);
+				}
+			}
+			// only needed for the search
+			component.linkOffsets = null;
+			component.neighbors = null;
+			component.linkWeights = null;
+		}
 	}
 
+	/**
+	 * Dijkstra search within a component, along links in both directions,
+	 * that stops once the weights of all pruned links of the source are set.
+	 * The path weights are only reset for the spots that were reached, so a
+	 * search costs no more than the part of the component it explores.
+	 */
+	private static final class PathSearch {
+
+		private final Component component;
+		private final double[] distances;
+		private final int[] reached;
+		private final PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+
+		PathSearch(Component component) {
+			this.component = component;
+			distances = new double[component.members.length];
+			Arrays.fill(distances, Double.POSITIVE_INFINITY);
+			reached = new int[component.members.length];
+		}
+
+		/**
+		 * Sets the missing weights of the pruned links of {@code source} to
+		 * the shortest path that only passes through the spots at positions
+		 * {@code from} to {@code to}, exclusive.
+		 * 
+		 * @return the number of pruned links without a path in that range
+		 */
+		int run(int source, int from, int to) {
+			int start = component.nextStarts[source];
+			int offset = component.pairOffsets[source] - start;
+			int missing = 0;
+			for (int j = start; j < component.nextEnds[source]; j++) {
+				if (Double.isNaN(component.weights[offset + j])) missing++;
+			}
+			int nReached = 0;
+			distances[source] = 0;
+			reached[nReached++] = source;
+			queue.add(new double[] { 0, source });
+			while (missing > 0 && !queue.isEmpty()) {
+				double[] head = queue.poll();
+				int spot = (int) head[1];
+				if (head[0] > distances[spot]) continue;
+				if (spot >= start && spot < component.nextEnds[source] && Double.isNaN(component.weights[offset + spot])) {
+					component.weights[offset + spot] = head[0];
+					missing--;
+				}
+				for (int k = component.linkOffsets[spot]; k < component.linkOffsets[spot + 1]; k++) {
+					int neighbor = component.neighbors[k];
+					if (neighbor < from || neighbor >= to) continue;
+					double distance = head[0] + component.linkWeights[k];
+					if (distance < distances[neighbor]) {
+						if (distances[neighbor] == Double.POSITIVE_INFINITY) {
+							reached[nReached++] = neighbor;
+						}
+						distances[neighbor] = distance;
+						queue.add(new double[] { distance, neighbor });
+					}
+				}
+			}
+			queue.clear();
+			for (int i = 0; i < nReached; i++) {
+				distances[reached[i]] = Double.POSITIVE_INFINITY;
+			}
+			return missing;
+		}
+	}
 }
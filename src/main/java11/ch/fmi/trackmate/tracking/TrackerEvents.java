@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import ch.fmi.trackmate.tracking.TrackerMetrics.FrameMetrics;
+import ch.fmi.trackmate.tracking.TrackerMetrics.PairMetrics;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Emits tracker metrics as JDK Flight Recorder events (Java 11 and later).
+ */
+final class TrackerEvents {
+
+	@Name("ch.fmi.trackmate.FrameDescriptors")
+	@Label("Frame Descriptors")
+	@Category({ "TrackMate", "Point Descriptor Tracker" })
+	@Description("Descriptor construction of one frame")
+	static final class FrameDescriptorsEvent extends Event {
+
+		@Label("Frame")
+		int frame;
+
+		@Label("Spots")
+		int spots;
+
+		@Label("Build Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long buildTime;
+	}
+
+	@Name("ch.fmi.trackmate.FramePair")
+	@Label("Frame Pair")
+	@Category({ "TrackMate", "Point Descriptor Tracker" })
+	@Description("Linking of one frame pair")
+	static final class FramePairEvent extends Event {
+
+		@Label("Source Frame")
+		int sourceFrame;
+
+		@Label("Target Frame")
+		int targetFrame;
+
+		@Label("Sources")
+		int sources;
+
+		@Label("Targets")
+		int targets;
+
+		@Label("Candidates")
+		@Description("Number of computed descriptor distances")
+		long candidates;
+
+		@Label("Matrix Rows")
+		int matrixRows;
+
+		@Label("Matrix Columns")
+		int matrixColumns;
+
+		@Label("Links")
+		int links;
+
+		@Label("Cost Matrix Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long costMatrixTime;
+
+		@Label("LAP Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long lapTime;
+	}
+
+	private TrackerEvents() {
+		// prevent instantiation of static utility class
+	}
+
+	static void frameDescriptors(FrameMetrics metrics) {
+		FrameDescriptorsEvent event = new FrameDescriptorsEvent();
+		if (event.shouldCommit()) {
+			event.frame = metrics.frame();
+			event.spots = metrics.spots();
+			event.buildTime = metrics.nanos();
+			event.commit();
+		}
+	}
+
+	static void framePair(PairMetrics metrics) {
+		FramePairEvent event = new FramePairEvent();
+		if (event.shouldCommit()) {
+			event.sourceFrame = metrics.sourceFrame();
+			event.targetFrame = metrics.targetFrame();
+			event.sources = metrics.sources();
+			event.targets = metrics.targets();
+			event.candidates = metrics.candidates();
+			event.matrixRows = metrics.matrixRows();
+			event.matrixColumns = metrics.matrixColumns();
+			event.links = metrics.links();
+			event.costMatrixTime = metrics.costMatrixNanos();
+			event.lapTime = metrics.lapNanos();
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link SquareDistanceKernel} with the JDK Vector API, processing the
+ * neighbors of the second descriptor in lanes. Descriptors store all x, then
+ * all y and all z coordinates, so the lanes are contiguous loads.
+ * <p>
+ * Descriptors have few neighbors, 7 by default, i.e. fewer than the 8 lanes
+ * of the preferred species with AVX-512. The species is therefore at most 256
+ * bits wide, and the last vector of a row overlaps the previous one instead of
+ * falling back to scalar code, e.g. lanes 0-3 and 3-6 for {@code n = 7}.
+ * Descriptors with fewer neighbors than lanes use the scalar kernel.
+ * </p>
+ * <p>
+ * The minimum is taken from the stored square distances: a vector minimum
+ * carried through the loop is not intrinsified on Java 17 and allocates a
+ * vector per iteration. The square distances are summed in the same order as
+ * in the scalar kernel, so the results are identical.
+ * </p>
+ */
+final class VectorSquareDistanceKernel implements SquareDistanceKernel {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED
+			.length() > DoubleVector.SPECIES_256.length() ? DoubleVector.SPECIES_256 : DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public double compute(double[] a, int aOffset, double[] b, int bOffset, int n, double[] squareDistances) {
+		final int lanes = SPECIES.length();
+		if (n < lanes) {
+			return SquareDistanceKernel.scalar().compute(a, aOffset, b, bOffset, n, squareDistances);
+		}
+		for (int p = 0; p < n; p++) {
+			final DoubleVector vx = DoubleVector.broadcast(SPECIES, a[aOffset + p]);
+			final DoubleVector vy = DoubleVector.broadcast(SPECIES, a[aOffset + n + p]);
+			final DoubleVector vz = DoubleVector.broadcast(SPECIES, a[aOffset + 2 * n + p]);
+			for (int q = 0; q < n; q += lanes) {
+				final int column = Math.min(q, n - lanes);
+				final DoubleVector dx = vx.sub(DoubleVector.fromArray(SPECIES, b, bOffset + column));
+				final DoubleVector dy = vy.sub(DoubleVector.fromArray(SPECIES, b, bOffset + n + column));
+				final DoubleVector dz = vz.sub(DoubleVector.fromArray(SPECIES, b, bOffset + 2 * n + column));
+				dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz)).intoArray(squareDistances, p * n + column);
+			}
+		}
+		double min = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < n * n; i++) {
+			min = Math.min(min, squareDistances[i]);
+		}
+		return min;
+	}
+}
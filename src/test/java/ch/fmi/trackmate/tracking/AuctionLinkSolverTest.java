@@ -0,0 +1,141 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.imglib2.parallel.Parallelization;
+
+public class AuctionLinkSolverTest {
+
+	@Test
+	public void testSameCostAsBruteForce() {
+		Random random = new Random(1L);
+		for (int trial = 0; trial < 200; trial++) {
+			int numSources = 1 + random.nextInt(6);
+			int numTargets = 1 + random.nextInt(6);
+			double[][] matrix = new double[numSources][numTargets];
+			int numCandidates = 0;
+			double maxCost = 0;
+			for (double[] row : matrix) {
+				for (int j = 0; j < numTargets; j++) {
+					row[j] = random.nextInt(3) == 0 ? Double.NaN : random.nextInt(20) + random.nextDouble();
+					if (!Double.isNaN(row[j])) {
+						numCandidates++;
+						maxCost = Math.max(maxCost, row[j]);
+					}
+				}
+			}
+			int[] rows = new int[numCandidates];
+			int[] cols = new int[numCandidates];
+			double[] costs = new double[numCandidates];
+			int e = 0;
+			for (int i = 0; i < numSources; i++) {
+				for (int j = 0; j < numTargets; j++) {
+					if (Double.isNaN(matrix[i][j])) continue;
+					rows[e] = i;
+					cols[e] = j;
+					costs[e++] = matrix[i][j];
+				}
+			}
+			// low alternative costs leave some spots unlinked
+			double alternativeCost = (0.3 + random.nextDouble()) * maxCost + 1;
+
+			int[] links = AuctionLinkSolver.assign(numSources, numTargets, rows, cols, costs, alternativeCost);
+			boolean[] linkedTargets = new boolean[numTargets];
+			for (int i = 0; i < numSources; i++) {
+				if (links[i] < 0) continue;
+				assertFalse(Double.isNaN(matrix[i][links[i]]));
+				assertFalse(linkedTargets[links[i]]);
+				linkedTargets[links[i]] = true;
+			}
+			double tolerance = 1e-6 * Math.max(maxCost, alternativeCost) + 1e-12;
+			assertEquals(bruteForce(matrix, alternativeCost, 0, 0), totalCost(matrix, links, alternativeCost), tolerance);
+		}
+	}
+
+	@Test
+	public void testNumThreads() {
+		// enough persons for parallel bidding
+		Random random = new Random(2L);
+		int numSpots = 3000;
+		int perSource = 4;
+		int[] rows = new int[numSpots * perSource];
+		int[] cols = new int[numSpots * perSource];
+		double[] costs = new double[numSpots * perSource];
+		for (int i = 0; i < numSpots; i++) {
+			for (int k = 0; k < perSource; k++) {
+				rows[i * perSource + k] = i;
+				cols[i * perSource + k] = (i + k * 7) % numSpots;
+				costs[i * perSource + k] = random.nextDouble();
+			}
+		}
+		int[] single = Parallelization.runWithNumThreads(1, () -> AuctionLinkSolver.assign(numSpots, numSpots, rows, cols, costs, 2.0));
+		int[] parallel = Parallelization.runWithNumThreads(4, () -> AuctionLinkSolver.assign(numSpots, numSpots, rows, cols, costs, 2.0));
+		assertArrayEquals(single, parallel);
+		// every target is linked at most once
+		int[] counts = new int[numSpots];
+		for (int target : single) {
+			if (target >= 0) counts[target]++;
+		}
+		assertEquals(0, Arrays.stream(counts).filter(count -> count > 1).count());
+	}
+
+	private static double totalCost(double[][] matrix, int[] links, double alternativeCost) {
+		int numTargets = matrix[0].length;
+		double total = 0;
+		int linked = 0;
+		for (int i = 0; i < matrix.length; i++) {
+			if (links[i] < 0) {
+				total += alternativeCost;
+			} else {
+				total += matrix[i][links[i]];
+				linked++;
+			}
+		}
+		return total + (numTargets - linked) * alternativeCost;
+	}
+
+	/**
+	 * @return the minimal cost of linking sources from {@code source} on,
+	 *         with the targets in {@code used} already taken
+	 */
+	private static double bruteForce(double[][] matrix, double alternativeCost, int source, int used) {
+		int numTargets = matrix[0].length;
+		if (source == matrix.length) {
+			return (numTargets - Integer.bitCount(used)) * alternativeCost;
+		}
+		double best = alternativeCost + bruteForce(matrix, alternativeCost, source + 1, used);
+		for (int j = 0; j < numTargets; j++) {
+			if ((used & 1 << j) != 0 || Double.isNaN(matrix[source][j])) continue;
+			best = Math.min(best, matrix[source][j] + bruteForce(matrix, alternativeCost, source + 1, used | 1 << j));
+		}
+		return best;
+	}
+}
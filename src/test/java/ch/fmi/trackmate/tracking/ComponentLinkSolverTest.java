@@ -0,0 +1,126 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import net.imglib2.parallel.Parallelization;
+
+public class ComponentLinkSolverTest {
+
+	@Test
+	public void testSameCostAsWholeProblem() {
+		Random random = new Random(1L);
+		for (int trial = 0; trial < 20; trial++) {
+			RandomCandidates candidates = new RandomCandidates(random, 200);
+			JaqamanLinkSolver whole = new JaqamanLinkSolver();
+			assertTrue(whole.solve(candidates));
+			double alternativeCost = candidates.getAlternativeCostForSource(candidates.getSourceList().get(0));
+
+			ComponentLinkSolver components = new ComponentLinkSolver(numSpots -> new JaqamanLinkSolver());
+			assertTrue(components.solve(candidates));
+			assertEquals(totalCost(candidates, whole, alternativeCost), totalCost(candidates, components, alternativeCost),
+					1e-9 * alternativeCost);
+		}
+	}
+
+	@Test
+	public void testNumThreads() {
+		RandomCandidates candidates = new RandomCandidates(new Random(2L), 5000);
+		Map<Spot, Spot> single = Parallelization.runWithNumThreads(1, () -> solve(candidates));
+		Map<Spot, Spot> parallel = Parallelization.runWithNumThreads(4, () -> solve(candidates));
+		assertEquals(single, parallel);
+	}
+
+	private static Map<Spot, Spot> solve(RandomCandidates candidates) {
+		ComponentLinkSolver solver = new ComponentLinkSolver(numSpots -> new JaqamanLinkSolver());
+		assertTrue(solver.solve(candidates));
+		return solver.getResult();
+	}
+
+	/**
+	 * @return the link costs plus the alternative cost of every unlinked
+	 *         source and target
+	 */
+	private static double totalCost(RandomCandidates candidates, LinkSolver solver, double alternativeCost) {
+		double total = 0;
+		for (double cost : solver.getAssignmentCosts().values()) {
+			total += cost;
+		}
+		int unlinked = candidates.getSourceList().size() + candidates.getTargetList().size()
+				- 2 * solver.getResult().size();
+		return total + unlinked * alternativeCost;
+	}
+
+	/**
+	 * Candidate pairs between spots on a line, each source with the targets
+	 * at most two positions away, so that gaps in the line separate
+	 * components.
+	 */
+	private static final class RandomCandidates extends AbstractSparseCostMatrixCreator {
+
+		private final List<Spot> sources = new ArrayList<>();
+		private final List<Spot> targets = new ArrayList<>();
+		private final List<Double> costs = new ArrayList<>();
+
+		RandomCandidates(Random random, int numSpots) {
+			super(Double.POSITIVE_INFINITY, 1.05d, 0.9d);
+			Spot[] spots = new Spot[numSpots];
+			for (int j = 0; j < numSpots; j++) {
+				spots[j] = new Spot(j, 0, 0, 1, 1);
+			}
+			for (int i = 0; i < numSpots; i++) {
+				if (random.nextInt(10) == 0) continue;
+				Spot source = new Spot(i, 0, 0, 1, 1);
+				for (int j = Math.max(0, i - 2); j <= Math.min(numSpots - 1, i + 2); j++) {
+					if (random.nextBoolean()) {
+						sources.add(source);
+						targets.add(spots[j]);
+						costs.add(Math.abs(i - j) + random.nextDouble());
+					}
+				}
+			}
+		}
+
+		@Override
+		public boolean checkInput() {
+			return true;
+		}
+
+		@Override
+		protected boolean collectCandidates() {
+			for (int e = 0; e < costs.size(); e++) {
+				accept(sources.get(e), targets.get(e), costs.get(e));
+			}
+			return true;
+		}
+	}
+}
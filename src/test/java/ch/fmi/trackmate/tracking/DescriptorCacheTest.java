@@ -0,0 +1,139 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+
+public class DescriptorCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		SpotCollection spotCollection = SyntheticSpots.create(2, 100, 1L);
+		PointDescriptorTracker tracker = new PointDescriptorTracker(spotCollection, 5, 7, 1, 10.0, 100.0, false);
+		FrameDescriptors descriptors = tracker.createFrameDescriptors(0);
+
+		DescriptorCache cache = new DescriptorCache(folder.getRoot());
+		assertNull(cache.load(0, descriptors.spots(), 7, 5));
+		cache.store(descriptors, 5);
+
+		FrameDescriptors cached = cache.load(0, descriptors.spots(), 7, 5);
+		assertNotNull(cached);
+		assertArrayEquals(descriptors.descriptors(), cached.descriptors(), 0.0);
+
+		// different parameters or positions are not found
+		assertNull(cache.load(0, descriptors.spots(), 7, 4));
+		assertNull(cache.load(1, tracker.createFrameDescriptors(1).spots(), 7, 5));
+		Spot moved = descriptors.spot(0);
+		moved.putFeature(Spot.POSITION_X, moved.getFeature(Spot.POSITION_X) + 1.0);
+		assertNull(cache.load(0, descriptors.spots(), 7, 5));
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		FrameDescriptors[] frames = createFrames(3);
+
+		// room for two frames
+		long fileBytes = fileBytes(frames[0]);
+		DescriptorCache cache = new DescriptorCache(folder.getRoot(), 2 * fileBytes);
+		assertTrue(cache.store(frames[0], 5));
+		assertTrue(cache.store(frames[1], 5));
+		assertEquals(2 * fileBytes, cache.size());
+
+		// in the next run, frame 0 is used last and frame 1 is evicted
+		cache = new DescriptorCache(folder.getRoot(), 2 * fileBytes);
+		ageFile(cache, frames[1], 2000);
+		ageFile(cache, frames[0], 3000);
+		assertNotNull(cache.load(0, frames[0].spots(), 7, 5));
+		assertTrue(cache.store(frames[2], 5));
+		assertEquals(2 * fileBytes, cache.size());
+		assertNotNull(cache.load(0, frames[0].spots(), 7, 5));
+		assertNull(cache.load(1, frames[1].spots(), 7, 5));
+		assertNotNull(cache.load(2, frames[2].spots(), 7, 5));
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertNull(cache.load(2, frames[2].spots(), 7, 5));
+		assertTrue(folder.getRoot().isDirectory());
+	}
+
+	@Test
+	public void testFull() throws IOException {
+		FrameDescriptors[] frames = createFrames(3);
+		long fileBytes = fileBytes(frames[0]);
+
+		// a frame larger than the cache is not stored
+		DescriptorCache small = new DescriptorCache(folder.getRoot(), fileBytes - 1);
+		assertFalse(small.store(frames[0], 5));
+		assertEquals(0, small.size());
+
+		// the frames of the same run are kept, later frames are not stored
+		DescriptorCache cache = new DescriptorCache(folder.getRoot(), 2 * fileBytes);
+		assertTrue(cache.store(frames[0], 5));
+		assertTrue(cache.store(frames[1], 5));
+		assertFalse(cache.store(frames[2], 5));
+		assertEquals(2 * fileBytes, cache.size());
+		assertNotNull(cache.load(0, frames[0].spots(), 7, 5));
+		assertNotNull(cache.load(1, frames[1].spots(), 7, 5));
+		assertNull(cache.load(2, frames[2].spots(), 7, 5));
+	}
+
+	private static FrameDescriptors[] createFrames(int nFrames) {
+		SpotCollection spotCollection = SyntheticSpots.create(nFrames, 100, 1L);
+		PointDescriptorTracker tracker = new PointDescriptorTracker(spotCollection, 5, 7, 1, 10.0, 100.0, false);
+		FrameDescriptors[] frames = new FrameDescriptors[nFrames];
+		for (int frame = 0; frame < frames.length; frame++) {
+			frames[frame] = tracker.createFrameDescriptors(frame);
+		}
+		return frames;
+	}
+
+	private static long fileBytes(FrameDescriptors descriptors) {
+		return 3 * Integer.BYTES + Double.BYTES * (long) descriptors.descriptors().length;
+	}
+
+	/**
+	 * Moves the last use of a cache file into the past, as file times are
+	 * not precise enough for consecutive calls.
+	 */
+	private static void ageFile(DescriptorCache cache, FrameDescriptors descriptors, long millis) throws IOException {
+		Files.setLastModifiedTime(cache.key(descriptors.spots(), 7, 5).file(), FileTime.fromMillis(System.currentTimeMillis() - millis));
+	}
+}
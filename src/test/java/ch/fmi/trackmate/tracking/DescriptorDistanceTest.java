@@ -0,0 +1,170 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import mpicbg.models.Point;
+import mpicbg.pointdescriptor.SimplePointDescriptor;
+import mpicbg.pointdescriptor.exception.NoSuitablePointsException;
+import mpicbg.pointdescriptor.matcher.SubsetMatcher;
+import mpicbg.pointdescriptor.similarity.SquareDistance;
+
+public class DescriptorDistanceTest {
+
+	@Test
+	public void testSameAsSimplePointDescriptor() throws NoSuitablePointsException {
+		assertSameAsSimplePointDescriptor(SquareDistanceKernel.scalar());
+	}
+
+	/**
+	 * Only runs on Java 17+ with {@code --add-modules jdk.incubator.vector}
+	 * and the Java 17 classes on the class path, see the
+	 * {@code java17-classes} profile.
+	 */
+	@Test
+	public void testVectorKernel() throws NoSuitablePointsException {
+		SquareDistanceKernel vector = SquareDistanceKernel.vector();
+		assumeNotNull(vector);
+		assertSameAsSimplePointDescriptor(vector);
+
+		// lane and tail handling for all sizes, identical to the scalar kernel
+		Random random = new Random(3L);
+		for (int n = 1; n <= 20; n++) {
+			double[] a = new double[3 * n + 5];
+			double[] b = new double[3 * n + 5];
+			for (int i = 0; i < a.length; i++) {
+				a[i] = random.nextGaussian();
+				b[i] = random.nextGaussian();
+			}
+			double[] expected = new double[n * n];
+			double[] actual = new double[n * n];
+			double expectedMin = SquareDistanceKernel.scalar().compute(a, 2, b, 5, n, expected);
+			double actualMin = vector.compute(a, 2, b, 5, n, actual);
+			assertArrayEquals(expected, actual, 0.0);
+			assertEquals(expectedMin, actualMin, 0.0);
+		}
+	}
+
+	private static void assertSameAsSimplePointDescriptor(SquareDistanceKernel kernel) throws NoSuitablePointsException {
+		Random random = new Random(1L);
+		int[][] parameters = { { 3, 3 }, { 5, 7 }, { 2, 6 }, { 4, 4 }, { 5, 9 } };
+		for (int[] p : parameters) {
+			int subsetSize = p[0];
+			int numNeighbors = p[1];
+			DescriptorDistance distance = new DescriptorDistance(numNeighbors, subsetSize, kernel);
+			for (int i = 0; i < 100; i++) {
+				double[][] a = randomNeighborhood(random, numNeighbors);
+				double[][] b = randomNeighborhood(random, numNeighbors);
+				FrameDescriptors da = frameDescriptors(a);
+				FrameDescriptors db = frameDescriptors(b);
+				double expected = pointDescriptor(a, subsetSize, numNeighbors)
+						.descriptorDistance(pointDescriptor(b, subsetSize, numNeighbors));
+				double actual = distance.compute(da.descriptors(), da.offset(0), db.descriptors(), db.offset(0));
+				assertEquals(expected, actual, 1e-9 * expected);
+			}
+		}
+	}
+
+	@Test
+	public void testBounded() {
+		Random random = new Random(2L);
+		DescriptorDistance distance = new DescriptorDistance(7, 5);
+		for (int i = 0; i < 1000; i++) {
+			FrameDescriptors da = frameDescriptors(randomNeighborhood(random, 7));
+			FrameDescriptors db = frameDescriptors(randomNeighborhood(random, 7));
+			double exact = distance.compute(da.descriptors(), da.offset(0), db.descriptors(), db.offset(0));
+			double bound = 2 * exact * random.nextDouble();
+			double bounded = distance.compute(da.descriptors(), da.offset(0), db.descriptors(), db.offset(0), bound);
+			// exact below the bound, otherwise anything not below it
+			if (exact < bound) {
+				assertEquals(exact, bounded, 0.0);
+			} else {
+				assertTrue(bounded >= bound);
+			}
+		}
+	}
+
+	@Test
+	public void testSubsetLargerThanNeighbors() {
+		Random random = new Random(4L);
+		for (int subsetSize = 4; subsetSize <= 8; subsetSize++) {
+			DescriptorDistance distance = new DescriptorDistance(3, subsetSize);
+			FrameDescriptors da = frameDescriptors(randomNeighborhood(random, 3));
+			FrameDescriptors db = frameDescriptors(randomNeighborhood(random, 3));
+			assertEquals(Double.POSITIVE_INFINITY, distance.compute(da.descriptors(), da.offset(0), db.descriptors(), db.offset(0)), 0.0);
+			assertEquals(Double.POSITIVE_INFINITY, distance.compute(da.descriptors(), da.offset(0), db.descriptors(), db.offset(0), 10.0), 0.0);
+		}
+	}
+
+	/**
+	 * Random basis point (first entry) with neighbors ordered by distance.
+	 */
+	private static double[][] randomNeighborhood(Random random, int numNeighbors) {
+		double[][] points = new double[numNeighbors + 1][3];
+		double radius = 0;
+		for (int d = 0; d < 3; d++) {
+			points[0][d] = random.nextDouble() * 100;
+		}
+		for (int i = 1; i <= numNeighbors; i++) {
+			// increasing distance from the basis point
+			radius += 1 + random.nextDouble();
+			double[] direction = { random.nextGaussian(), random.nextGaussian(), random.nextGaussian() };
+			double norm = Math.sqrt(direction[0] * direction[0] + direction[1] * direction[1] + direction[2] * direction[2]);
+			for (int d = 0; d < 3; d++) {
+				points[i][d] = points[0][d] + radius * direction[d] / norm;
+			}
+		}
+		return points;
+	}
+
+	private static FrameDescriptors frameDescriptors(double[][] points) {
+		Spot[] spots = new Spot[points.length];
+		for (int i = 0; i < points.length; i++) {
+			spots[i] = new Spot(points[i][0], points[i][1], points[i][2], 1, 1);
+		}
+		FrameDescriptors descriptors = new FrameDescriptors(0, spots, points.length - 1);
+		for (int i = 1; i < points.length; i++) {
+			descriptors.setNeighbor(0, i - 1, i);
+		}
+		return descriptors;
+	}
+
+	private static SimplePointDescriptor<Point> pointDescriptor(double[][] points, int subsetSize, int numNeighbors)
+			throws NoSuitablePointsException {
+		ArrayList<Point> neighbors = new ArrayList<>();
+		for (int i = 1; i < points.length; i++) {
+			neighbors.add(new Point(points[i].clone()));
+		}
+		return new SimplePointDescriptor<>(new Point(points[0].clone()), neighbors, new SquareDistance(),
+				new SubsetMatcher(subsetSize, numNeighbors));
+	}
+}
@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import net.imglib2.RealPoint;
+import net.imglib2.parallel.Parallelization;
+
+public class NearestNeighborsTest {
+
+	@Test
+	public void testSameAsBruteForce() {
+		Random random = new Random(1L);
+		List<RealPoint> points = new ArrayList<>();
+		for (int i = 0; i < 3000; i++) {
+			points.add(new RealPoint(random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100));
+		}
+		int k = 6;
+		int[] neighbors = Parallelization.runWithNumThreads(4, () -> NearestNeighbors.build(points, k));
+		assertEquals(points.size() * k, neighbors.length);
+		for (int i = 0; i < points.size(); i += 7) {
+			assertArrayEquals(bruteForce(points, i, k), Arrays.copyOfRange(neighbors, k * i, k * i + k));
+		}
+	}
+
+	@Test
+	public void testFewPoints() {
+		List<RealPoint> points = Arrays.asList(new RealPoint(0, 0, 0), new RealPoint(1, 0, 0), new RealPoint(3, 0, 0));
+		int[] neighbors = NearestNeighbors.build(points, 4);
+		assertArrayEquals(new int[] { 1, 2, -1, -1, 0, 2, -1, -1, 1, 0, -1, -1 }, neighbors);
+	}
+
+	private static int[] bruteForce(List<RealPoint> points, int i, int k) {
+		RealPoint query = points.get(i);
+		return IntStream.range(0, points.size()).filter(j -> j != i).boxed()
+				.sorted(Comparator.comparingDouble(j -> squareDistance(query, points.get(j)))).limit(k)
+				.mapToInt(Integer::intValue).toArray();
+	}
+
+	private static double squareDistance(RealPoint a, RealPoint b) {
+		double sum = 0;
+		for (int d = 0; d < 3; d++) {
+			double diff = a.getDoublePosition(d) - b.getDoublePosition(d);
+			sum += diff * diff;
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,115 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+
+/**
+ * Tests {@link PointCloudRegistrationTracker} with the descriptor matching and
+ * RANSAC of the Descriptor_based_registration dependency. The links depend on
+ * that implementation, so only a run of the Maven build against the released
+ * dependency (as in the CI build) validates this test.
+ */
+@SuppressWarnings("deprecation")
+public class PointCloudRegistrationTrackerTest {
+
+	private static final int N_SPOTS = 100;
+
+	// frames do not start at 0, and frame 6 is missing
+	private static final int[] FRAMES = { 3, 4, 5, 7 };
+
+	@Test
+	public void testRigidMotion() {
+		Map<Spot, Integer> indices = new HashMap<>();
+		SpotCollection spots = createRigidCloud(indices);
+
+		Set<String> reference = null;
+		for (int numThreads : new int[] { 1, 3 }) {
+			PointCloudRegistrationTracker tracker = new PointCloudRegistrationTracker(spots, 10, 2, false, 0.0);
+			tracker.setNumThreads(numThreads);
+			assertTrue(tracker.process());
+			SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph = tracker.getResult();
+
+			// each spot is linked to the same point of the cloud in a later frame
+			Set<String> links = new TreeSet<>();
+			Set<String> framePairs = new TreeSet<>();
+			for (DefaultWeightedEdge edge : graph.edgeSet()) {
+				Spot source = graph.getEdgeSource(edge);
+				Spot target = graph.getEdgeTarget(edge);
+				int sourceFrame = source.getFeature(Spot.FRAME).intValue();
+				int targetFrame = target.getFeature(Spot.FRAME).intValue();
+				assertEquals(indices.get(source), indices.get(target));
+				assertTrue(targetFrame > sourceFrame);
+				links.add(indices.get(source) + ":" + sourceFrame + "-" + targetFrame);
+				framePairs.add(sourceFrame + "-" + targetFrame);
+			}
+			// consecutive frames are linked, by frame number and across the gap
+			assertTrue(framePairs.contains("3-4"));
+			assertTrue(framePairs.contains("4-5"));
+			assertTrue(framePairs.contains("5-7"));
+			assertTrue(links.size() >= 0.8 * N_SPOTS * (FRAMES.length - 1));
+
+			if (reference == null) {
+				reference = links;
+			} else {
+				assertEquals(reference, links);
+			}
+		}
+	}
+
+	/**
+	 * A random point cloud that is translated as a whole from frame to
+	 * frame.
+	 */
+	private static SpotCollection createRigidCloud(Map<Spot, Integer> indices) {
+		Random random = new Random(1L);
+		double[][] cloud = new double[N_SPOTS][3];
+		for (double[] point : cloud) {
+			for (int d = 0; d < 3; d++) {
+				point[d] = random.nextDouble() * 100;
+			}
+		}
+		SpotCollection spots = new SpotCollection();
+		for (int frame : FRAMES) {
+			for (int i = 0; i < N_SPOTS; i++) {
+				Spot spot = new Spot(cloud[i][0] + 2.0 * frame, cloud[i][1] + 1.0 * frame, cloud[i][2] + 0.5 * frame, 1.0, 1.0);
+				spots.add(spot, frame);
+				indices.put(spot, i);
+			}
+		}
+		return spots;
+	}
+}
@@ -0,0 +1,262 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.collect.Lists;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.tracking.jaqaman.JaqamanLinker;
+import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.JaqamanLinkingCostMatrixCreator;
+
+/**
+ * JMH benchmarks for the hot paths of {@link PointDescriptorTracker}.
+ * <p>
+ * Run from the IDE, or with a larger cloud from the command line, e.g.
+ * {@code -p spotsPerFrame=20000}.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PointDescriptorTrackerBenchmark {
+
+	private static final double COST_THRESHOLD = 100.0;
+	private static final double MAX_LINKING_DISTANCE = 10.0;
+
+	@Param({ "1000", "5000" })
+	public int spotsPerFrame;
+
+	@Param({ "7" })
+	public int numNeighbors;
+
+	@Param({ "5" })
+	public int subsetSize;
+
+	@Param({ "3" })
+	public int maxInterval;
+
+	private SpotCollection spots;
+	private PointDescriptorTracker tracker;
+	private DistanceConstrainedDescriptorDistanceCostFunction costFunction;
+	private DescriptorDistanceCostFunction unboundedCostFunction;
+	private DescriptorDistanceCostFunction boundedCostFunction;
+	private FrameDescriptors sourceDescriptors;
+	private FrameDescriptors targetDescriptors;
+	private DescriptorDistance scalarDistance;
+	private DescriptorDistance vectorDistance;
+	private List<Spot> sources;
+	private List<Spot> targets;
+	private SimpleWeightedGraph<Spot, DefaultWeightedEdge> rawGraph;
+
+	@Setup
+	public void setup() {
+		spots = SyntheticSpots.create(maxInterval + 1, spotsPerFrame, 42L);
+		tracker = new PointDescriptorTracker(spots, subsetSize, numNeighbors, maxInterval, COST_THRESHOLD,
+				MAX_LINKING_DISTANCE * MAX_LINKING_DISTANCE, false);
+		tracker.setLogger(Logger.VOID_LOGGER);
+		tracker.setNumThreads(1);
+
+		DescriptorStore store = new DescriptorStore(numNeighbors, subsetSize);
+		sourceDescriptors = tracker.createFrameDescriptors(0);
+		targetDescriptors = tracker.createFrameDescriptors(1);
+		scalarDistance = new DescriptorDistance(numNeighbors, subsetSize, SquareDistanceKernel.scalar());
+		SquareDistanceKernel vector = SquareDistanceKernel.vector();
+		vectorDistance = vector == null ? null : new DescriptorDistance(numNeighbors, subsetSize, vector);
+		costFunction = new DistanceConstrainedDescriptorDistanceCostFunction(sourceDescriptors, targetDescriptors,
+				store.createDistance(), MAX_LINKING_DISTANCE * MAX_LINKING_DISTANCE);
+		unboundedCostFunction = new DescriptorDistanceCostFunction(sourceDescriptors, targetDescriptors,
+				store.createDistance());
+		boundedCostFunction = new DescriptorDistanceCostFunction(sourceDescriptors, targetDescriptors,
+				store.createDistance(), COST_THRESHOLD);
+		// spots are created in the same order in every frame
+		sources = Lists.newArrayList(spots.iterable(0, true));
+		sources.sort(Comparator.comparingInt(Spot::ID));
+		targets = Lists.newArrayList(spots.iterable(1, true));
+		targets.sort(Comparator.comparingInt(Spot::ID));
+
+		tracker.process();
+		rawGraph = tracker.getResult();
+	}
+
+	@Benchmark
+	public FrameDescriptors createFrameDescriptors() {
+		return tracker.createFrameDescriptors(0);
+	}
+
+	/**
+	 * Cost of all true correspondences between the first two frames, i.e.
+	 * full descriptor distances rather than rejections by distance.
+	 */
+	@Benchmark
+	public void linkingCost(Blackhole blackhole) {
+		for (int i = 0; i < sources.size(); i++) {
+			blackhole.consume(costFunction.linkingCost(sources.get(i), targets.get(i)));
+		}
+	}
+
+	/**
+	 * Descriptor distances of all spots of the first frame to the same spots
+	 * in the second frame, with the scalar and the Vector API kernel. The
+	 * latter needs Java 17+, {@code -jvmArgsAppend --add-modules=jdk.incubator.vector}
+	 * and the Java 17 classes of the multi-release JAR on the class path.
+	 */
+	@Benchmark
+	public void descriptorDistanceScalar(Blackhole blackhole) {
+		descriptorDistances(scalarDistance, blackhole);
+	}
+
+	@Benchmark
+	public void descriptorDistanceVector(Blackhole blackhole) {
+		if (vectorDistance == null) {
+			throw new IllegalStateException("The Vector API kernel is not available in this JVM.");
+		}
+		descriptorDistances(vectorDistance, blackhole);
+	}
+
+	private void descriptorDistances(DescriptorDistance distance, Blackhole blackhole) {
+		double[] a = sourceDescriptors.descriptors();
+		double[] b = targetDescriptors.descriptors();
+		for (int i = 0; i < sources.size(); i++) {
+			blackhole.consume(distance.compute(a, sourceDescriptors.offset(sourceDescriptors.indexOf(sources.get(i))), b,
+					targetDescriptors.offset(targetDescriptors.indexOf(targets.get(i)))));
+		}
+	}
+
+	/**
+	 * Cost of mismatched pairs, i.e. the rejects that dominate dense frames,
+	 * without and with early abandoning at the cost threshold.
+	 */
+	@Benchmark
+	public void rejectedCost(Blackhole blackhole) {
+		rejectedCost(unboundedCostFunction, blackhole);
+	}
+
+	@Benchmark
+	public void rejectedCostBounded(Blackhole blackhole) {
+		rejectedCost(boundedCostFunction, blackhole);
+	}
+
+	private void rejectedCost(DescriptorDistanceCostFunction function, Blackhole blackhole) {
+		int n = Math.min(sources.size(), targets.size());
+		for (int i = 0; i < n; i++) {
+			blackhole.consume(function.linkingCost(sources.get(i), targets.get((i + n / 2) % n)));
+		}
+	}
+
+	@Benchmark
+	public Map<Spot, Spot> linkFramePair() {
+		JaqamanLinkingCostMatrixCreator<Spot, Spot> costMatrixCreator = new JaqamanLinkingCostMatrixCreator<>(
+				spots.iterable(0, true), spots.iterable(1, true), costFunction, COST_THRESHOLD, 2.0d, 1d);
+		JaqamanLinker<Spot, Spot> linker = new JaqamanLinker<>(costMatrixCreator);
+		if (!linker.checkInput() || !linker.process()) {
+			throw new IllegalStateException(linker.getErrorMessage());
+		}
+		return linker.getResult();
+	}
+
+	@Benchmark
+	public Map<Spot, Spot> linkFramePairGated() {
+		SparseLinkingCostMatrixCreator costMatrixCreator = new SparseLinkingCostMatrixCreator(sources, targets,
+				costFunction, MAX_LINKING_DISTANCE, COST_THRESHOLD, 2.0d, 1d);
+		JaqamanLinker<Spot, Spot> linker = new JaqamanLinker<>(costMatrixCreator);
+		if (!linker.checkInput() || !linker.process()) {
+			throw new IllegalStateException(linker.getErrorMessage());
+		}
+		return linker.getResult();
+	}
+
+	/**
+	 * The gated frame pair solved by each {@link LinkSolver}, the auction with
+	 * the threads of the default {@code Parallelization} context.
+	 */
+	@Benchmark
+	public Map<Spot, Spot> linkFramePairJaqaman() {
+		return linkFramePair(new JaqamanLinkSolver());
+	}
+
+	@Benchmark
+	public Map<Spot, Spot> linkFramePairAuction() {
+		return linkFramePair(new AuctionLinkSolver());
+	}
+
+	/**
+	 * The gated frame pair split into connected components, each solved by
+	 * the {@link JaqamanLinkSolver}.
+	 */
+	@Benchmark
+	public Map<Spot, Spot> linkFramePairComponents() {
+		return linkFramePair(new ComponentLinkSolver(numSpots -> new JaqamanLinkSolver()));
+	}
+
+	private Map<Spot, Spot> linkFramePair(LinkSolver solver) {
+		SparseLinkingCostMatrixCreator costMatrixCreator = new SparseLinkingCostMatrixCreator(sources, targets,
+				costFunction, MAX_LINKING_DISTANCE, COST_THRESHOLD, 2.0d, 1d);
+		if (!solver.solve(costMatrixCreator)) {
+			throw new IllegalStateException(solver.getErrorMessage());
+		}
+		return solver.getResult();
+	}
+
+	@Benchmark
+	public SimpleWeightedGraph<Spot, DefaultWeightedEdge> prune() {
+		return Tracks.prune(rawGraph, true);
+	}
+
+	public static void main(String... args) throws RunnerException, CommandLineOptionException {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.include(PointDescriptorTrackerBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jdom2.Element;
+import org.junit.Test;
+
+public class PointDescriptorTrackerFactoryTest {
+
+	@Test
+	public void testSubsetLargerThanNeighbors() {
+		PointDescriptorTrackerFactory factory = new PointDescriptorTrackerFactory();
+		Map<String, Object> settings = factory.getDefaultSettings();
+		assertTrue(factory.checkSettingsValidity(settings));
+
+		settings.put(PointDescriptorTrackerFactory.SUBSET_NEIGHBORS, settings.get(PointDescriptorTrackerFactory.NUM_NEIGHBORS));
+		assertTrue(factory.checkSettingsValidity(settings));
+
+		settings.put(PointDescriptorTrackerFactory.SUBSET_NEIGHBORS, (int) settings.get(PointDescriptorTrackerFactory.NUM_NEIGHBORS) + 2);
+		assertFalse(factory.checkSettingsValidity(settings));
+	}
+
+	@Test
+	public void testCacheSettings() {
+		PointDescriptorTrackerFactory factory = new PointDescriptorTrackerFactory();
+		Map<String, Object> settings = factory.getDefaultSettings();
+		settings.put(PointDescriptorTrackerFactory.CACHE_DIRECTORY, "/data/descriptors");
+		settings.put(PointDescriptorTrackerFactory.CACHE_MEMORY_MB, 64);
+		assertTrue(factory.checkSettingsValidity(settings));
+
+		Element element = new Element("tracker");
+		assertTrue(factory.marshall(settings, element));
+		Map<String, Object> unmarshalled = new HashMap<>();
+		assertTrue(factory.unmarshall(element, unmarshalled));
+		assertEquals("/data/descriptors", unmarshalled.get(PointDescriptorTrackerFactory.CACHE_DIRECTORY));
+		assertEquals(64, unmarshalled.get(PointDescriptorTrackerFactory.CACHE_MEMORY_MB));
+
+		// older files use the defaults
+		element.removeAttribute(PointDescriptorTrackerFactory.CACHE_DIRECTORY);
+		element.removeAttribute(PointDescriptorTrackerFactory.CACHE_MEMORY_MB);
+		assertTrue(factory.unmarshall(element, unmarshalled));
+		assertEquals(PointDescriptorTrackerFactory.DEFAULT_CACHE_DIRECTORY, unmarshalled.get(PointDescriptorTrackerFactory.CACHE_DIRECTORY));
+		assertEquals(PointDescriptorTrackerFactory.DEFAULT_CACHE_MEMORY_MB, unmarshalled.get(PointDescriptorTrackerFactory.CACHE_MEMORY_MB));
+
+		settings.put(PointDescriptorTrackerFactory.CACHE_MEMORY_MB, -1);
+		assertFalse(factory.checkSettingsValidity(settings));
+	}
+}
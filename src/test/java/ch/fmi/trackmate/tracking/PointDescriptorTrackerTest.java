@@ -22,6 +22,19 @@
 package ch.fmi.trackmate.tracking;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
@@ -61,6 +74,545 @@ public class PointDescriptorTrackerTest {
 		assertEquals(36, graph.edgeSet().size()); // this is in the pruned graph
 	}
 
+	@Test(expected = IllegalArgumentException.class)
+	public void testSubsetLargerThanNeighbors() {
+		new PointDescriptorTracker(createTestSpots(), 5, 3, 3, 10.0, 10.0, true);
+	}
+
+	@Test
+	public void testSpatialGating() {
+		SpotCollection spotCollection = createTestSpots();
+		PointDescriptorTracker exhaustive = new PointDescriptorTracker(spotCollection, 3, 3, 3, 10.0, 10.0, false);
+		exhaustive.setLogger(Logger.VOID_LOGGER);
+		exhaustive.setSpatialGating(false);
+		exhaustive.process();
+		PointDescriptorTracker gated = new PointDescriptorTracker(spotCollection, 3, 3, 3, 10.0, 10.0, false);
+		gated.setLogger(Logger.VOID_LOGGER);
+		gated.setSpatialGating(true);
+		gated.process();
+		// both modes have to create the very same links
+		assertEquals(edgeStrings(exhaustive.getResult()), edgeStrings(gated.getResult()));
+	}
+
+	@Test
+	public void testZeroLinkingDistance() {
+		// frame 1 repeats frame 0, except for every fourth spot that moves
+		SpotCollection spotCollection = new SpotCollection();
+		List<Spot> frame0 = new ArrayList<>();
+		SyntheticSpots.create(1, 50, 1L).iterable(0, true).forEach(frame0::add);
+		for (int i = 0; i < frame0.size(); i++) {
+			Spot spot = frame0.get(i);
+			spotCollection.add(new Spot(spot.getDoublePosition(0), spot.getDoublePosition(1), spot.getDoublePosition(2), 1.0, 1.0), 0);
+			double shift = i % 4 == 0 ? 1.0 : 0.0;
+			spotCollection.add(new Spot(spot.getDoublePosition(0) + shift, spot.getDoublePosition(1), spot.getDoublePosition(2), 1.0, 1.0), 1);
+		}
+		PointDescriptorTracker tracker = new PointDescriptorTracker(spotCollection, 3, 5, 1, 100.0, 0.0, false);
+		tracker.setLogger(Logger.VOID_LOGGER);
+		assertTrue(tracker.process());
+		SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph = tracker.getResult();
+		assertTrue(graph.edgeSet().size() > 0);
+		assertTrue(graph.edgeSet().size() < frame0.size());
+		for (DefaultWeightedEdge edge : graph.edgeSet()) {
+			assertEquals(0.0, graph.getEdgeSource(edge).squareDistanceTo(graph.getEdgeTarget(edge)), 0.0);
+		}
+
+		PointDescriptorTrackerFactory factory = new PointDescriptorTrackerFactory();
+		Map<String, Object> settings = factory.getDefaultSettings();
+		settings.put(PointDescriptorTrackerFactory.MAX_LINKING_DISTANCE, 0.0);
+		assertTrue(factory.checkSettingsValidity(settings));
+		settings.put(PointDescriptorTrackerFactory.MAX_LINKING_DISTANCE, Double.NaN);
+		assertFalse(factory.checkSettingsValidity(settings));
+	}
+
+	@Test
+	public void testDescriptorIndex() {
+		// the linking distance covers the whole frame, so gating switches to the descriptor index;
+		// the cost threshold is small compared to the square distance between neighbors
+		SpotCollection spotCollection = SyntheticSpots.create(3, 200, 1L);
+		PointDescriptorTracker exhaustive = new PointDescriptorTracker(spotCollection, 3, 5, 2, 1.0, 1e6, false);
+		exhaustive.setLogger(Logger.VOID_LOGGER);
+		exhaustive.setSpatialGating(false);
+		exhaustive.process();
+		PointDescriptorTracker indexed = new PointDescriptorTracker(spotCollection, 3, 5, 2, 1.0, 1e6, false);
+		indexed.setLogger(Logger.VOID_LOGGER);
+		indexed.process();
+		assertEquals(edgeStrings(exhaustive.getResult()), edgeStrings(indexed.getResult()));
+		for (TrackerMetrics.PairMetrics pair : indexed.getMetrics().getPairs()) {
+			assertTrue(pair.candidates() <= 3L * pair.sources());
+		}
+	}
+
+	@Test
+	public void testNumThreads() {
+		SpotCollection spotCollection = SyntheticSpots.create(6, 200, 1L);
+		List<String> reference = null;
+		for (int numThreads : new int[] { 1, 3, 8 }) {
+			PointDescriptorTracker tracker = new PointDescriptorTracker(spotCollection, 3, 5, 3, 10.0, 100.0, false);
+			tracker.setLogger(Logger.VOID_LOGGER);
+			tracker.setNumThreads(numThreads);
+			tracker.process();
+			List<String> edges = new ArrayList<>(edgeStrings(tracker.getResult()));
+			if (reference == null) {
+				reference = edges;
+			} else {
+				// same edges, added in the same order
+				assertEquals(reference, edges);
+			}
+		}
+	}
+
+	@Test
+	public void testAppendFrame() {
+		SpotCollection spotCollection = SyntheticSpots.create(6, 200, 1L);
+		PointDescriptorTracker batch = new PointDescriptorTracker(spotCollection, 3, 5, 3, 10.0, 100.0, true);
+		batch.setLogger(Logger.VOID_LOGGER);
+		assertTrue(batch.process());
+
+		PointDescriptorTracker incremental = new PointDescriptorTracker(spotCollection, 3, 5, 3, 10.0, 100.0, true);
+		incremental.setLogger(Logger.VOID_LOGGER);
+		for (Integer frame : spotCollection.keySet()) {
+			assertTrue(incremental.appendFrame(frame));
+		}
+		assertEquals(edgeStrings(batch.getResult()), edgeStrings(incremental.getResult()));
+		assertFalse(incremental.appendFrame(0));
+	}
+
+	@Test
+	public void testAppendFramePruning() {
+		SpotCollection spotCollection = SyntheticSpots.create(6, 200, 1L);
+		PointDescriptorTracker incremental = new PointDescriptorTracker(spotCollection, 3, 5, 3, 10.0, 100.0, true);
+		incremental.setLogger(Logger.VOID_LOGGER);
+		SpotCollection appended = new SpotCollection();
+		for (Integer frame : spotCollection.keySet()) {
+			for (Spot spot : spotCollection.iterable(frame, true)) {
+				appended.add(spot, frame);
+			}
+			assertTrue(incremental.appendFrame(frame));
+			// pruned frame by frame, as if all frames so far were processed at once
+			PointDescriptorTracker batch = new PointDescriptorTracker(appended, 3, 5, 3, 10.0, 100.0, true);
+			batch.setLogger(Logger.VOID_LOGGER);
+			assertTrue(batch.process());
+			assertEquals(edgeStrings(batch.getResult()), edgeStrings(incremental.getResult()));
+		}
+	}
+
+	@Test
+	public void testLinkLimit() {
+		SpotCollection spotCollection = SyntheticSpots.create(6, 200, 1L);
+		PointDescriptorTracker unlimited = new PointDescriptorTracker(spotCollection, 3, 5, 3, 10.0, 100.0, false);
+		unlimited.setLogger(Logger.VOID_LOGGER);
+		assertTrue(unlimited.process());
+		Set<String> allEdges = edgeStrings(unlimited.getResult());
+
+		// no change as long as the limit is not below maxInterval
+		PointDescriptorTracker loose = new PointDescriptorTracker(spotCollection, 3, 5, 3, 10.0, 100.0, false);
+		loose.setLogger(Logger.VOID_LOGGER);
+		loose.setLinkLimit(true, 3);
+		assertTrue(loose.process());
+		assertEquals(allEdges, edgeStrings(loose.getResult()));
+
+		PointDescriptorTracker limited = new PointDescriptorTracker(spotCollection, 3, 5, 3, 10.0, 100.0, false);
+		limited.setLogger(Logger.VOID_LOGGER);
+		limited.setLinkLimit(true, 1);
+		assertTrue(limited.process());
+		SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph = limited.getResult();
+		assertTrue(graph.edgeSet().size() < allEdges.size());
+		assertTrue(allEdges.containsAll(edgeStrings(graph)));
+		for (Spot spot : graph.vertexSet()) {
+			int frame = spot.getFeature(Spot.FRAME).intValue();
+			int forward = 0;
+			int backward = 0;
+			for (DefaultWeightedEdge edge : graph.edgesOf(spot)) {
+				Spot other = graph.getEdgeSource(edge) == spot ? graph.getEdgeTarget(edge) : graph.getEdgeSource(edge);
+				if (other.getFeature(Spot.FRAME).intValue() > frame) forward++;
+				else backward++;
+			}
+			assertTrue(forward <= 1 && backward <= 1);
+		}
+
+		// appending frames keeps the same links
+		PointDescriptorTracker incremental = new PointDescriptorTracker(spotCollection, 3, 5, 3, 10.0, 100.0, false);
+		incremental.setLogger(Logger.VOID_LOGGER);
+		incremental.setLinkLimit(true, 1);
+		for (Integer frame : spotCollection.keySet()) {
+			assertTrue(incremental.appendFrame(frame));
+		}
+		assertEquals(edgeStrings(graph), edgeStrings(incremental.getResult()));
+	}
+
+	@Test
+	public void testOnlinePruning() {
+		SpotCollection spotCollection = createTestSpots();
+		PointDescriptorTracker reference = new PointDescriptorTracker(spotCollection, 3, 3, 3, 10.0, 10.0, true);
+		reference.setLogger(Logger.VOID_LOGGER);
+		assertTrue(reference.process());
+
+		PointDescriptorTracker online = new PointDescriptorTracker(spotCollection, 3, 3, 3, 10.0, 10.0, true);
+		online.setLogger(Logger.VOID_LOGGER);
+		online.setNumThreads(3);
+		online.setOnlinePruning(true);
+		assertTrue(online.process());
+		assertEquals(16, online.getResult().edgeSet().size());
+		// same links, but pruned frames are added in the order they complete
+		assertEquals(edgeStrings(reference.getResult()), edgeStrings(online.getResult()));
+	}
+
+	@Test
+	public void testOnlinePruningDifference() {
+		// components and path weights are only evaluated within maxInterval frames around each frame,
+		// measured: no difference with one frame, 10 of 1422 links with three frames and a selective
+		// threshold, 462 of 2324 links with three frames and a loose threshold
+		SpotCollection spotCollection = SyntheticSpots.create(8, 200, 1L);
+		for (double costThreshold : new double[] { 1.0, 10.0 }) {
+			for (int maxInterval : new int[] { 1, 3 }) {
+				PointDescriptorTracker batch = new PointDescriptorTracker(spotCollection, 3, 5, maxInterval, costThreshold, 100.0, true);
+				batch.setLogger(Logger.VOID_LOGGER);
+				assertTrue(batch.process());
+				PointDescriptorTracker online = new PointDescriptorTracker(spotCollection, 3, 5, maxInterval, costThreshold, 100.0, true);
+				online.setLogger(Logger.VOID_LOGGER);
+				online.setOnlinePruning(true);
+				assertTrue(online.process());
+				Set<String> batchEdges = edgeStrings(batch.getResult());
+				Set<String> onlineEdges = edgeStrings(online.getResult());
+				Set<String> missing = new HashSet<>(batchEdges);
+				missing.removeAll(onlineEdges);
+				Set<String> extra = new HashSet<>(onlineEdges);
+				extra.removeAll(batchEdges);
+				int difference = missing.size() + extra.size();
+				if (maxInterval == 1) {
+					assertEquals(0, difference);
+				} else if (costThreshold < 10.0) {
+					assertTrue(difference <= batchEdges.size() / 100);
+				} else {
+					// large components reach beyond the window
+					assertTrue(difference > 0);
+					assertTrue(difference <= batchEdges.size() / 4);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testOnlinePruningHeldLinks() {
+		// spot counts grow over time, so the last pairs are the largest
+		int nFrames = 12;
+		int maxInterval = 2;
+		SpotCollection spotCollection = SyntheticSpots.create(nFrames, 40 + 20 * (nFrames - 1), 5L);
+		for (int frame = 0; frame < nFrames; frame++) {
+			List<Spot> frameSpots = new ArrayList<>();
+			spotCollection.iterable(frame, true).forEach(frameSpots::add);
+			for (Spot spot : frameSpots.subList(40 + 20 * frame, frameSpots.size())) {
+				spotCollection.remove(spot, frame);
+			}
+		}
+		int numThreads = 3;
+		PointDescriptorTracker single = new PointDescriptorTracker(spotCollection, 3, 5, maxInterval, 10.0, 100.0, true);
+		single.setLogger(Logger.VOID_LOGGER);
+		single.setNumThreads(1);
+		single.setOnlinePruning(true);
+		assertTrue(single.process());
+		PointDescriptorTracker online = new PointDescriptorTracker(spotCollection, 3, 5, maxInterval, 10.0, 100.0, true);
+		online.setLogger(Logger.VOID_LOGGER);
+		online.setNumThreads(numThreads);
+		online.setOnlinePruning(true);
+		assertTrue(online.process());
+		assertEquals(edgeStrings(single.getResult()), edgeStrings(online.getResult()));
+		// the pairs of the frames within the window of the oldest unpruned frame, plus one pair per thread
+		int bound = (2 * maxInterval + 1) * maxInterval + numThreads;
+		assertTrue(single.getMaxHeldPairLinks() <= bound);
+		assertTrue(online.getMaxHeldPairLinks() <= bound);
+		assertTrue(online.getMaxHeldPairLinks() < online.getMetrics().getPairs().size());
+	}
+
+	@Test
+	public void testCompactEdges() {
+		SpotCollection spotCollection = SyntheticSpots.create(6, 200, 1L);
+		for (boolean doPrune : new boolean[] { false, true }) {
+			PointDescriptorTracker reference = new PointDescriptorTracker(spotCollection, 3, 5, 2, 10.0, 100.0, doPrune);
+			reference.setLogger(Logger.VOID_LOGGER);
+			reference.setGapClosing(true, 3);
+			assertTrue(reference.process());
+
+			// without a memory budget, all links are spilled to disk
+			PointDescriptorTracker compact = new PointDescriptorTracker(spotCollection, 3, 5, 2, 10.0, 100.0, doPrune);
+			compact.setLogger(Logger.VOID_LOGGER);
+			compact.setGapClosing(true, 3);
+			compact.setCompactEdges(true, 0);
+			assertTrue(compact.process());
+			assertEquals(edgeStrings(reference.getResult()), edgeStrings(compact.getResult()));
+		}
+	}
+
+	@Test
+	public void testAuctionLinkSolver() {
+		SpotCollection spotCollection = SyntheticSpots.create(6, 200, 1L);
+		PointDescriptorTracker reference = new PointDescriptorTracker(spotCollection, 3, 5, 2, 10.0, 100.0, true);
+		reference.setLogger(Logger.VOID_LOGGER);
+		assertTrue(reference.process());
+
+		PointDescriptorTracker auction = new PointDescriptorTracker(spotCollection, 3, 5, 2, 10.0, 100.0, true);
+		auction.setLogger(Logger.VOID_LOGGER);
+		auction.setNumThreads(3);
+		auction.setLinkSolver(LinkSolverType.AUCTION);
+		assertTrue(auction.process());
+		assertSimilarEdges(reference.getResult(), auction.getResult());
+	}
+
+	@Test
+	public void testSplitComponents() {
+		SpotCollection spotCollection = SyntheticSpots.create(6, 200, 1L);
+		PointDescriptorTracker reference = new PointDescriptorTracker(spotCollection, 3, 5, 2, 10.0, 100.0, true);
+		reference.setLogger(Logger.VOID_LOGGER);
+		assertTrue(reference.process());
+
+		PointDescriptorTracker split = new PointDescriptorTracker(spotCollection, 3, 5, 2, 10.0, 100.0, true);
+		split.setLogger(Logger.VOID_LOGGER);
+		split.setNumThreads(3);
+		split.setSplitComponents(true);
+		assertTrue(split.process());
+		assertSimilarEdges(reference.getResult(), split.getResult());
+	}
+
+	/**
+	 * Asserts that two trackings of the same assignment problems agree on
+	 * all but the links that differ due to near-ties.
+	 */
+	private void assertSimilarEdges(SimpleWeightedGraph<Spot, DefaultWeightedEdge> expectedGraph,
+			SimpleWeightedGraph<Spot, DefaultWeightedEdge> actualGraph) {
+		Set<String> expected = edgeStrings(expectedGraph);
+		Set<String> actual = edgeStrings(actualGraph);
+		Set<String> shared = new LinkedHashSet<>(expected);
+		shared.retainAll(actual);
+		assertTrue(shared.size() >= 0.99 * expected.size());
+		assertTrue(shared.size() >= 0.99 * actual.size());
+	}
+
+	@Test
+	public void testWindowedDescriptors() {
+		SpotCollection spotCollection = SyntheticSpots.create(6, 200, 1L);
+		PointDescriptorTracker reference = new PointDescriptorTracker(spotCollection, 3, 5, 3, 10.0, 100.0, true);
+		reference.setLogger(Logger.VOID_LOGGER);
+		assertTrue(reference.process());
+
+		PointDescriptorTracker windowed = new PointDescriptorTracker(spotCollection, 3, 5, 3, 10.0, 100.0, true);
+		windowed.setLogger(Logger.VOID_LOGGER);
+		windowed.setNumThreads(3);
+		windowed.setWindowedDescriptors(true);
+		assertTrue(windowed.process());
+		assertEquals(new ArrayList<>(edgeStrings(reference.getResult())), new ArrayList<>(edgeStrings(windowed.getResult())));
+	}
+
+	@Test
+	public void testGapClosing() {
+		int spotsPerFrame = 200;
+		SpotCollection spotCollection = SyntheticSpots.create(6, spotsPerFrame, 1L);
+		Map<Integer, Spot> spotsById = new HashMap<>();
+		for (Spot spot : spotCollection.iterable(false)) {
+			spotsById.put(spot.ID(), spot);
+		}
+		// IDs are consecutive, the same spot in the next frame has the ID + spotsPerFrame
+		List<Spot> removed = new ArrayList<>();
+		for (Spot spot : spotCollection.iterable(2, false)) {
+			if (removed.size() == 10) break;
+			removed.add(spot);
+		}
+		for (Spot spot : removed) {
+			spotCollection.remove(spot, 2);
+		}
+
+		for (boolean doPrune : new boolean[] { false, true }) {
+			// gaps of spots whose predecessor is not linked to another spot instead
+			PointDescriptorTracker reference = new PointDescriptorTracker(spotCollection, 3, 5, 1, 10.0, 100.0, doPrune);
+			reference.setLogger(Logger.VOID_LOGGER);
+			assertTrue(reference.process());
+			SimpleWeightedGraph<Spot, DefaultWeightedEdge> firstPass = reference.getResult();
+			int gaps = 0;
+			for (Spot spot : removed) {
+				Spot before = spotsById.get(spot.ID() - spotsPerFrame);
+				if (!firstPass.containsVertex(before) || forwardEdges(firstPass, before) == 0) {
+					gaps++;
+				}
+			}
+			assertTrue(gaps > removed.size() / 2);
+
+			PointDescriptorTracker tracker = new PointDescriptorTracker(spotCollection, 3, 5, 1, 10.0, 100.0, doPrune);
+			tracker.setLogger(Logger.VOID_LOGGER);
+			tracker.setGapClosing(true, 3);
+			assertTrue(tracker.process());
+			SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph = tracker.getResult();
+			int closed = 0;
+			for (Spot spot : removed) {
+				Spot before = spotsById.get(spot.ID() - spotsPerFrame);
+				Spot after = spotsById.get(spot.ID() + spotsPerFrame);
+				if (graph.containsVertex(before) && graph.containsVertex(after) && graph.containsEdge(before, after)) {
+					closed++;
+				}
+			}
+			assertEquals(gaps, closed);
+		}
+	}
+
+	@Test
+	public void testSplittingAndMergingWithPruning() {
+		int spotsPerFrame = 200;
+		SpotCollection spotCollection = SyntheticSpots.create(6, spotsPerFrame, 1L);
+		// siblings next to some tracks: from frame 3 on (splits) or up to frame 2 (merges)
+		List<Spot> tracked = new ArrayList<>();
+		for (Spot spot : spotCollection.iterable(0, false)) {
+			tracked.add(spot);
+		}
+		Map<Integer, List<Spot>> siblings = new HashMap<>();
+		for (int t = 0; t < 20; t++) {
+			Spot spot = tracked.get(10 * t);
+			int first = t % 2 == 0 ? 3 : 0;
+			for (int frame = first; frame < first + 3; frame++) {
+				Spot original = null;
+				for (Spot candidate : spotCollection.iterable(frame, false)) {
+					if (candidate.ID() == spot.ID() + frame * spotsPerFrame) original = candidate;
+				}
+				siblings.computeIfAbsent(frame, f -> new ArrayList<>()).add(new Spot(original.getDoublePosition(0) + 1.0,
+						original.getDoublePosition(1), original.getDoublePosition(2), 1.0, 1.0));
+			}
+		}
+		for (Map.Entry<Integer, List<Spot>> frameSiblings : siblings.entrySet()) {
+			for (Spot sibling : frameSiblings.getValue()) {
+				spotCollection.add(sibling, frameSiblings.getKey());
+			}
+		}
+
+		List<String> reference = null;
+		for (boolean onlinePruning : new boolean[] { false, true }) {
+			PointDescriptorTracker tracker = new PointDescriptorTracker(spotCollection, 3, 5, 1, 10.0, 100.0, true);
+			tracker.setLogger(Logger.VOID_LOGGER);
+			tracker.setTrackSplitting(true);
+			tracker.setTrackMerging(true);
+			tracker.setOnlinePruning(onlinePruning);
+			assertTrue(tracker.process());
+			SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph = tracker.getResult();
+			int splits = 0;
+			int merges = 0;
+			for (DefaultWeightedEdge edge : graph.edgeSet()) {
+				Spot source = graph.getEdgeSource(edge);
+				Spot target = graph.getEdgeTarget(edge);
+				if (source.getFeature(Spot.FRAME) > target.getFeature(Spot.FRAME)) {
+					Spot earlier = target;
+					target = source;
+					source = earlier;
+				}
+				// pruning the joined branches would link each of them to both others
+				assertFalse(forwardEdges(graph, source) > 1 && backwardEdges(graph, target) > 1);
+				if (forwardEdges(graph, source) > 1) splits++;
+				if (backwardEdges(graph, target) > 1) merges++;
+			}
+			assertTrue(splits > 0);
+			assertTrue(merges > 0);
+
+			// online and batch pruning agree
+			List<String> edges = new ArrayList<>(new TreeSet<>(edgeStrings(graph)));
+			if (reference == null) {
+				reference = edges;
+			} else {
+				assertEquals(reference, edges);
+			}
+		}
+	}
+
+	private static int forwardEdges(SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph, Spot spot) {
+		return countEdges(graph, spot, true);
+	}
+
+	private static int backwardEdges(SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph, Spot spot) {
+		return countEdges(graph, spot, false);
+	}
+
+	private static int countEdges(SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph, Spot spot, boolean forward) {
+		int frame = spot.getFeature(Spot.FRAME).intValue();
+		int count = 0;
+		for (DefaultWeightedEdge edge : graph.edgesOf(spot)) {
+			Spot other = graph.getEdgeSource(edge) == spot ? graph.getEdgeTarget(edge) : graph.getEdgeSource(edge);
+			if (other.getFeature(Spot.FRAME).intValue() > frame == forward) count++;
+		}
+		return count;
+	}
+
+	@Test
+	public void testCancel() {
+		SpotCollection spotCollection = SyntheticSpots.create(6, 200, 1L);
+		PointDescriptorTracker tracker = new PointDescriptorTracker(spotCollection, 3, 5, 3, 10.0, 100.0, true);
+		// cancel once the frame pairs are generated
+		tracker.setLogger(new Logger() {
+
+			@Override
+			public void log(String message, Color color) {
+				if (message.startsWith("Generated")) {
+					tracker.cancel("test");
+				}
+			}
+
+			@Override
+			public void error(String message) {
+				// ignore
+			}
+
+			@Override
+			public void setProgress(double val) {
+				// ignore
+			}
+
+			@Override
+			public void setStatus(String status) {
+				// ignore
+			}
+		});
+		assertFalse(tracker.process());
+		assertTrue(tracker.isCanceled());
+		assertEquals("Canceled: test", tracker.getErrorMessage());
+	}
+
+	@Test
+	public void testCancelBeforeProcess() {
+		SpotCollection spotCollection = SyntheticSpots.create(6, 200, 1L);
+		PointDescriptorTracker tracker = new PointDescriptorTracker(spotCollection, 3, 5, 3, 10.0, 100.0, true);
+		tracker.setLogger(Logger.VOID_LOGGER);
+		tracker.cancel(null);
+		assertTrue(tracker.isCanceled());
+		assertFalse(tracker.process());
+		assertEquals("Canceled", tracker.getErrorMessage());
+
+		tracker.resetCancel();
+		assertFalse(tracker.isCanceled());
+		assertNull(tracker.getCancelReason());
+		assertTrue(tracker.process());
+	}
+
+	@Test
+	public void testMetrics() {
+		SpotCollection spotCollection = SyntheticSpots.create(6, 200, 1L);
+		PointDescriptorTracker tracker = new PointDescriptorTracker(spotCollection, 3, 5, 3, 10.0, 100.0, true);
+		tracker.setLogger(Logger.VOID_LOGGER);
+		assertTrue(tracker.process());
+
+		TrackerMetrics metrics = tracker.getMetrics();
+		assertEquals(6, metrics.getFrames().size());
+		// frame differences 1, 2 and 3
+		assertEquals(5 + 4 + 3, metrics.getPairs().size());
+		for (TrackerMetrics.PairMetrics pair : metrics.getPairs()) {
+			assertEquals(200, pair.sources());
+			assertTrue(pair.candidates() > 0);
+			assertTrue(pair.links() <= pair.matrixRows());
+		}
+		assertTrue(metrics.getPhaseNanos(TrackerMetrics.Phase.DESCRIPTORS) > 0);
+		assertTrue(metrics.getPhaseNanos(TrackerMetrics.Phase.PRUNE) > 0);
+	}
+
+	private Set<String> edgeStrings(SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph) {
+		Set<String> edges = new LinkedHashSet<>();
+		for (DefaultWeightedEdge edge : graph.edgeSet()) {
+			edges.add(graph.getEdgeSource(edge).ID() + "-" + graph.getEdgeTarget(edge).ID() + ":" + graph.getEdgeWeight(edge));
+		}
+		return edges;
+	}
+
 	private SpotCollection createTestSpots() {
 		SpotCollection spots = new SpotCollection();
 		double r = 1;
@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import java.util.Random;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+
+/**
+ * Generator for synthetic, reproducible spot clouds used in tests and
+ * benchmarks.
+ * <p>
+ * The first frame is a uniform random point cloud in a cube whose size is
+ * chosen to keep the spot density constant, so the number of spots within a
+ * given linking distance does not depend on the number of spots per frame.
+ * Each following frame moves every spot by a common drift plus a small random
+ * displacement.
+ * </p>
+ */
+public class SyntheticSpots {
+
+	/** Mean distance between neighboring spots. */
+	public static final double SPACING = 5.0;
+
+	/** Standard deviation of the per-frame random displacement. */
+	public static final double JITTER = 0.2;
+
+	/** Common displacement of all spots between two frames. */
+	public static final double DRIFT = 0.5;
+
+	private SyntheticSpots() {
+		// prevent instantiation of static utility class
+	}
+
+	/**
+	 * Creates a {@code SpotCollection} with {@code nFrames} frames of
+	 * {@code spotsPerFrame} visible spots each.
+	 *
+	 * @param nFrames
+	 *            number of frames
+	 * @param spotsPerFrame
+	 *            number of spots in each frame
+	 * @param seed
+	 *            seed for the random number generator
+	 * @return a new {@code SpotCollection}
+	 */
+	public static SpotCollection create(int nFrames, int spotsPerFrame, long seed) {
+		Random random = new Random(seed);
+		double size = SPACING * Math.cbrt(spotsPerFrame);
+		double[][] positions = new double[spotsPerFrame][3];
+		for (double[] position : positions) {
+			for (int d = 0; d < 3; d++) {
+				position[d] = random.nextDouble() * size;
+			}
+		}
+
+		SpotCollection spots = new SpotCollection();
+		for (int frame = 0; frame < nFrames; frame++) {
+			for (double[] position : positions) {
+				spots.add(new Spot(position[0], position[1], position[2], 1.0, 1.0), frame);
+				position[0] += DRIFT;
+				for (int d = 0; d < 3; d++) {
+					position[d] += random.nextGaussian() * JITTER;
+				}
+			}
+		}
+		return spots;
+	}
+}
@@ -0,0 +1,194 @@
+/*-
+ * #%L
+ * FMI Add-ons for TrackMate in Fiji
+ * %%
+ * Copyright (C) 2017 - 2023 Friedrich Miescher Institute for Biomedical Research
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package ch.fmi.trackmate.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+
+public class TracksTest {
+
+	@Test
+	public void testPrune() {
+		SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+		Spot a0 = createSpot(graph, 0);
+		Spot b0 = createSpot(graph, 0);
+		Spot a1 = createSpot(graph, 1);
+		Spot a3 = createSpot(graph, 3);
+		Spot single = createSpot(graph, 2);
+		link(graph, a0, a1, 1.0);
+		link(graph, b0, a1, 2.0);
+		link(graph, a0, a3, 3.0);
+		link(graph, a1, a3, 5.0);
+
+		SimpleWeightedGraph<Spot, DefaultWeightedEdge> pruned = Tracks.prune(graph, true);
+		// a0-a3 skips frame 1 of the component and is removed
+		assertEquals(3, pruned.edgeSet().size());
+		assertEquals(1.0, weight(pruned, a0, a1), 0.0);
+		assertEquals(2.0, weight(pruned, b0, a1), 0.0);
+		// the direct edge, although a0-a3 and a0-a1 are cheaper together
+		assertEquals(5.0, weight(pruned, a1, a3), 0.0);
+		assertFalse(pruned.containsVertex(single));
+
+		// without a direct edge, the shortest path within the component is used,
+		// here back in time via a0
+		graph.removeEdge(a1, a3);
+		pruned = Tracks.prune(graph, true);
+		assertEquals(3, pruned.edgeSet().size());
+		assertEquals(4.0, weight(pruned, a1, a3), 0.0);
+	}
+
+	/**
+	 * A long track of two spots per frame, with a gap every 10 frames and a
+	 * missing cross link in every other frame. Searching the whole track for
+	 * each missing link took minutes, a search within the two frames takes
+	 * constant time.
+	 */
+	@Test(timeout = 15000)
+	public void testPruneLongTrack() {
+		int nFrames = 40000;
+		SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+		Spot[] a = new Spot[nFrames];
+		Spot[] b = new Spot[nFrames];
+		for (int frame = 0; frame < nFrames; frame++) {
+			if (frame % 10 == 9) continue;
+			a[frame] = createSpot(graph, frame);
+			b[frame] = createSpot(graph, frame);
+		}
+		int nPairs = 0;
+		for (int frame = 0; frame < nFrames; frame++) {
+			int next = frame % 10 == 8 ? frame + 2 : frame + 1;
+			if (a[frame] == null || next >= nFrames) continue;
+			link(graph, a[frame], a[next], 1.0);
+			link(graph, b[frame], b[next], 1.0);
+			link(graph, b[frame], a[next], 2.0);
+			if (frame % 2 == 1) {
+				link(graph, a[frame], b[next], 2.0);
+			}
+			nPairs++;
+		}
+
+		SimpleWeightedGraph<Spot, DefaultWeightedEdge> pruned = Tracks.prune(graph, true);
+		assertEquals(4 * nPairs, pruned.edgeSet().size());
+		// a0-a1, back to b0 and on to b1
+		assertEquals(4.0, weight(pruned, a[0], b[1]), 0.0);
+		assertEquals(2.0, weight(pruned, a[1], b[2]), 0.0);
+		// across a gap
+		assertEquals(4.0, weight(pruned, a[nFrames - 12], b[nFrames - 10]), 0.0);
+	}
+
+	@Test
+	public void testPruneEdgeStore() throws IOException {
+		Random random = new Random(1L);
+		SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+		Spot[][] frames = new Spot[5][8];
+		for (int frame = 0; frame < frames.length; frame++) {
+			for (int i = 0; i < frames[frame].length; i++) {
+				frames[frame][i] = createSpot(graph, frame);
+			}
+		}
+		// a small budget spills to disk
+		try (EdgeStore edges = new EdgeStore(0)) {
+			for (int frame = 0; frame < frames.length; frame++) {
+				for (int target = frame + 1; target < Math.min(frame + 3, frames.length); target++) {
+					int sourceOffset = edges.frameOffset(frame, frames[frame]);
+					int targetOffset = edges.frameOffset(target, frames[target]);
+					for (int i = 0; i < frames[frame].length; i++) {
+						int j = random.nextInt(frames[target].length);
+						if (graph.containsEdge(frames[frame][i], frames[target][j])) continue;
+						double weight = random.nextInt(10);
+						link(graph, frames[frame][i], frames[target][j], weight);
+						edges.add(sourceOffset + i, targetOffset + j, weight);
+					}
+				}
+			}
+			assertEquals(1, edges.spilledChunks());
+			assertEquals(graph.edgeSet().size(), edges.size());
+			assertSameEdges(graph, edges.toGraph());
+			assertSameEdges(Tracks.prune(graph, true), Tracks.prune(edges, true, null));
+		}
+
+		// a large budget keeps the chunks in direct buffers, freed on close
+		try (EdgeStore edges = new EdgeStore(64L << 20)) {
+			for (int frame = 0; frame < frames.length; frame++) {
+				edges.frameOffset(frame, frames[frame]);
+			}
+			for (DefaultWeightedEdge edge : graph.edgeSet()) {
+				edges.add(index(frames, graph.getEdgeSource(edge)), index(frames, graph.getEdgeTarget(edge)), graph.getEdgeWeight(edge));
+			}
+			assertEquals(0, edges.spilledChunks());
+			assertSameEdges(Tracks.prune(graph, true), Tracks.prune(edges, true, null));
+		}
+	}
+
+	private static int index(Spot[][] frames, Spot spot) {
+		int frame = spot.getFeature(Spot.FRAME).intValue();
+		return frame * frames[0].length + Arrays.asList(frames[frame]).indexOf(spot);
+	}
+
+	@Test
+	public void testEdgeStoreBudget() throws IOException {
+		long maxDirectMemory = EdgeStore.maxDirectMemory();
+		assertTrue(maxDirectMemory > 0);
+		try (EdgeStore edges = new EdgeStore(Long.MAX_VALUE)) {
+			assertEquals(maxDirectMemory / 2, edges.memoryBudget());
+		}
+		try (EdgeStore edges = new EdgeStore(1024)) {
+			assertEquals(1024, edges.memoryBudget());
+		}
+	}
+
+	private static void assertSameEdges(SimpleWeightedGraph<Spot, DefaultWeightedEdge> expected, SimpleWeightedGraph<Spot, DefaultWeightedEdge> actual) {
+		assertEquals(expected.edgeSet().size(), actual.edgeSet().size());
+		for (DefaultWeightedEdge edge : expected.edgeSet()) {
+			assertEquals(expected.getEdgeWeight(edge), weight(actual, expected.getEdgeSource(edge), expected.getEdgeTarget(edge)), 0.0);
+		}
+	}
+
+	private static Spot createSpot(SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph, int frame) {
+		Spot spot = new Spot(0, 0, 0, 1, 1);
+		spot.putFeature(Spot.FRAME, (double) frame);
+		graph.addVertex(spot);
+		return spot;
+	}
+
+	private static void link(SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph, Spot source, Spot target, double weight) {
+		graph.setEdgeWeight(graph.addEdge(source, target), weight);
+	}
+
+	private static double weight(SimpleWeightedGraph<Spot, DefaultWeightedEdge> graph, Spot source, Spot target) {
+		DefaultWeightedEdge edge = graph.getEdge(source, target);
+		assertNotNull(edge);
+		return graph.getEdgeWeight(edge);
+	}
+}